@@ -2,6 +2,8 @@ package dev.snowdrop.buildpack;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import dev.snowdrop.buildpack.config.CacheConfig;
 import dev.snowdrop.buildpack.config.DockerConfig;
@@ -24,35 +26,42 @@ public class BuildConfig {
     private CacheConfig buildCacheConfig;
     private CacheConfig launchCacheConfig;
     private CacheConfig kanikoCacheConfig;
+    private CacheConfig applicationCacheConfig;
     private PlatformConfig platformConfig;
     private LogConfig logConfig;
     private ImageReference builderImage;
     private ImageReference runImage;
     private ImageReference outputImage;
     private List<Content> application;
+    private Executor buildExecutor;
 
-    private final int exitCode;
+    private final CompletableFuture<BuildResult> buildResult;
+    private final BuildReport buildReport;
 
     public BuildConfig(DockerConfig dockerConfig,
                        CacheConfig  buildCacheConfig,
                        CacheConfig  launchCacheConfig,
                        CacheConfig  kanikoCacheConfig,
+                       CacheConfig  applicationCacheConfig,
                        PlatformConfig platformConfig,
                        LogConfig logConfig,
                        ImageReference builderImage,
                        ImageReference runImage,
                        ImageReference outputImage,
-                       List<Content> application){
+                       List<Content> application,
+                       Executor buildExecutor){
         this.dockerConfig = dockerConfig != null ? dockerConfig : DockerConfig.builder().build();
         this.buildCacheConfig = buildCacheConfig != null ? buildCacheConfig : CacheConfig.builder().build();
         this.launchCacheConfig = launchCacheConfig != null ? launchCacheConfig : CacheConfig.builder().build();
         this.kanikoCacheConfig = kanikoCacheConfig != null ? kanikoCacheConfig : CacheConfig.builder().build();
+        this.applicationCacheConfig = applicationCacheConfig != null ? applicationCacheConfig : CacheConfig.builder().build();
         this.platformConfig = platformConfig != null ? platformConfig : PlatformConfig.builder().build();
         this.logConfig = logConfig != null ? logConfig : LogConfig.builder().build();
         this.builderImage = builderImage != null ? builderImage : DEFAULT_BUILDER_IMAGE;
         this.runImage = runImage;
         this.outputImage = outputImage;
         this.application = application != null ? application : new ArrayList<>();
+        this.buildExecutor = buildExecutor;
 
         if(this.outputImage==null){
             throw new BuildpackException("Output Image missing and must be specified", new IllegalArgumentException());
@@ -61,7 +70,33 @@ public class BuildConfig {
             throw new BuildpackException("Application content missing and must be specified", new IllegalArgumentException());
         }
 
-        exitCode = new BuildpackBuild(this).build();
+        BuildpackBuild build = new BuildpackBuild(this);
+        if(this.buildExecutor == null){
+            int rc = build.build();
+            buildResult = CompletableFuture.completedFuture(new BuildResult(rc, this.outputImage, build.getReport()));
+        }else{
+            buildResult = build.buildAsync(this.buildExecutor);
+        }
+        buildReport = build.getReport();
+    }
+
+    //kept for callers of the constructor from before the application cache and build executor were added,
+    //declared after the full constructor, as the builder is generated from the first constructor.
+    /**
+     * As the full constructor, without an application cache or build executor, so the build runs in this constructor.
+     */
+    public BuildConfig(DockerConfig dockerConfig,
+                       CacheConfig  buildCacheConfig,
+                       CacheConfig  launchCacheConfig,
+                       CacheConfig  kanikoCacheConfig,
+                       PlatformConfig platformConfig,
+                       LogConfig logConfig,
+                       ImageReference builderImage,
+                       ImageReference runImage,
+                       ImageReference outputImage,
+                       List<Content> application){
+        this(dockerConfig, buildCacheConfig, launchCacheConfig, kanikoCacheConfig, null, platformConfig, logConfig,
+             builderImage, runImage, outputImage, application, null);
     }
 
     public DockerConfig getDockerConfig(){
@@ -76,6 +111,9 @@ public class BuildConfig {
     public CacheConfig getKanikoCacheConfig(){
         return kanikoCacheConfig;
     }
+    public CacheConfig getApplicationCacheConfig(){
+        return applicationCacheConfig;
+    }
     public PlatformConfig getPlatformConfig(){
         return platformConfig;
     }
@@ -94,8 +132,32 @@ public class BuildConfig {
     public List<Content> getApplication(){
         return application;
     }
+    /**
+     * Executor the build was run on, or null if the build was run by the constructor.
+     */
+    public Executor getBuildExecutor(){
+        return buildExecutor;
+    }
+    /**
+     * Exit code of the build, waiting for the build to complete if it was run on a buildExecutor.
+     */
     public int getExitCode() {
-        return this.exitCode;
+        return this.buildResult.join().getExitCode();
+    }
+    /**
+     * The result of the build, already complete unless the build was run on a buildExecutor.
+     * Cancelling the future cancels the build. The future completes as cancelled immediately, while the
+     * build thread is still stopping, so tidyUp of the build volumes and removal of an ephemeral builder
+     * may not have finished when callers waiting on the future resume.
+     */
+    public CompletableFuture<BuildResult> getBuildResult() {
+        return this.buildResult;
+    }
+    /**
+     * Timings for the steps of the build, see BuildReport. Updated as the build progresses if it was run on a buildExecutor.
+     */
+    public BuildReport getBuildReport() {
+        return this.buildReport;
     }
 }
 
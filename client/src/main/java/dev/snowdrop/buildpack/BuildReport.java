@@ -0,0 +1,198 @@
+package dev.snowdrop.buildpack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.snowdrop.buildpack.trace.BuildTrace;
+
+/**
+ * Wall clock timings for the steps of a build, to identify where the time for a slow build went.
+ *
+ * Steps are recorded in the order they complete, each lifecycle phase is recorded with its own
+ * breakdown (create/start/wait/copy/remove for container phases). All durations are in milliseconds.
+ * Container removal happens in the background, so may be recorded after the phase has completed.
+ * Each timed step and phase part is also recorded as a span in the BuildTrace, if one is attached.
+ *
+ * The report is attached to the thread running the build, in the same way as a BuildTrace, so that
+ * uploads made on that thread can record the bytes they send.
+ */
+public class BuildReport {
+
+  private static final ThreadLocal<BuildReport> current = new ThreadLocal<>();
+
+  public static class Step {
+    public String name;
+    public long durationMillis;
+  }
+
+  public static class Phase {
+    public String name;
+    public String containerId;
+    public Integer exitCode;
+    public Map<String, Long> timings = new LinkedHashMap<>();
+
+    /**
+     * Run the action, recording its duration against part, (added to any time already recorded for it)
+     */
+    public <T> T time(String part, Supplier<T> action) {
+      long start = System.nanoTime();
+      try {
+        return BuildTrace.span(part, "phase", action);
+      } finally {
+        record(part, millisSince(start));
+      }
+    }
+
+    public void time(String part, Runnable action) {
+      time(part, () -> {
+        action.run();
+        return null;
+      });
+    }
+
+    public synchronized void record(String part, long millis) {
+      timings.merge(part, millis, Long::sum);
+    }
+  }
+
+  public static class ImagePull {
+    public String image;
+    //size of the image as reported by the daemon after the pull, null if not known.
+    public Long size;
+  }
+
+  public long startedAt = System.currentTimeMillis();
+  public long durationMillis;
+  public Integer exitCode;
+  //total size of the application content, and how it was transferred (upload, sync or bind).
+  public long applicationBytes;
+  public String applicationTransfer;
+  //bytes sent to the daemon, after compression, by every upload of the build (application, platform, env and layers content).
+  public long uploadedBytes;
+  public List<Step> steps = new ArrayList<>();
+  public List<Phase> phases = new ArrayList<>();
+  public List<ImagePull> pulls = new ArrayList<>();
+
+  /**
+   * Run the action, recording its duration as a step of the build.
+   */
+  public <T> T time(String step, Supplier<T> action) {
+    long start = System.nanoTime();
+    try {
+      return BuildTrace.span(step, "step", action);
+    } finally {
+      Step s = new Step();
+      s.name = step;
+      s.durationMillis = millisSince(start);
+      synchronized (this) {
+        steps.add(s);
+      }
+    }
+  }
+
+  public void time(String step, Runnable action) {
+    time(step, () -> {
+      action.run();
+      return null;
+    });
+  }
+
+  /**
+   * Start recording a lifecycle phase.
+   */
+  public synchronized Phase phase(String name) {
+    Phase p = new Phase();
+    p.name = name;
+    phases.add(p);
+    return p;
+  }
+
+  /**
+   * Record the removal time against the most recent phase run in the container, if any.
+   */
+  public synchronized void recordRemoval(String containerId, long millis) {
+    for (int i = phases.size() - 1; i >= 0; i--) {
+      if (containerId != null && containerId.equals(phases.get(i).containerId)) {
+        phases.get(i).record("remove", millis);
+        return;
+      }
+    }
+  }
+
+  public synchronized void addImagePull(String image, Long size) {
+    ImagePull p = new ImagePull();
+    p.image = image;
+    p.size = size;
+    pulls.add(p);
+  }
+
+  /**
+   * Start recording the application transfer, replacing any earlier attempt, (eg, a sync that fell back to upload)
+   */
+  public synchronized void startApplicationTransfer(String transfer) {
+    applicationTransfer = transfer;
+    applicationBytes = 0;
+  }
+
+  public synchronized void addApplicationBytes(long bytes) {
+    applicationBytes += bytes;
+  }
+
+  public synchronized void addUploadedBytes(long bytes) {
+    uploadedBytes += bytes;
+  }
+
+  /**
+   * Attach this report to the current thread, until detach is called with the report returned.
+   * @return the report previously attached, if any.
+   */
+  public BuildReport attach() {
+    BuildReport previous = current.get();
+    current.set(this);
+    return previous;
+  }
+
+  public static void detach(BuildReport previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /**
+   * Record bytes sent to the daemon against the report attached to the current thread, if any.
+   */
+  public static void recordUpload(long wireBytes) {
+    BuildReport report = current.get();
+    if (report != null) {
+      report.addUploadedBytes(wireBytes);
+    }
+  }
+
+  /**
+   * Record the overall result, called once the build has completed.
+   */
+  public void complete(Integer exitCode) {
+    this.exitCode = exitCode;
+    this.durationMillis = System.currentTimeMillis() - startedAt;
+  }
+
+  public synchronized String toJson() {
+    try {
+      return new ObjectMapper().writeValueAsString(this);
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to serialize build report", e);
+    }
+  }
+
+  static long millisSince(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+}
@@ -0,0 +1,37 @@
+package dev.snowdrop.buildpack;
+
+import dev.snowdrop.buildpack.config.ImageReference;
+
+/**
+ * The outcome of a build that ran to completion, (whether or not the lifecycle succeeded)
+ */
+public class BuildResult {
+    private final int exitCode;
+    private final ImageReference outputImage;
+    private final BuildReport buildReport;
+
+    public BuildResult(int exitCode, ImageReference outputImage, BuildReport buildReport){
+        this.exitCode = exitCode;
+        this.outputImage = outputImage;
+        this.buildReport = buildReport;
+    }
+
+    /**
+     * Exit code from the lifecycle, 0 if the build succeeded.
+     */
+    public int getExitCode(){
+        return exitCode;
+    }
+
+    public boolean isSuccess(){
+        return exitCode == 0;
+    }
+
+    public ImageReference getOutputImage(){
+        return outputImage;
+    }
+
+    public BuildReport getBuildReport(){
+        return buildReport;
+    }
+}
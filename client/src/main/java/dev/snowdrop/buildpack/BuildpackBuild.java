@@ -1,7 +1,10 @@
 package dev.snowdrop.buildpack;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -13,8 +16,11 @@ import dev.snowdrop.buildpack.config.ImageReference;
 import dev.snowdrop.buildpack.config.PlatformConfig;
 import dev.snowdrop.buildpack.docker.BuildContainerUtils;
 import dev.snowdrop.buildpack.docker.ImageUtils;
+import dev.snowdrop.buildpack.jfr.BuildEvents;
 import dev.snowdrop.buildpack.lifecycle.LifecycleExecutor;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
 import dev.snowdrop.buildpack.lifecycle.Version;
+import dev.snowdrop.buildpack.trace.BuildTrace;
 import dev.snowdrop.buildpack.utils.LifecycleMetadata;
 
 public class BuildpackBuild {
@@ -26,11 +32,22 @@ public class BuildpackBuild {
     public final String DEFAULT_PLATFORM_LEVEL = supportedPlatformLevels.get(0);
 
     BuildConfig config;
+    private final BuildReport report = new BuildReport();
+    private String activePlatformLevel;
 
     public BuildpackBuild(BuildConfig config){
         this.config = config;
     }
 
+    public BuildReport getReport(){
+        return report;
+    }
+
+    private void recordImagePull(ImageReference image){
+        ImageUtils.ImageInfo ii = ImageUtils.inspectImage(config.getDockerConfig().getDockerClient(), image);
+        report.addImagePull(image.getReferenceWithLatest(), ii.size);
+    }
+
     private String selectPlatformLevel(DockerConfig dc, PlatformConfig pc, BuilderImage builder) {
         List<String> platformsToConsider;
 
@@ -68,7 +85,108 @@ public class BuildpackBuild {
 
     }
 
+    /**
+     * A future for a build running on another thread, where cancelling the future interrupts that thread.
+     * Interrupting the build abandons pulls in progress, removes the running phase container, and
+     * removes the build volumes and ephemeral builder before the build thread completes.
+     */
+    private static class BuildFuture extends CompletableFuture<BuildResult> {
+        private Thread runner;
+
+        synchronized boolean start(){
+            if(isDone()){
+                return false;
+            }
+            runner = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void finish(){
+            runner = null;
+            //an interrupt from a cancel that raced completion must not leak to the next task on the thread.
+            Thread.interrupted();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning){
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            synchronized(this){
+                if(cancelled && runner!=null){
+                    log.info("Build cancelled, interrupting build thread "+runner.getName());
+                    runner.interrupt();
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Run the build on a thread from the executor, returning a future that completes with the result,
+     * or exceptionally if the build fails. Cancelling the future interrupts the build, (see BuildFuture)
+     * the future completes on cancel, before the interrupted build has finished its tidy up.
+     */
+    public CompletableFuture<BuildResult> buildAsync(Executor executor){
+        BuildFuture future = new BuildFuture();
+        executor.execute(() -> {
+            if(!future.start()){
+                return;
+            }
+            try{
+                int rc = build();
+                future.complete(new BuildResult(rc, config.getOutputImage(), report));
+            }catch(Throwable t){
+                future.completeExceptionally(t);
+            }finally{
+                future.finish();
+            }
+        });
+        return future;
+    }
+
     public int build(){
+        Integer rc = null;
+        Object event = BuildEvents.beginBuild();
+        File traceFile = config.getLogConfig().getTraceFile();
+        BuildTrace trace = traceFile!=null ? new BuildTrace() : null;
+        BuildTrace previousTrace = trace!=null ? trace.attach() : null;
+        BuildReport previousReport = report.attach();
+        BuildTrace.Span span = BuildTrace.begin("build", "build");
+        long start = System.nanoTime();
+        try{
+            rc = runBuild();
+            BuildMetricsRegistry.get().buildCompleted(System.nanoTime() - start, rc);
+            return rc;
+        }catch(RuntimeException e){
+            BuildMetricsRegistry.get().buildFailed(System.nanoTime() - start, e);
+            throw e;
+        }finally{
+            report.complete(rc);
+            BuildEvents.endBuild(event, config.getBuilderImage().getCanonicalReference(), config.getOutputImage().getReference(), activePlatformLevel, rc);
+            span.arg("builder", config.getBuilderImage().getCanonicalReference())
+                .arg("output", config.getOutputImage().getReference())
+                .arg("platformLevel", activePlatformLevel)
+                .arg("exitCode", rc)
+                .end();
+            BuildReport.detach(previousReport);
+            if(trace!=null){
+                BuildTrace.detach(previousTrace);
+                writeTrace(trace, traceFile);
+            }
+            log.debug("Build report: "+report.toJson());
+        }
+    }
+
+    //a trace that cannot be written is logged, rather than failing a build that has otherwise completed.
+    private void writeTrace(BuildTrace trace, File traceFile){
+        try{
+            trace.write(traceFile);
+            log.info("Build trace written to "+traceFile.getAbsolutePath());
+        }catch(RuntimeException e){
+            log.warn("Unable to write build trace to "+traceFile.getAbsolutePath(), e);
+        }
+    }
+
+    private int runBuild(){
 
         log.info("Buildpack build requested with config: \n"+
                  " - builder "+config.getBuilderImage().getCanonicalReference()+"\n"+
@@ -80,14 +198,18 @@ public class BuildpackBuild {
 
         log.info("Pulling Builder image");
 
+        //the remaining preparation, (volumes & application upload) is traced by the LifecycleExecutor.
+        BuildTrace.Span prepare = BuildTrace.begin("prepare", "build");
+
         //obtain & pull & inspect Builder image.
-        BuilderImage builder = new BuilderImage(config.getDockerConfig(), 
+        BuilderImage builder = report.time("pullBuilderImage", () -> new BuilderImage(config.getDockerConfig(), 
                                                 config.getPlatformConfig(), 
                                                 config.getRunImage(),
-                                                config.getBuilderImage());
+                                                config.getBuilderImage()));
+        recordImagePull(config.getBuilderImage());
 
         //select active platform level.
-        String activePlatformLevel = selectPlatformLevel(config.getDockerConfig(), 
+        activePlatformLevel = selectPlatformLevel(config.getDockerConfig(), 
                                                          config.getPlatformConfig(),
                                                          builder);
 
@@ -98,19 +220,23 @@ public class BuildpackBuild {
             log.info("Pulling Run Image(s) (requesting architecture ["+builder.getImagePlatform()+"])");
 
             //precache the runimages listed in the orig builder before extending it.         
-            ImageUtils.pullImages(config.getDockerConfig(), builder.getImagePlatform(), runImages);
+            report.time("pullRunImages", () -> ImageUtils.pullImages(config.getDockerConfig(), builder.getImagePlatform(), runImages));
+            for(ImageReference runImage : runImages){
+                recordImagePull(runImage);
+            }
         }
 
 
         log.debug("Creating Ephemeral Builder Image...");
 
         //create the extended builder image.
-        BuilderImage extendedBuilder = BuildContainerUtils.createBuildImage(config.getDockerConfig().getDockerClient(),
+        BuilderImage extendedBuilder = report.time("createBuildImage", () -> BuildContainerUtils.createBuildImage(config.getDockerConfig().getDockerClient(),
                                                                             config.getPlatformConfig(),
                                                                             builder, 
                                                                   null, 
                                                                  null, 
-                                                                 null);
+                                                                 null));
+        prepare.end();
         try{
             log.info("Initiating buildpack build with derived configuration: \n"+
                      " - ephemeralBuilder "+extendedBuilder.getImage().getCanonicalReference()+"\n"+
@@ -119,11 +245,18 @@ public class BuildpackBuild {
                      " - withExtensions "+extendedBuilder.hasExtensions());
              
              // all platform pre-build tasks are now done, begin executing lifecycle phases as required
-            LifecycleExecutor le = new LifecycleExecutor(config, builder, extendedBuilder, activePlatformLevel); 
+            LifecycleExecutor le = new LifecycleExecutor(config, builder, extendedBuilder, activePlatformLevel, report); 
             return le.execute();
         }finally{
-            //clean up the extended builder image
-            config.getDockerConfig().getDockerClient().removeImageCmd(extendedBuilder.getImage().getCanonicalReference()).exec(); 
+            //clean up the extended builder image, even if the build was cancelled by interrupt.
+            boolean interrupted = Thread.interrupted();
+            try{
+                report.time("removeBuildImage", () -> config.getDockerConfig().getDockerClient().removeImageCmd(extendedBuilder.getImage().getCanonicalReference()).exec()); 
+            }finally{
+                if(interrupted){
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 
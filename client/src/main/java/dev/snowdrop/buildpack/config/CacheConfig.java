@@ -13,11 +13,13 @@ public class CacheConfig {
 
     private String cacheVolumeName;
     private Boolean deleteCacheAfterBuild;
+    private Boolean deleteCacheAfterBuildSetting;
 
     public CacheConfig(String cacheVolumeName,
                        Boolean deleteCacheAfterBuild){
         this.cacheVolumeName = cacheVolumeName;
         this.deleteCacheAfterBuild = deleteCacheAfterBuild!=null ? deleteCacheAfterBuild : DEFAULT_DELETE_CACHE; //default if not set
+        this.deleteCacheAfterBuildSetting = deleteCacheAfterBuild;
     }
 
     public String getCacheVolumeName(){
@@ -27,4 +29,11 @@ public class CacheConfig {
     public Boolean getDeleteCacheAfterBuild(){
         return this.deleteCacheAfterBuild;
     }
+
+    /**
+     * Delete after build as set, or defaultDelete if not set, for caches with a different default.
+     */
+    public Boolean getDeleteCacheAfterBuild(Boolean defaultDelete){
+        return this.deleteCacheAfterBuildSetting!=null ? this.deleteCacheAfterBuildSetting : defaultDelete;
+    }
 }
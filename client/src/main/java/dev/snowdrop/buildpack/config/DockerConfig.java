@@ -18,10 +18,33 @@ public class DockerConfig {
 
     public static enum PullPolicy {ALWAYS, IF_NOT_PRESENT, NEVER};
 
+    /**
+     * Compression applied to content sent to containers. AUTO selects based on the transport to the daemon,
+     * no compression for local sockets/pipes, gzip for remote hosts with the level adjusted by observed throughput.
+     */
+    public static enum UploadCodec {
+        AUTO, NONE, 
+        GZIP_1(1), GZIP_2(2), GZIP_3(3), GZIP_4(4), GZIP_5(5), GZIP_6(6), GZIP_7(7), GZIP_8(8), GZIP_9(9), 
+        BZIP2;
+
+        private final int gzipLevel;
+        UploadCodec() { this(0); }
+        UploadCodec(int gzipLevel) { this.gzipLevel = gzipLevel; }
+
+        /** deflate level for gzip codecs, 0 for others */
+        public int getGzipLevel() { return gzipLevel; }
+    };
+
     private static final Integer DEFAULT_PULL_TIMEOUT = 60;
     private static final Integer DEFAULT_PULL_RETRY_INCREASE = 15;
     private static final Integer DEFAULT_PULL_RETRY_COUNT = 3;
     private static final PullPolicy DEFAULT_PULL_POLICY = PullPolicy.IF_NOT_PRESENT;
+    private static final Integer DEFAULT_UPLOAD_COMPRESSION_THREADS = 1;
+    private static final UploadCodec DEFAULT_UPLOAD_CODEC = UploadCodec.AUTO;
+    private static final Boolean DEFAULT_UPLOAD_LINK_DUPLICATES = Boolean.FALSE;
+    private static final Boolean DEFAULT_BIND_MOUNT_APPLICATION = Boolean.FALSE;
+    private static final Integer DEFAULT_UPLOAD_SHARDS = 1;
+    private static final Long DEFAULT_UPLOAD_SHARD_THRESHOLD = 256L * 1024 * 1024;
     
     private Integer pullTimeoutSeconds;
     private Integer pullRetryCount;
@@ -33,6 +56,12 @@ public class DockerConfig {
     private Boolean useDaemon;
     private DockerClient dockerClient;
     private List<RegistryAuthConfig> authConfigs;
+    private Integer uploadCompressionThreads;
+    private UploadCodec uploadCodec;
+    private Boolean uploadLinkDuplicates;
+    private Boolean bindMountApplication;
+    private Integer uploadShards;
+    private Long uploadShardThreshold;
 
     public DockerConfig(                   
         Integer pullTimeoutSeconds, 
@@ -44,7 +73,13 @@ public class DockerConfig {
         String dockerNetwork,
         Boolean useDaemon, 
         DockerClient dockerClient,
-        List<RegistryAuthConfig> authConfigs
+        List<RegistryAuthConfig> authConfigs,
+        Integer uploadCompressionThreads,
+        UploadCodec uploadCodec,
+        Boolean uploadLinkDuplicates,
+        Boolean bindMountApplication,
+        Integer uploadShards,
+        Long uploadShardThreshold
     ){
         this.pullTimeoutSeconds = pullTimeoutSeconds != null ? Integer.max(0,pullTimeoutSeconds) : DEFAULT_PULL_TIMEOUT;
         this.pullRetryCount = pullRetryCount != null ? Integer.max(0,pullRetryCount) : DEFAULT_PULL_RETRY_COUNT;
@@ -52,6 +87,16 @@ public class DockerConfig {
         this.pullPolicy = pullPolicy != null ? pullPolicy : DEFAULT_PULL_POLICY;
         this.dockerNetwork = dockerNetwork;
         this.useDaemon = useDaemon != null ? useDaemon : Boolean.TRUE; //default daemon to true for back compat.
+        //1 retains the single threaded gzip writer, higher values compress upload content in parallel blocks.
+        this.uploadCompressionThreads = uploadCompressionThreads != null ? Integer.max(1,uploadCompressionThreads) : DEFAULT_UPLOAD_COMPRESSION_THREADS;
+        this.uploadCodec = uploadCodec != null ? uploadCodec : DEFAULT_UPLOAD_CODEC;
+        //when true, files with identical content are sent once, with later copies as hard links to the first.
+        this.uploadLinkDuplicates = uploadLinkDuplicates != null ? uploadLinkDuplicates : DEFAULT_UPLOAD_LINK_DUPLICATES;
+        //when true, and the daemon is local, the application is staged to a host dir and bind mounted rather than uploaded.
+        this.bindMountApplication = bindMountApplication != null ? bindMountApplication : DEFAULT_BIND_MOUNT_APPLICATION;
+        //1 sends content as a single archive, higher values split uploads of at least the threshold size into concurrent archives.
+        this.uploadShards = uploadShards != null ? Integer.max(1,uploadShards) : DEFAULT_UPLOAD_SHARDS;
+        this.uploadShardThreshold = uploadShardThreshold != null ? Long.max(0,uploadShardThreshold) : DEFAULT_UPLOAD_SHARD_THRESHOLD;
 
         //take config values, and determine values to use.. 
         HostAndSocket hands = DockerClientUtils.probeContainerRuntime(new DockerClientUtils.HostAndSocket(dockerHost, dockerSocket));
@@ -69,6 +114,24 @@ public class DockerConfig {
         }
     }
 
+    //kept for callers of the constructor from before the upload and bind mount settings were added,
+    //declared after the full constructor, as the builder is generated from the first constructor.
+    public DockerConfig(                   
+        Integer pullTimeoutSeconds, 
+        Integer pullRetryCount,
+        Integer pullRetryIncreaseSeconds,
+        PullPolicy pullPolicy,
+        String dockerHost, 
+        String dockerSocket,
+        String dockerNetwork,
+        Boolean useDaemon, 
+        DockerClient dockerClient,
+        List<RegistryAuthConfig> authConfigs
+    ){
+        this(pullTimeoutSeconds, pullRetryCount, pullRetryIncreaseSeconds, pullPolicy, dockerHost, dockerSocket, dockerNetwork,
+             useDaemon, dockerClient, authConfigs, null, null, null, null, null, null);
+    }
+
     public void setDockerHost(String dockerHost){
         HostAndSocket hands = DockerClientUtils.probeContainerRuntime(new DockerClientUtils.HostAndSocket(dockerHost, this.dockerSocket));
         this.dockerHost = hands.host;
@@ -121,5 +184,28 @@ public class DockerConfig {
     public List<RegistryAuthConfig> getAuthConfigs(){
         return this.authConfigs;
     }
-}
 
+    public Integer getUploadCompressionThreads(){
+        return this.uploadCompressionThreads;
+    }
+
+    public UploadCodec getUploadCodec(){
+        return this.uploadCodec;
+    }
+
+    public Boolean getUploadLinkDuplicates(){
+        return this.uploadLinkDuplicates;
+    }
+
+    public Boolean getBindMountApplication(){
+        return this.bindMountApplication;
+    }
+
+    public Integer getUploadShards(){
+        return this.uploadShards;
+    }
+
+    public Long getUploadShardThreshold(){
+        return this.uploadShardThreshold;
+    }
+}
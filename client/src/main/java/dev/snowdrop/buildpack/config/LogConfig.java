@@ -1,5 +1,7 @@
 package dev.snowdrop.buildpack.config;
 
+import java.io.File;
+
 import dev.snowdrop.buildpack.Logger;
 import dev.snowdrop.buildpack.SystemLogger;
 import io.sundr.builder.annotations.Buildable;
@@ -17,16 +19,29 @@ public class LogConfig {
     private String logLevel;
     private Boolean useTimestamps;
     private Logger logger;
+    private File traceFile;
 
  
     public LogConfig(
         String logLevel, 
         Boolean useTimestamps, 
-        Logger logger
+        Logger logger,
+        File traceFile
     ){
         this.logLevel = logLevel!=null ? logLevel : DEFAULT_LOG_LEVEL;
         this.useTimestamps = useTimestamps!=null ? useTimestamps : DEFAULT_USE_TIMESTAMPS;
         this.logger = logger!=null ? logger : new SystemLogger();
+        this.traceFile = traceFile;
+    }
+
+    //kept for callers of the constructor from before traceFile was added,
+    //declared after the full constructor, as the builder is generated from the first constructor.
+    public LogConfig(
+        String logLevel, 
+        Boolean useTimestamps, 
+        Logger logger
+    ){
+        this(logLevel, useTimestamps, logger, null);
     }
 
     public String getLogLevel(){
@@ -40,5 +55,12 @@ public class LogConfig {
     public Boolean getUseTimestamps(){
         return useTimestamps;
     }
+
+    /**
+     * File to write a timeline trace of the build to, as Chrome trace_event JSON, or null for no trace.
+     */
+    public File getTraceFile(){
+        return traceFile;
+    }
     
 }
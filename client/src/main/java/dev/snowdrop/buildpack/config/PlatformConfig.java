@@ -19,18 +19,32 @@ public class PlatformConfig {
     private ImageReference lifecycleImage;
     private Boolean trustBuilder; //use creator when possible.
     private String phaseDebugScript;
+    private Boolean execPhases; //run phases via exec in long lived containers.
     
     public PlatformConfig( 
                    String platformLevel,
                    ImageReference lifecycleImage,
                    Map<String, String> environment,
                    Boolean trustBuilder,
-                   String phaseDebugScript){
+                   String phaseDebugScript,
+                   Boolean execPhases){
         this.platformLevel = platformLevel!=null ? platformLevel : DEFAULT_PLATFORM_LEVEL;
         this.environment = environment!=null ? environment : new HashMap<>();
         this.lifecycleImage = lifecycleImage;
         this.trustBuilder = trustBuilder;
         this.phaseDebugScript = phaseDebugScript;
+        this.execPhases = execPhases!=null ? execPhases : Boolean.FALSE;
+    }
+
+    //kept for callers of the constructor from before execPhases was added,
+    //declared after the full constructor, as the builder is generated from the first constructor.
+    public PlatformConfig( 
+                   String platformLevel,
+                   ImageReference lifecycleImage,
+                   Map<String, String> environment,
+                   Boolean trustBuilder,
+                   String phaseDebugScript){
+        this(platformLevel, lifecycleImage, environment, trustBuilder, phaseDebugScript, null);
     }
 
     public String getPlatformLevel(){
@@ -53,5 +67,9 @@ public class PlatformConfig {
         return phaseDebugScript;
     }
 
+    public Boolean getExecPhases(){
+        return execPhases;
+    }
+
 
 }
@@ -0,0 +1,158 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.utils.FilePermissions;
+import dev.snowdrop.buildpack.utils.FileSnapshot;
+import dev.snowdrop.buildpack.utils.FileTransfer;
+
+/**
+ * Stages application content into a host directory, to be bind mounted into the build containers,
+ * instead of being uploaded to a volume via the daemon.
+ *
+ * The staging directory is a copy of the content, so the build can modify it without affecting the
+ * original source. Files are copied via FileChannel.transferTo, so the copy is performed by the
+ * kernel rather than through the JVM. Only used when the daemon is local, (a unix socket) as a
+ * remote daemon cannot see host directories.
+ */
+public class ApplicationStaging {
+  private static final Logger log = LoggerFactory.getLogger(ApplicationStaging.class);
+
+  private static final String STAGING_PREFIX = "buildpack-app-";
+
+  /**
+   * True if the daemon for this config can bind mount directories from this host.
+   */
+  public static boolean supports(DockerConfig config) {
+    String host = config.getDockerHost();
+    return host != null && host.startsWith("unix://") && FileSnapshot.isPosix(Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * Create a staging directory populated with the entries, owned by uid/gid.
+   *
+   * The staged content is only ever accessible to uid/gid, never opened up to other local users. If
+   * ownership cannot be changed (eg, when not running as root), nothing is staged, the entries are
+   * closed unread, and null is returned, so the caller can upload the content instead.
+   *
+   * @return the staging directory, or null if it cannot be owned by uid/gid.
+   */
+  public static Path stage(Stream<ContainerEntry> entries, int uid, int gid) {
+    Path dir = null;
+    try (Stream<ContainerEntry> toStage = entries) {
+      //created 0700, so until its ownership is set, it is private to this user.
+      dir = Files.createTempDirectory(STAGING_PREFIX);
+      if (!chown(dir, uid, gid)) {
+        log.debug("Unable to set ownership of staging directory to "+uid+":"+gid+", application will not be staged");
+        deleteQuietly(dir);
+        return null;
+      }
+      Iterator<ContainerEntry> it = toStage.iterator();
+      while (it.hasNext()) {
+        ContainerEntry ce = it.next();
+        Path target = resolve(dir, ce.getPath());
+        Files.createDirectories(target.getParent());
+        //as with the archive upload, a later entry for the same path replaces an earlier one.
+        Files.deleteIfExists(target);
+        Path source = ce.getSourceFile();
+        if (FileTransfer.supports(source)) {
+          FileTransfer.copy(source, target);
+        } else {
+          try (InputStream is = ce.getDataSupplier().getData();
+               OutputStream os = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            FileTransfer.copy(is, os);
+          }
+        }
+        Files.setPosixFilePermissions(target, FilePermissions.fromMode(ce.getMode()));
+      }
+      //the staging dir could be chowned, so can the content.
+      try (Stream<Path> all = Files.walk(dir)) {
+        Iterator<Path> paths = all.iterator();
+        while (paths.hasNext()) {
+          Path p = paths.next();
+          if (!chown(p, uid, gid)) {
+            throw new IOException("Unable to set ownership of staged "+p+" to "+uid+":"+gid);
+          }
+        }
+      }
+      log.debug("Staged application content to "+dir);
+      return dir;
+    } catch (IOException | RuntimeException e) {
+      if (dir != null) {
+        deleteQuietly(dir);
+      }
+      throw BuildpackException.launderThrowable("Unable to stage application content", e);
+    }
+  }
+
+  /**
+   * Remove a staging directory. Content created during the build is owned by the build uid, so is
+   * first removed via a container running as root, before the directory itself is removed.
+   */
+  public static void remove(DockerClient dc, String useImage, Path dir) {
+    List<String> command = Arrays.asList("/bin/sh", "-c", "find /workspace -mindepth 1 -delete");
+    String id = ContainerUtils.createContainer(dc, useImage, command, 0, null, null, null, new VolumeBind(dir.toString(), "/workspace"));
+    try {
+      dc.startContainerCmd(id).exec();
+      dc.waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+    } finally {
+      ContainerUtils.removeContainer(dc, id);
+    }
+    deleteQuietly(dir);
+  }
+
+  static Path resolve(Path dir, String path) throws IOException {
+    String relative = path;
+    while (relative.startsWith("/")) {
+      relative = relative.substring(1);
+    }
+    Path target = dir.resolve(relative).normalize();
+    if (!target.startsWith(dir) || target.equals(dir)) {
+      throw new IOException("Entry path '" + path + "' is outside of the application directory");
+    }
+    return target;
+  }
+
+  private static boolean chown(Path p, int uid, int gid) {
+    try {
+      Files.setAttribute(p, "unix:uid", uid);
+      Files.setAttribute(p, "unix:gid", gid);
+      return true;
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+      return false;
+    }
+  }
+
+  private static void deleteQuietly(Path dir) {
+    try (Stream<Path> all = Files.walk(dir)) {
+      all.sorted(Comparator.reverseOrder()).forEach(p -> {
+        try {
+          Files.deleteIfExists(p);
+        } catch (IOException e) {
+          log.debug("Unable to remove staged path "+p, e);
+        }
+      });
+    } catch (IOException e) {
+      log.debug("Unable to remove staging directory "+dir, e);
+    }
+  }
+}
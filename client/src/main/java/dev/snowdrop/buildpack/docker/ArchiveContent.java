@@ -0,0 +1,326 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.EntryStreamOffsets;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.BoundedInputStream;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.utils.DirectoryWalker;
+import dev.snowdrop.buildpack.utils.FileSnapshot;
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * Content read from a zip/jar archive, or from a directory within any NIO FileSystem (eg, zipfs),
+ * without first extracting it to disk. Each entry is streamed from the archive as it is written
+ * to the container, entries are not buffered in memory.
+ *
+ * Entry paths are prefix + normalized path within the archive, entries with absolute paths, or paths
+ * leading outside of the archive (eg, ../) are rejected. Entry modes are taken from the unix mode
+ * recorded in the archive where present, otherwise 0644. Directories and symbolic links within
+ * the archive are not added as entries.
+ */
+@Buildable(generateBuilderPackage = true, builderPackage = "dev.snowdrop.buildpack.builder")
+public class ArchiveContent implements Content {
+
+  private static final String DEFAULT_PREFIX = "";
+  private static final String UNIX_FILE_SEPARATOR = "/";
+  private static final String NON_UNIX_FILE_SEPARATOR = "\\";
+
+  private final String prefix;
+  private final File archive;
+  private final Path root;
+
+  public ArchiveContent(File archive) {
+    this(DEFAULT_PREFIX, archive);
+  }
+
+  /**
+   * @param archive zip or jar file.
+   */
+  public ArchiveContent(String prefix, File archive) {
+    this.prefix = prefix == null ? DEFAULT_PREFIX : prefix;
+    this.archive = archive;
+    this.root = null;
+    if(!archive.isFile()){
+      throw new RuntimeException(new FileNotFoundException(archive.getAbsolutePath()));
+    }
+  }
+
+  /**
+   * @param root directory to add the content of, may be from any FileSystem (eg, a zipfs root)
+   */
+  public ArchiveContent(String prefix, Path root) {
+    this.prefix = prefix == null ? DEFAULT_PREFIX : prefix;
+    this.archive = null;
+    this.root = root;
+    if(!Files.isDirectory(root)){
+      throw new RuntimeException(new FileNotFoundException(root.toString()));
+    }
+  }
+
+  public String getPrefix() {
+    return prefix;
+  }
+
+  public File getArchive() {
+    return archive;
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * As streamContainerEntries, but collected to a List. The archive is not held open, stored and
+   * deflated entries are read directly from their offset in the archive, so reading an entry does
+   * not parse the archive again. Prefer streamContainerEntries for large archives.
+   */
+  @Override
+  public List<ContainerEntry> getContainerEntries() {
+    if (archive == null) {
+      try (Stream<ContainerEntry> entries = streamContainerEntries()) {
+        return entries.collect(Collectors.toList());
+      }
+    }
+    try (ZipFile zip = new ZipFile(archive)) {
+      return Collections.list(zip.getEntriesInPhysicalOrder()).stream()
+                        .filter(ArchiveContent::isFile)
+                        .map(ze -> entry(ze, isReadableAtOffset(zip, ze) ? () -> openAtOffset(ze) : () -> openReopening(ze.getName())))
+                        .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read archive " + archive, e);
+    }
+  }
+
+  /**
+   * Entries of the archive, the archive is held open until the stream is closed, so entry data
+   * must be read before then. When combining the streams of several Content, use
+   * ContainerUtils.streamContent, as flatMap closes each stream once its entries are taken.
+   */
+  @Override
+  public Stream<ContainerEntry> streamContainerEntries() {
+    if (archive == null) {
+      return DirectoryWalker.walk(root, (p, isDir) -> true).map(this::entry);
+    }
+    try {
+      ZipFile zip = new ZipFile(archive);
+      return Collections.list(zip.getEntriesInPhysicalOrder()).stream()
+                        .filter(ArchiveContent::isFile)
+                        .map(ze -> entry(ze, () -> open(zip, ze)))
+                        .onClose(() -> ZipFile.closeQuietly(zip));
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read archive " + archive, e);
+    }
+  }
+
+  private static boolean isFile(ZipArchiveEntry ze) {
+    return !ze.isDirectory() && !ze.isUnixSymlink();
+  }
+
+  private ContainerEntry entry(ZipArchiveEntry ze, ContainerEntry.DataSupplier data) {
+    int unixMode = ze.getUnixMode() & 07777;
+    int mode = unixMode != 0 ? unixMode : FileSnapshot.DEFAULT_MODE;
+    String path = prefix + entryPath(ze.getName());
+    long size = ze.getSize();
+    long lastModified = ze.getTime();
+    return new ContainerEntry() {
+      @Override
+      public String getPath() {
+        return path;
+      }
+
+      @Override
+      public long getSize() {
+        return size;
+      }
+
+      @Override
+      public Integer getMode() {
+        return mode;
+      }
+
+      @Override
+      public long getLastModified() {
+        return lastModified == -1 ? 0L : lastModified;
+      }
+
+      @Override
+      public DataSupplier getDataSupplier() {
+        return data;
+      }
+    };
+  }
+
+  /**
+   * The entry name as a normalized relative path, rejecting names that are absolute, or that would
+   * escape the prefix, as these would otherwise be passed to the daemon as-is.
+   */
+  private String entryPath(String name) {
+    String unix = name.replace(NON_UNIX_FILE_SEPARATOR, UNIX_FILE_SEPARATOR);
+    if (unix.startsWith(UNIX_FILE_SEPARATOR) || unix.matches("^[A-Za-z]:.*")) {
+      throw new BuildpackException("Archive entry '" + name + "' in " + archive + " is an absolute path", new IllegalArgumentException());
+    }
+    Deque<String> segments = new ArrayDeque<>();
+    for (String segment : unix.split(UNIX_FILE_SEPARATOR)) {
+      if (segment.isEmpty() || ".".equals(segment)) {
+        continue;
+      }
+      if ("..".equals(segment)) {
+        if (segments.pollLast() == null) {
+          throw new BuildpackException("Archive entry '" + name + "' in " + archive + " is outside of the archive", new IllegalArgumentException());
+        }
+        continue;
+      }
+      segments.add(segment);
+    }
+    if (segments.isEmpty()) {
+      throw new BuildpackException("Archive entry '" + name + "' in " + archive + " has no file name", new IllegalArgumentException());
+    }
+    return String.join(UNIX_FILE_SEPARATOR, segments);
+  }
+
+  private ContainerEntry entry(FileSnapshot snapshot) {
+    Path p = snapshot.getPath();
+    String path = prefix + root.relativize(p).toString().replace(NON_UNIX_FILE_SEPARATOR, UNIX_FILE_SEPARATOR);
+    return new ContainerEntry() {
+      @Override
+      public String getPath() {
+        return path;
+      }
+
+      @Override
+      public long getSize() {
+        return snapshot.getSize();
+      }
+
+      @Override
+      public Integer getMode() {
+        return snapshot.getMode();
+      }
+
+      @Override
+      public long getLastModified() {
+        return snapshot.getLastModified();
+      }
+
+      @Override
+      public Path getSourceFile() {
+        return p;
+      }
+
+      @Override
+      public DataSupplier getDataSupplier() {
+        return () -> {
+          try {
+            return Files.newInputStream(p);
+          } catch (IOException e) {
+            throw BuildpackException.launderThrowable(e);
+          }
+        };
+      }
+    };
+  }
+
+  private static InputStream open(ZipFile zip, ZipArchiveEntry ze) {
+    try {
+      return zip.getInputStream(ze);
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read " + ze.getName(), e);
+    }
+  }
+
+  private static boolean isReadableAtOffset(ZipFile zip, ZipArchiveEntry ze) {
+    return zip.canReadEntryData(ze)
+        && ze.getDataOffset() != EntryStreamOffsets.OFFSET_UNKNOWN
+        && (ze.getMethod() == ZipEntry.STORED || ze.getMethod() == ZipEntry.DEFLATED);
+  }
+
+  /**
+   * Opens the data of a stored or deflated entry at its offset in the archive, the file is
+   * closed with the returned stream.
+   */
+  private InputStream openAtOffset(ZipArchiveEntry ze) {
+    try {
+      FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+      try {
+        channel.position(ze.getDataOffset());
+        InputStream raw = new BoundedInputStream(Channels.newInputStream(channel), ze.getCompressedSize());
+        if (ze.getMethod() == ZipEntry.STORED) {
+          return new FilterInputStream(raw) {
+            @Override
+            public void close() throws IOException {
+              channel.close();
+            }
+          };
+        }
+        //a raw inflater may need a byte beyond the compressed data to report the end of the entry.
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])), inflater) {
+          @Override
+          public void close() throws IOException {
+            try {
+              inflater.end();
+            } finally {
+              channel.close();
+            }
+          }
+        };
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read " + ze.getName(), e);
+    }
+  }
+
+  /**
+   * Opens the archive to read a single entry, the archive is closed with the returned stream.
+   * Only used for entries that cannot be read at their offset (eg, compressed other than by deflate).
+   */
+  private InputStream openReopening(String name) {
+    try {
+      ZipFile zip = new ZipFile(archive);
+      ZipArchiveEntry ze = zip.getEntry(name);
+      if (ze == null) {
+        zip.close();
+        throw new FileNotFoundException(name + " in " + archive);
+      }
+      return new FilterInputStream(zip.getInputStream(ze)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            zip.close();
+          }
+        }
+      };
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read " + name, e);
+    }
+  }
+}
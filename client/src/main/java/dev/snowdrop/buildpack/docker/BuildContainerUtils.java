@@ -1,19 +1,14 @@
 package dev.snowdrop.buildpack.docker;
 
 import java.io.BufferedOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,55 +55,20 @@ public class BuildContainerUtils {
     }
 
     private static void populateMountPointDirs(DockerClient dc, String targetContainerId, int uid, int gid, List<String> dirs){
-        try (PipedInputStream in = new PipedInputStream(4096); PipedOutputStream out = new PipedOutputStream(in)) {
-            AtomicReference<Exception> writerException = new AtomicReference<>();
-
-            Runnable writer = new Runnable() {
-                @Override
-                public void run() {
-                    try (TarArchiveOutputStream tout = new TarArchiveOutputStream(new GZIPOutputStream(new BufferedOutputStream(out)));) {
-                        tout.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
-                        for (String dir : dirs) {
-                            TarArchiveEntry tae = new TarArchiveEntry(dir + "/");
-                            tae.setSize(0);
-                            tae.setUserId(uid);
-                            tae.setGroupId(gid);
-                            tae.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
-                            tout.putArchiveEntry(tae);
-                            tout.closeArchiveEntry();
-                        } 
-                    } catch (Exception e) {
-                        writerException.set(e);
-                    }
-                } 
-            };
-
-            Runnable reader = new Runnable() {
-                @Override
-                public void run() {
-                dc.copyArchiveToContainerCmd(targetContainerId).withRemotePath("/").withTarInputStream(in).exec();
+        TarStreamPipeline.stream(
+            out -> new GZIPOutputStream(new BufferedOutputStream(out)),
+            tout -> {
+                for (String dir : dirs) {
+                    TarArchiveEntry tae = new TarArchiveEntry(dir + "/");
+                    tae.setSize(0);
+                    tae.setUserId(uid);
+                    tae.setGroupId(gid);
+                    tae.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
+                    tout.putArchiveEntry(tae);
+                    tout.closeArchiveEntry();
                 }
-            };
-
-            Thread t1 = new Thread(writer);
-            Thread t2 = new Thread(reader);
-            t1.start();
-            t2.start();
-            try {
-                t1.join();
-                t2.join();
-            } catch (InterruptedException ie) {
-                throw BuildpackException.launderThrowable(ie);
-            }
-
-            // did the write thread complete without issues? if not, bubble the cause.
-            Exception wio = writerException.get();
-            if (wio != null) {
-                throw BuildpackException.launderThrowable(wio);
-            }
-        } catch (IOException e) {
-            throw BuildpackException.launderThrowable(e);
-        }
+            },
+            in -> dc.copyArchiveToContainerCmd(targetContainerId).withRemotePath("/").withTarInputStream(in).exec());
     }
 
     private static void addDebug(DockerClient dc, PlatformConfig pc, String targetContainerId) {
@@ -1,6 +1,7 @@
 package dev.snowdrop.buildpack.docker;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 
 /**
  * Abstraction representing an entry in a container. Allows for entries to be
@@ -18,6 +19,22 @@ public interface ContainerEntry {
 
   public DataSupplier getDataSupplier();
 
+  /**
+   * Last modified time of the entry source in millis, or 0 if unknown.
+   * Used to skip rehashing unchanged content during incremental uploads.
+   */
+  default long getLastModified() {
+    return 0L;
+  }
+
+  /**
+   * File backing this entry, or null if the entry is not file backed.
+   * When present, content may be read directly from the file instead of via the DataSupplier.
+   */
+  default Path getSourceFile() {
+    return null;
+  }
+
   @FunctionalInterface
   public interface DataSupplier {
     InputStream getData();
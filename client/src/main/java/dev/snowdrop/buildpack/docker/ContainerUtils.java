@@ -1,6 +1,5 @@
 package dev.snowdrop.buildpack.docker;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -8,42 +7,63 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.CopyArchiveFromContainerCmd;
 import com.github.dockerjava.api.command.CopyArchiveToContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.InspectExecResponse;
 import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Frame;
 import com.github.dockerjava.api.model.Volume;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.jfr.BuildEvents;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
+import dev.snowdrop.buildpack.trace.BuildTrace;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.config.DockerConfig.UploadCodec;
 import dev.snowdrop.buildpack.docker.ContainerEntry.DataSupplier;
+import dev.snowdrop.buildpack.utils.FileTransfer;
+import dev.snowdrop.buildpack.utils.TaskExecutors;
 
 
 public class ContainerUtils {
   private static final Logger log = LoggerFactory.getLogger(ContainerUtils.class);
 
+  // modification time used for all uploaded entries, 1980-01-01T00:00:01Z, matching the normalized time used by pack/lifecycle.
+  static final long NORMALIZED_MTIME = 315532801000L;
+
+  private static final String SHARD_SENDERS = "buildpack-upload-shard";
+
 
   public static String createContainer(DockerClient dc, String imageReference, VolumeBind... volumes) {
     return createContainer(dc, imageReference, null, volumes);
@@ -118,7 +138,9 @@ public class ContainerUtils {
        ccc.withHostConfig(ccc.getHostConfig().withNetworkMode(network));
     }
 
+    long start = System.nanoTime();
     CreateContainerResponse ccr = ccc.exec();
+    BuildMetricsRegistry.get().containerCreated(System.nanoTime() - start);
 
     return ccr.getId();
   }
@@ -128,7 +150,36 @@ public class ContainerUtils {
   }  
 
   public static void removeContainer(DockerClient dc, String containerId) {
+    long start = System.nanoTime();
     dc.removeContainerCmd(containerId).withForce(true).exec();
+    BuildMetricsRegistry.get().containerRemoved(System.nanoTime() - start);
+  }
+
+  /**
+   * Runs a command in a running container as the specified uid, relaying its output to the callback.
+   * @return the exit code of the command.
+   */
+  public static int execInContainer(DockerClient dc, String containerId, List<String> command, Integer runAsId, ResultCallback.Adapter<Frame> output) {
+    ExecCreateCmd ecc = dc.execCreateCmd(containerId)
+                          .withCmd(command.toArray(new String[command.size()]))
+                          .withAttachStdout(true)
+                          .withAttachStderr(true);
+    if (runAsId != null) {
+      ecc.withUser("" + runAsId);
+    }
+    String execId = ecc.exec().getId();
+    try {
+      dc.execStartCmd(execId).exec(output).awaitCompletion();
+      // the output stream can end fractionally before the exit code is recorded.
+      InspectExecResponse ier = dc.inspectExecCmd(execId).exec();
+      while (Boolean.TRUE.equals(ier.isRunning())) {
+        Thread.sleep(50);
+        ier = dc.inspectExecCmd(execId).exec();
+      }
+      return ier.getExitCodeLong() != null ? ier.getExitCodeLong().intValue() : -1;
+    } catch (InterruptedException e) {
+      throw BuildpackException.launderThrowable("Interrupted running " + command.get(0) + " in container " + containerId, e);
+    }
   }
 
   public static void addContentToContainer(DockerClient dc, String containerId, List<ContainerEntry> entries) {
@@ -149,38 +200,6 @@ public class ContainerUtils {
     addContentToContainer(dc, containerId, pathInContainer, userId, groupId, new StringContent(name, mode, content).getContainerEntries());
   }
 
-  /**
-   * util method to add the parent dirs of a file/dir to an archive, to force them
-   * to exist with the correct permissions, otherwise implicitly defined
-   * directories were being created with perms preventing the buildpack from
-   * executing as expected.
-   */
-  private static void addParents(TarArchiveOutputStream tout, Set<String> seenDirs, int uid, int gid, String path) {
-    try {
-      if (path.contains("/")) {
-        String parent = path.substring(0, path.lastIndexOf("/"));
-        boolean unknown = seenDirs.add(parent);
-        // only need to follow this chain if we haven't done it already =)
-        if (unknown) {
-          // add parents of this FIRST
-          addParents(tout, seenDirs, uid, gid, parent);
-          
-          log.debug("adding "+parent+"/ to tar");
-          // and then add this =)
-          TarArchiveEntry tae = new TarArchiveEntry(parent + "/");
-          tae.setSize(0);
-          tae.setUserId(uid);
-          tae.setGroupId(gid);     
-          tae.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
-          tout.putArchiveEntry(tae);
-          tout.closeArchiveEntry();
-        }
-      }
-    } catch (IOException e) {
-      throw BuildpackException.launderThrowable(e);
-    }
-  }
-
   /**
    * Adds content to the container, with specified uid/gid
    */
@@ -189,12 +208,76 @@ public class ContainerUtils {
   }
 
   public static void addContentToContainer(DockerClient dc, String containerId, String pathInContainer, Integer userId, Integer groupId, ContainerEntry... entries) {
+    addContentToContainerInternal(dc, null, UploadCodec.GZIP_6, 1, false, 1, 0, containerId, pathInContainer, userId, groupId, Arrays.stream(entries).sorted(BY_PATH));
+  }
 
-    log.debug("Adding to container "+containerId+" pathInContainer "+pathInContainer);
+  /**
+   * Adds content to the container, with specified uid/gid, using the upload settings from the DockerConfig
+   */
+  public static void addContentToContainer(DockerConfig config, String containerId, String pathInContainer, Integer userId, Integer groupId, List<ContainerEntry> entries) {
+    addContentToContainer(config, containerId, pathInContainer, userId, groupId, entries != null ? entries.toArray(new ContainerEntry[entries.size()]) : new ContainerEntry[0]);
+  }
+
+  public static void addContentToContainer(DockerConfig config, String containerId, String pathInContainer, Integer userId, Integer groupId, ContainerEntry... entries) {
+    addContentToContainer(config, containerId, pathInContainer, userId, groupId, Arrays.stream(entries).sorted(BY_PATH));
+  }
 
-    Set<String> seenDirs = new HashSet<>();
-    // Don't add entry for "/", causes issues with tar format.
-    seenDirs.add("");
+  /**
+   * Adds content to the container, with specified uid/gid, using the upload settings from the DockerConfig.
+   * Entries are consumed from the stream as the archive is written, and the stream is closed on completion.
+   * The archive holds entries in stream order, (content walks directories in name order) unless sharding or
+   * linking duplicates, which collect every entry first and write them in name order.
+   */
+  public static void addContentToContainer(DockerConfig config, String containerId, String pathInContainer, Integer userId, Integer groupId, Stream<ContainerEntry> entries) {
+    int threads = config.getUploadCompressionThreads() != null ? config.getUploadCompressionThreads() : 1;
+    boolean linkDuplicates = Boolean.TRUE.equals(config.getUploadLinkDuplicates());
+    int shards = config.getUploadShards() != null ? config.getUploadShards() : 1;
+    long shardThreshold = config.getUploadShardThreshold() != null ? config.getUploadShardThreshold() : 0;
+    addContentToContainerInternal(config.getDockerClient(), config.getDockerHost(), UploadCompression.resolve(config), threads, linkDuplicates, shards, shardThreshold, containerId, pathInContainer, userId, groupId, entries);
+  }
+
+  /**
+   * Entries of each Content in turn, as a single stream for addContentToContainer. Each Content's stream
+   * is closed when the returned stream is closed, rather than once its entries have been taken as with
+   * flatMap, as entry data may only be readable while its stream is open (eg, ArchiveContent).
+   */
+  public static Stream<ContainerEntry> streamContent(List<? extends Content> content) {
+    List<Stream<ContainerEntry>> opened = new ArrayList<>();
+    return content.stream()
+                  .flatMap(c -> {
+                    Stream<ContainerEntry> entries = c.streamContainerEntries();
+                    opened.add(entries);
+                    //a stream over the spliterator, so flatMap closing it leaves the content's stream open.
+                    return StreamSupport.stream(entries.spliterator(), false);
+                  })
+                  .onClose(() -> closeAll(opened));
+  }
+
+  private static void closeAll(List<Stream<ContainerEntry>> streams) {
+    RuntimeException failure = null;
+    for (Stream<ContainerEntry> s : streams) {
+      try {
+        s.close();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * @param dockerHost host the client is connected to, used to record upload throughput, may be null.
+   * @param shards number of concurrent archives to split content of at least shardThreshold bytes into.
+   */
+  private static void addContentToContainerInternal(DockerClient dc, String dockerHost, UploadCodec codec, int compressionThreads, boolean linkDuplicates, int shards, long shardThreshold, String containerId, String pathInContainer, Integer userId, Integer groupId, Stream<ContainerEntry> entries) {
+
+    log.debug("Adding to container "+containerId+" pathInContainer "+pathInContainer+" using "+codec+" with "+compressionThreads+" compression thread(s)");
 
     // use supplied pathInContainer, trim off trailing "/" where required.
     final String containerPath = (!pathInContainer.isEmpty() && pathInContainer.endsWith("/"))
@@ -205,122 +288,314 @@ public class ContainerUtils {
     final int uid = (userId != null) ? userId : 0;
     final int gid = (groupId != null) ? groupId : 0;
 
-    try (PipedInputStream in = new PipedInputStream(4096); PipedOutputStream out = new PipedOutputStream(in)) {
-      AtomicReference<Exception> writerException = new AtomicReference<>();
-
-      Runnable writer = new Runnable() {
-        @Override
-        public void run() {
-          try (TarArchiveOutputStream tout = new TarArchiveOutputStream(new GZIPOutputStream(new BufferedOutputStream(out)));) {
-            tout.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
-            for (ContainerEntry ve : entries) {
-              // prefix the entry path with the pathInContainer value.
-              String entryPath = ve.getPath();
-              
-              if(entryPath==null || entryPath.isEmpty()) {
-                throw new IOException("Error path was empty");
-              }
-              
-              if (entryPath.startsWith("/"))
-                entryPath = entryPath.substring(1);
-
-              // important! adds the parent dirs for the entries with the correct uid/gid.
-              // (otherwise various buildpack tasks won't be able to write to them!)
-              addParents(tout, seenDirs, uid, gid, entryPath);
-              
-              log.debug("adding "+entryPath+" to tar");
-              // add this file entry.
-              TarArchiveEntry tae = new TarArchiveEntry(entryPath);
-              tae.setSize(ve.getSize());
-              tae.setUserId(uid);
-              tae.setGroupId(gid);                            
-              tae.setMode(0100000 + ve.getMode()); //0100000 means 'regular file'
-              tout.putArchiveEntry(tae);
-              tout.flush();
-              DataSupplier cs = ve.getDataSupplier();
-              if(cs==null) {
-                throw new IOException("Error DataSupplier was not provided");
-              }
-              try (InputStream is = ve.getDataSupplier().getData();) {
-                if(is==null) {
-                  throw new IOException("Error DataSupplier gave null for getData");
-                }
-                copy(is, tout);
-              }
-              tout.closeArchiveEntry();
-              tout.flush();
-              log.trace("add of "+entryPath+" complete");
-            } 
-          } catch (Exception e) {
-            log.debug("Error during writer thread", e);
-            writerException.set(e);
-          }
-          log.trace("Writer thread complete");          
-        } 
-        };
-
-      AtomicReference<Exception> readerException = new AtomicReference<>();
-      Runnable reader = new Runnable() {
-        @Override
-        public void run() {
-          try{
-            log.trace("Creating copy command");
-            CopyArchiveToContainerCmd c = dc.copyArchiveToContainerCmd(containerId)
-                                            .withRemotePath(containerPath)
-                                            .withTarInputStream(in);
-            log.trace("Starting copy command");
-            c.exec();
-            log.trace("copy command complete");
-          } catch (Exception e) {
-            log.trace("Error during consumer thread", e);
-            writerException.set(e);
+    log.debug("Copying archive to container at "+containerPath);
+    long start = System.nanoTime();
+    Object event = BuildEvents.beginUpload();
+    BuildTrace.Span span = BuildTrace.begin("upload", "upload");
+
+    long wireBytes;
+    //the entries sent, and the number of shards used to send them, for the upload event.
+    Sent sent = new Sent();
+    int archives = 1;
+    try (Stream<ContainerEntry> toAdd = entries) {
+      if (shards > 1 || linkDuplicates) {
+        // sharding needs the content size, and finding duplicates needs every entry, so collect them all first.
+        TarEntryTree tree = collectEntries(toAdd.iterator());
+        sent.entries = tree.size();
+        sent.contentBytes = tree.contentSize();
+        Map<String, String> links = linkDuplicates ? findDuplicates(tree) : Collections.emptyMap();
+        if (shards > 1 && tree.size() > 1 && tree.contentSize() >= shardThreshold) {
+          wireBytes = copyShardsToContainer(dc, codec, compressionThreads, containerId, containerPath, tree, links, shards, uid, gid);
+          archives = shards;
+        } else {
+          wireBytes = copyArchiveToContainer(dc, codec, compressionThreads, containerId, containerPath,
+                                             tout -> writeEntries(tout, tree, uid, gid, links));
+        }
+      } else {
+        // otherwise entries are written as they are read from the stream, while the copy consumes the archive.
+        wireBytes = copyArchiveToContainer(dc, codec, compressionThreads, containerId, containerPath,
+                                           tout -> streamEntries(tout, toAdd.iterator(), uid, gid, sent));
+      }
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable(e);
+    }
+
+    log.trace("copy contents complete without error.");
+    UploadCompression.recordUpload(dockerHost, wireBytes, System.nanoTime() - start);
+    long contentBytes = sent.contentBytes;
+    BuildEvents.endUpload(event, containerId, containerPath, codec.name(), archives,
+                          sent.entries, contentBytes, wireBytes);
+    BuildMetricsRegistry.get().contentUploaded(contentBytes, wireBytes, System.nanoTime() - start);
+    BuildReport.recordUpload(wireBytes);
+    span.arg("containerId", containerId)
+        .arg("path", containerPath)
+        .arg("codec", codec.name())
+        .arg("archives", archives)
+        .arg("contentBytes", contentBytes)
+        .arg("wireBytes", wireBytes)
+        .end();
+  }
+
+  private static long copyArchiveToContainer(DockerClient dc, UploadCodec codec, int compressionThreads, String containerId, String containerPath, TarStreamPipeline.TarWriter writer) {
+    return TarStreamPipeline.stream(
+      out -> UploadCompression.compress(out, codec, compressionThreads),
+      writer,
+      in -> {
+        log.trace("Creating copy command");
+        CopyArchiveToContainerCmd c = dc.copyArchiveToContainerCmd(containerId)
+                                        .withRemotePath(containerPath)
+                                        .withTarInputStream(in);
+        log.trace("Starting copy command");
+        c.exec();
+        log.trace("copy command complete");
+      });
+  }
+
+  /**
+   * Sends the content as concurrent archives, each to the same path in the container.
+   *
+   * An archive of only the directories is sent first, so every directory exists with the correct
+   * uid/gid/mode before the shards, which contain only files, are extracted into them in parallel.
+   * @return total bytes sent for all archives.
+   */
+  private static long copyShardsToContainer(DockerClient dc, UploadCodec codec, int compressionThreads, String containerId, String containerPath, TarEntryTree tree, Map<String, String> links, int shards, int uid, int gid) throws IOException {
+    List<TarEntryTree> split = UploadShards.split(tree, links, shards);
+    log.debug("writing "+tree.size()+" entries to "+split.size()+" concurrent tars, "+links.size()+" as links");
+
+    long wireBytes = copyArchiveToContainer(dc, codec, compressionThreads, containerId, containerPath,
+                                            tout -> writeEntries(tout, tree, uid, gid, links, true, false));
+
+    List<Future<Long>> sent = new ArrayList<>();
+    for (TarEntryTree shard : split) {
+      sent.add(TaskExecutors.get(SHARD_SENDERS).submit(BuildTrace.wrap(() -> copyArchiveToContainer(dc, codec, compressionThreads, containerId, containerPath,
+                                                                tout -> writeEntries(tout, shard, uid, gid, links, false, true)))));
+    }
+
+    Throwable failure = null;
+    for (Future<Long> f : sent) {
+      try {
+        if (failure == null) {
+          wireBytes += f.get();
+        } else {
+          f.cancel(true);
+        }
+      } catch (ExecutionException e) {
+        failure = e.getCause();
+      } catch (InterruptedException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      sent.forEach(f -> f.cancel(true));
+      throw BuildpackException.launderThrowable(failure);
+    }
+    return wireBytes;
+  }
+
+  /**
+   * Orders entries by name within each directory, as the tree does, for entries already held in memory,
+   * so the archive does not depend on the order they were supplied in.
+   */
+  static final Comparator<ContainerEntry> BY_PATH = (a, b) -> {
+    String[] pa = segments(a.getPath());
+    String[] pb = segments(b.getPath());
+    for (int i = 0; i < Math.min(pa.length, pb.length); i++) {
+      int c = pa[i].compareTo(pb[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(pa.length, pb.length);
+  };
+
+  private static String[] segments(String path) {
+    return path == null ? new String[0] : Arrays.stream(path.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+  }
+
+  /**
+   * Count of the entries written to an archive, and their content size, for the upload event.
+   */
+  private static class Sent {
+    int entries;
+    long contentBytes;
+  }
+
+  /**
+   * Arranges the entries into a tree, a later entry for the same path replaces an earlier one.
+   */
+  private static TarEntryTree collectEntries(Iterator<ContainerEntry> it) throws IOException {
+    TarEntryTree tree = new TarEntryTree();
+    while (it.hasNext()) {
+      ContainerEntry ve = it.next();
+      tree.add(entryPath(ve), ve);
+    }
+    return tree;
+  }
+
+  private static String entryPath(ContainerEntry ve) throws IOException {
+    String entryPath = ve.getPath();
+
+    if(entryPath==null || entryPath.isEmpty()) {
+      throw new IOException("Error path was empty");
+    }
+
+    if (entryPath.startsWith("/"))
+      entryPath = entryPath.substring(1);
+
+    return entryPath;
+  }
+
+  /**
+   * Writes the entries to the archive as they are read, adding each parent dir before the first entry
+   * beneath it, with the specified uid/gid and a fixed modification time.
+   *
+   * Entries are written in the order supplied, content walks directories in name order, so identical
+   * content results in an identical archive. A later entry for a path already written is written again,
+   * and replaces the earlier one when extracted.
+   */
+  private static void streamEntries(TarArchiveOutputStream tout, Iterator<ContainerEntry> it, int uid, int gid, Sent sent) throws IOException {
+    Set<String> directories = new HashSet<>();
+    while (it.hasNext()) {
+      ContainerEntry ve = it.next();
+      String path = entryPath(ve);
+      // important! adds the parent dirs for the entries with the correct uid/gid.
+      StringBuilder dir = new StringBuilder();
+      int start = 0;
+      int slash;
+      while ((slash = path.indexOf('/', start)) >= 0) {
+        if (slash > start) {
+          dir.append(path, start, slash + 1);
+          if (directories.add(dir.toString())) {
+            writeDirectory(tout, dir.toString(), uid, gid);
           }
-          log.trace("Consumer thread complete");
         }
-      };
+        start = slash + 1;
+      }
+      log.debug("adding "+path+" to tar");
+      writeFile(tout, dir + path.substring(start), ve, uid, gid);
+      sent.entries++;
+      sent.contentBytes += ve.getSize();
+    }
+    log.debug("wrote "+sent.entries+" entries to tar");
+  }
 
-      Thread t1 = new Thread(writer,"buildpack-tar-writer-thread");
-      Thread t2 = new Thread(reader, "buildpack-tar-reader-thread");
+  private static void writeDirectory(TarArchiveOutputStream tout, String path, int uid, int gid) throws IOException {
+    log.debug("adding "+path+" to tar");
+    TarArchiveEntry tae = newTarEntry(path, uid, gid);
+    tae.setSize(0);
+    tae.setMode(TarArchiveEntry.DEFAULT_DIR_MODE);
+    tout.putArchiveEntry(tae);
+    tout.closeArchiveEntry();
+  }
 
-      log.debug("Copying archive to container at "+containerPath);
+  /**
+   * Writes the entries to the archive, adding parent dirs as required, with the specified uid/gid.
+   *
+   * The entries are written in the sorted path order of the tree, with a fixed modification time,
+   * so identical content always results in an identical archive.
+   *
+   * Entries with a path in links are written as hard links to the path they map to.
+   */
+  private static void writeEntries(TarArchiveOutputStream tout, TarEntryTree tree, int uid, int gid, Map<String, String> links) throws IOException {
+    log.debug("writing "+tree.size()+" entries to tar, "+links.size()+" as links");
+    writeEntries(tout, tree, uid, gid, links, true, true);
+  }
 
-      log.trace("Launching tar stream creator thread");
-      t1.start();
-      //add delay to wait for writer a bit.. 
-      try{
-        Thread.sleep(500);
-      }catch(InterruptedException ie){
-        //ignore
+  /**
+   * As above, omitting the directories or the files, for content sent as more than one archive.
+   */
+  private static void writeEntries(TarArchiveOutputStream tout, TarEntryTree tree, int uid, int gid, Map<String, String> links, boolean directories, boolean files) throws IOException {
+    tree.visit(new TarEntryTree.Visitor() {
+      // important! adds the parent dirs for the entries with the correct uid/gid.
+      // (otherwise various buildpack tasks won't be able to write to them!)
+      @Override
+      public void directory(String path) throws IOException {
+        if (!directories) {
+          return;
+        }
+        writeDirectory(tout, path, uid, gid);
       }
-      log.trace("Launching tar stream consumer thread");
-      t2.start();
-
-      log.trace("joining threads");
-      try {        
-        t1.join();
-        log.trace("-writer joined");
-        t2.join();
-        log.trace("-consumer joined");
-      } catch (InterruptedException ie) {
-        throw BuildpackException.launderThrowable(ie);
+
+      @Override
+      public void file(String path, ContainerEntry ve) throws IOException {
+        if (!files) {
+          return;
+        }
+        String target = links.get(path);
+        if (target != null) {
+          log.debug("adding "+path+" to tar as link to "+target);
+          TarArchiveEntry tae = newTarEntry(path, TarConstants.LF_LINK, uid, gid);
+          tae.setLinkName(target);
+          tae.setMode(0100000 + ve.getMode());
+          tout.putArchiveEntry(tae);
+          tout.closeArchiveEntry();
+          return;
+        }
+        log.debug("adding "+path+" to tar");
+        writeFile(tout, path, ve, uid, gid);
+        log.trace("add of "+path+" complete");
       }
+    });
+  }
 
-      log.trace("testing for errors");
-      // did the write thread complete without issues? if not, bubble the cause.
-      Exception wio = writerException.get();
-      if (wio != null) {
-        throw BuildpackException.launderThrowable(wio);
+  /**
+   * Create a tar entry with the fixed modification time, and no user/group names, (these would otherwise
+   * default to the current time and user, making the archive differ between runs)
+   */
+  private static TarArchiveEntry newTarEntry(String path, int uid, int gid) {
+    return newTarEntry(path, TarConstants.LF_NORMAL, uid, gid);
+  }
+
+  private static TarArchiveEntry newTarEntry(String path, byte linkFlag, int uid, int gid) {
+    TarArchiveEntry tae = new TarArchiveEntry(path, linkFlag);
+    tae.setModTime(NORMALIZED_MTIME);
+    tae.setUserName("");
+    tae.setGroupName("");
+    tae.setUserId(uid);
+    tae.setGroupId(gid);
+    return tae;
+  }
+
+  /**
+   * Collects the files in the order they will be written, so each link follows its target in the archive.
+   */
+  private static Map<String, String> findDuplicates(TarEntryTree tree) throws IOException {
+    LinkedHashMap<String, ContainerEntry> files = new LinkedHashMap<>();
+    tree.visit(new TarEntryTree.Visitor() {
+      @Override
+      public void directory(String path) {
       }
-      // did the read thread complete without issues? if not, bubble the cause.
-      Exception rio = readerException.get();
-      if (rio != null) {
-        throw BuildpackException.launderThrowable(rio);
+
+      @Override
+      public void file(String path, ContainerEntry entry) {
+        files.put(path, entry);
+      }
+    });
+    return DuplicateContent.find(files);
+  }
+
+  private static void writeFile(TarArchiveOutputStream tout, String path, ContainerEntry ve, int uid, int gid) throws IOException {
+    TarArchiveEntry tae = newTarEntry(path, uid, gid);
+    tae.setSize(ve.getSize());
+    tae.setMode(0100000 + ve.getMode()); //0100000 means 'regular file'
+    tout.putArchiveEntry(tae);
+    Path source = ve.getSourceFile();
+    if (FileTransfer.supports(source)) {
+      // file backed, read via channel rather than the supplier stream.
+      FileTransfer.copy(source, tout);
+    } else {
+      DataSupplier cs = ve.getDataSupplier();
+      if(cs==null) {
+        throw new IOException("Error DataSupplier was not provided");
+      }
+      try (InputStream is = ve.getDataSupplier().getData();) {
+        if(is==null) {
+          throw new IOException("Error DataSupplier gave null for getData");
+        }
+        copy(is, tout);
       }
-      log.trace("copy contents complete without error.");
-    } catch (IOException e) {
-        log.debug("IOException during copy content to container",e);
-        throw BuildpackException.launderThrowable(e);
     }
+    tout.closeArchiveEntry();
   }
 
   public static byte[] getFileFromContainer(DockerClient dc, String id, String path) {
@@ -348,12 +623,8 @@ public class ContainerUtils {
   }
 
   private static final void copy(InputStream in, OutputStream out) {
-    byte[] buf = new byte[8192];
-    int length;
     try {
-      while ((length = in.read(buf)) > 0) {
-        out.write(buf, 0, length);
-      }
+      FileTransfer.copy(in, out);
     } catch (IOException e) {
       throw BuildpackException.launderThrowable(e);
     }
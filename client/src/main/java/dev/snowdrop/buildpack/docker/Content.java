@@ -1,8 +1,17 @@
-
 package dev.snowdrop.buildpack.docker;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface Content {
   List<ContainerEntry> getContainerEntries();
+
+  /**
+   * Entries for this content as a stream, allowing implementations to produce entries lazily
+   * (eg, while walking a directory) rather than holding them all in memory. Callers must close the stream,
+   * and entry data may only be readable until it is closed.
+   */
+  default Stream<ContainerEntry> streamContainerEntries() {
+    return getContainerEntries().stream();
+  }
 }
@@ -0,0 +1,187 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+/**
+ * Record of the application content last synced into a persistent application volume.
+ *
+ * Each entry is keyed by its path within the volume, and tracks size/mtime/mode/sha256
+ * so that a subsequent build can determine which entries need to be sent, and which
+ * entries are no longer part of the application and must be removed.
+ */
+public class ContentManifest {
+  private static final Logger log = LoggerFactory.getLogger(ContentManifest.class);
+
+  public static class Entry {
+    public long size;
+    public long lastModified;
+    public int mode;
+    public String sha256;
+  }
+
+  /**
+   * Result of comparing a set of container entries against a manifest.
+   */
+  public static class Delta {
+    public final List<ContainerEntry> changed = new ArrayList<>();
+    public final List<String> removed = new ArrayList<>();
+    public final ContentManifest manifest = new ContentManifest();
+  }
+
+  public int uid;
+  public int gid;
+  public TreeMap<String, Entry> entries = new TreeMap<>();
+
+  public static ContentManifest fromJson(byte[] json) {
+    if (json == null || json.length == 0) {
+      return new ContentManifest();
+    }
+    ObjectMapper om = new ObjectMapper();
+    om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    try {
+      return om.readValue(json, ContentManifest.class);
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to parse content manifest", e);
+    }
+  }
+
+  public String toJson() {
+    try {
+      return new ObjectMapper().writeValueAsString(this);
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to serialize content manifest", e);
+    }
+  }
+
+  /**
+   * Normalizes an entry path to the form used as a manifest key (no leading '/').
+   */
+  static String normalize(String path) {
+    String p = path;
+    while (p.startsWith("/")) {
+      p = p.substring(1);
+    }
+    return p;
+  }
+
+  /**
+   * Compare the supplied entries against this manifest, to determine what must be sent to bring
+   * a volume synced with this manifest up to date.
+   *
+   * Entries with unchanged size, mode and (non zero) last modified time are assumed unchanged without
+   * reading their content. Other entries are hashed, and only sent if the hash differs. If the uid/gid
+   * differ from those the manifest was created with, every entry is resent.
+   */
+  public Delta diff(List<ContainerEntry> current, int uid, int gid) {
+    return diff(current.stream(), uid, gid);
+  }
+
+  /**
+   * As diff(List,int,int), consuming entries from the stream, only changed entries are retained.
+   */
+  public Delta diff(Stream<ContainerEntry> current, int uid, int gid) {
+    Delta delta = new Delta();
+    delta.manifest.uid = uid;
+    delta.manifest.gid = gid;
+
+    boolean ownerChanged = this.uid != uid || this.gid != gid;
+
+    Iterator<ContainerEntry> it = current.iterator();
+    while (it.hasNext()) {
+      ContainerEntry ce = it.next();
+      if (ce.getPath() == null || ce.getPath().isEmpty()) {
+        throw new BuildpackException("Error path was empty", new IllegalArgumentException());
+      }
+      String key = normalize(ce.getPath());
+      Entry previous = ownerChanged ? null : entries.get(key);
+
+      Entry e = new Entry();
+      e.size = ce.getSize();
+      e.lastModified = ce.getLastModified();
+      e.mode = ce.getMode() != null ? ce.getMode() : 0;
+
+      if (previous != null && previous.size == e.size && previous.mode == e.mode
+          && e.lastModified != 0 && previous.lastModified == e.lastModified) {
+        e.sha256 = previous.sha256;
+      } else {
+        e.sha256 = sha256(ce);
+        if (previous == null || previous.mode != e.mode || !e.sha256.equals(previous.sha256)) {
+          delta.changed.add(ce);
+        }
+      }
+      delta.manifest.entries.put(key, e);
+    }
+
+    for (String key : entries.keySet()) {
+      if (!delta.manifest.entries.containsKey(key) && !isParentOfAny(key, delta.manifest.entries)) {
+        if (isSafeToRemove(key)) {
+          delta.removed.add(key);
+        } else {
+          log.warn("Not removing '" + key + "' from synced application, the path is not safe to pass to rm");
+        }
+      }
+    }
+    return delta;
+  }
+
+  // removed paths are passed one per line to rm -rf under the application dir, so must be a single
+  // line, and must not be able to step outside the application dir.
+  static boolean isSafeToRemove(String key) {
+    if (key.isEmpty() || key.startsWith("/") || key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0 || key.indexOf('\0') >= 0) {
+      return false;
+    }
+    for (String segment : key.split("/")) {
+      if (segment.equals("..") || segment.equals(".") || segment.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // a file that became a directory is replaced during extraction, removing it afterwards would lose the new content.
+  private static boolean isParentOfAny(String key, TreeMap<String, Entry> entries) {
+    String dir = key + "/";
+    String candidate = entries.ceilingKey(dir);
+    return candidate != null && candidate.startsWith(dir);
+  }
+
+  static String sha256(ContainerEntry ce) {
+    if (ce.getDataSupplier() == null) {
+      throw new BuildpackException("Error DataSupplier was not provided", new IllegalArgumentException());
+    }
+    try (InputStream is = ce.getDataSupplier().getData()) {
+      if (is == null) {
+        throw new IOException("Error DataSupplier gave null for getData");
+      }
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] buf = new byte[8192];
+      int length;
+      while ((length = is.read(buf)) > 0) {
+        md.update(buf, 0, length);
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw BuildpackException.launderThrowable(e);
+    }
+  }
+}
@@ -13,6 +13,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.snowdrop.buildpack.config.RegistryAuthConfig;
+import dev.snowdrop.buildpack.jfr.BuildEvents;
+import dev.snowdrop.buildpack.trace.BuildTrace;
 import dev.snowdrop.buildpack.utils.OperatingSytem;
 
 import com.github.dockerjava.api.DockerClient;
@@ -62,7 +64,8 @@ public class DockerClientUtils {
         .sslConfig(config.getSSLConfig())
         .build();
 
-    DockerClient dockerClient = DockerClientImpl.getInstance(addcc, httpClient);
+    //requests are recorded as flight recorder events, when a recording is enabled for them.
+    DockerClient dockerClient = DockerClientImpl.getInstance(addcc, BuildTrace.tracing(BuildEvents.recording(httpClient)));
 
     return dockerClient;
   }
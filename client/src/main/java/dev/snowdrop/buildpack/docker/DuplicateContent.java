@@ -0,0 +1,115 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.utils.FileTransfer;
+
+/**
+ * Finds entries with identical content, so that later copies can be sent as hard links to the first.
+ *
+ * Entries are grouped by size and mode first, only entries sharing both are read and hashed, so
+ * unique files are never read. Entries are only linked when their mode also matches, as hard links
+ * share permissions.
+ *
+ * Hard links also share content, a write through one path changes every linked copy. So only entries
+ * that are read-only, (no write permission for anyone) are linked, a buildpack editing a writable file
+ * in place must not silently edit its duplicates.
+ */
+public class DuplicateContent {
+
+  // smaller entries are not worth reading to hash, as a link entry still costs a tar header.
+  static final long MIN_SIZE = 1024;
+
+  private static final int WRITE_PERMISSIONS = 0222;
+
+  private static class Key {
+    final long size;
+    final int mode;
+
+    Key(long size, int mode) {
+      this.size = size;
+      this.mode = mode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).size == size && ((Key) o).mode == mode;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(size) * 31 + mode;
+    }
+  }
+
+  /**
+   * @param entries archive path to entry, in the order they will be written.
+   * @return archive path of each duplicate entry, to the path of the first entry with the same content.
+   */
+  public static Map<String, String> find(LinkedHashMap<String, ContainerEntry> entries) {
+    Map<Key, List<String>> candidates = new HashMap<>();
+    for (Map.Entry<String, ContainerEntry> e : entries.entrySet()) {
+      long size = e.getValue().getSize();
+      int mode = e.getValue().getMode() != null ? e.getValue().getMode() : 0;
+      if (size >= MIN_SIZE && (mode & WRITE_PERMISSIONS) == 0) {
+        candidates.computeIfAbsent(new Key(size, mode), k -> new ArrayList<>()).add(e.getKey());
+      }
+    }
+
+    Map<String, String> links = new HashMap<>();
+    for (List<String> group : candidates.values()) {
+      if (group.size() < 2) {
+        continue;
+      }
+      Map<String, String> firstByDigest = new HashMap<>();
+      for (String path : group) {
+        String digest = digest(entries.get(path));
+        String first = firstByDigest.putIfAbsent(digest, path);
+        if (first != null) {
+          links.put(path, first);
+        }
+      }
+    }
+    return links;
+  }
+
+  private static String digest(ContainerEntry entry) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      OutputStream out = new OutputStream() {
+        @Override
+        public void write(int b) {
+          md.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          md.update(b, off, len);
+        }
+      };
+      Path source = entry.getSourceFile();
+      if (FileTransfer.supports(source)) {
+        FileTransfer.copy(source, out);
+      } else {
+        try (InputStream is = entry.getDataSupplier().getData()) {
+          FileTransfer.copy(is, out);
+        }
+      }
+      return Base64.getEncoder().encodeToString(md.digest());
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw BuildpackException.launderThrowable("Unable to hash content for " + entry.getPath(), e);
+    }
+  }
+}
@@ -7,13 +7,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.utils.DirectoryWalker;
 import dev.snowdrop.buildpack.utils.FilePermissions;
+import dev.snowdrop.buildpack.utils.FileSnapshot;
 import io.sundr.builder.annotations.Buildable;
 
 @Buildable(generateBuilderPackage = true, builderPackage = "dev.snowdrop.buildpack.builder")
@@ -25,7 +28,9 @@ public class FileContent implements Content {
 
   private final String prefix;
   private final File file;
-  private final File root;
+  private final List<String> ignorePatterns;
+  private final Boolean useIgnoreFiles;
+  private final Integer walkThreads;
   //delegate calls for permissions thru static, to enable testing.
   private static FilePermissions filePermissions = new FilePermissions();
 
@@ -34,16 +39,33 @@ public class FileContent implements Content {
   }
 
   public FileContent(String prefix, File file) {
-    this(prefix, file, null);
-    if(!file.exists()){
-      throw new RuntimeException(new FileNotFoundException(file.getAbsolutePath()));
-    }
+    this(prefix, file, null, null);
+  }
+
+  /**
+   * @param ignorePatterns patterns in .gitignore syntax, relative to the directory, for entries to exclude.
+   * @param useIgnoreFiles if true, also honor .gitignore (including nested), .dockerignore and .cnbignore
+   *                       files found in the directory. Explicit patterns take precedence over the files.
+   *                       .dockerignore is read with Docker's rules, see IgnoreRules.parseDockerignore.
+   */
+  public FileContent(String prefix, File file, List<String> ignorePatterns, Boolean useIgnoreFiles) {
+    this(prefix, file, ignorePatterns, useIgnoreFiles, null);
   }
 
-  private FileContent(String prefix, File file, File root) {
-    this.prefix = prefix;
+  /**
+   * @param walkThreads if greater than 1, directories are walked in parallel using this many threads
+   *                    before entries are returned, rather than lazily. Useful for wide trees or
+   *                    filesystems with high latency attribute reads (eg, network or overlay filesystems).
+   */
+  public FileContent(String prefix, File file, List<String> ignorePatterns, Boolean useIgnoreFiles, Integer walkThreads) {
+    this.prefix = prefix == null ? DEFAULT_PREFIX : prefix;
     this.file = file;
-    this.root = root;
+    this.ignorePatterns = ignorePatterns == null ? Collections.emptyList() : ignorePatterns;
+    this.useIgnoreFiles = useIgnoreFiles != null && useIgnoreFiles;
+    this.walkThreads = walkThreads == null || walkThreads < 1 ? 1 : walkThreads;
+    if(!file.exists()){
+      throw new RuntimeException(new FileNotFoundException(file.getAbsolutePath()));
+    }
   }
 
   public String getPrefix() {
@@ -54,6 +76,18 @@ public class FileContent implements Content {
     return file;
   }
 
+  public List<String> getIgnorePatterns() {
+    return ignorePatterns;
+  }
+
+  public Boolean getUseIgnoreFiles() {
+    return useIgnoreFiles;
+  }
+
+  public Integer getWalkThreads() {
+    return walkThreads;
+  }
+
   /**
    * Build a container entry from a File, (can also be directory) to be present in
    * the container at prefix/name for a File, or prefix/relativePath for fies in a
@@ -61,60 +95,186 @@ public class FileContent implements Content {
    * in /stiletto/one/a and /stiletto/two/a being created.
    */
   public List<ContainerEntry> getContainerEntries() {
+    try (Stream<ContainerEntry> entries = streamContainerEntries()) {
+      return entries.collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * As getContainerEntries, but directories are walked lazily as the stream is consumed.
+   * Ignored directories are pruned from the walk, so nothing beneath them is read. The attributes
+   * of each file in a directory are read once during the walk, and retained by its entry.
+   */
+  @Override
+  public Stream<ContainerEntry> streamContainerEntries() {
     if (!file.exists()) {
-      return Collections.emptyList();
+      return Stream.empty();
     }
 
     if (file.isFile() && !file.isDirectory()) {
-      return Arrays.asList(new ContainerEntry() {
-        @Override
-        public long getSize() {
-          try {
-            return Files.size(file.toPath());
-          } catch (IOException e) {
-            throw BuildpackException.launderThrowable(e);
-          }
-        }
+      return Stream.of(entry(prefix, file));
+    } else if (file.isDirectory()) {
+      Path root = file.toPath();
+      IgnoreVisitor visitor = new IgnoreVisitor(root);
+      Stream<FileSnapshot> files = walkThreads > 1
+          ? DirectoryWalker.walkParallel(root, visitor, walkThreads).stream()
+          : DirectoryWalker.walk(root, visitor);
+      return files.map(s -> entry(prefix, s, root));
+    }
+    return Stream.empty();
+  }
 
-        @Override
-        public String getPath() {
-          if (root == null) {
-            return prefix + "/" + file.getName();
-          }
-          // format MUST be unix, as we're putting them in a unix container
-          return prefix + root.toPath().relativize(file.toPath()).toString().replace(NON_UNIX_FILE_SEPARATOR,
-              UNIX_FILE_SEPARATOR);
-        }
+  /**
+   * Applies the ignore rules during the walk. Rule sets are evaluated in order, with later sets taking
+   * precedence: .gitignore files (deeper files after shallower), .dockerignore, .cnbignore, then the
+   * explicit patterns. Nested .gitignore files are loaded as their directory is entered, giving a new
+   * visitor for that subtree, so visitors are immutable and safe to share across a parallel walk.
+   */
+  private class IgnoreVisitor implements DirectoryWalker.Visitor {
+    private final Path root;
+    private final List<IgnoreRules> gitRules;
+    private final List<IgnoreRules> overrides;
+    private final List<IgnoreRules> chain;
+
+    IgnoreVisitor(Path root) {
+      this.root = root;
+      this.gitRules = Collections.emptyList();
+      this.overrides = new ArrayList<>();
+      if (useIgnoreFiles) {
+        addIfPresent(overrides, IgnoreRules.fromDockerignoreFile(root.resolve(IgnoreRules.DOCKER_IGNORE)));
+        addIfPresent(overrides, IgnoreRules.fromFile(root.resolve(IgnoreRules.CNB_IGNORE), "", false));
+      }
+      if (!ignorePatterns.isEmpty()) {
+        overrides.add(IgnoreRules.parse("", ignorePatterns, false));
+      }
+      this.chain = overrides;
+    }
+
+    private IgnoreVisitor(IgnoreVisitor parent, IgnoreRules nested) {
+      this.root = parent.root;
+      this.gitRules = new ArrayList<>(parent.gitRules);
+      this.gitRules.add(nested);
+      this.overrides = parent.overrides;
+      this.chain = new ArrayList<>(gitRules);
+      this.chain.addAll(overrides);
+    }
+
+    private void addIfPresent(List<IgnoreRules> list, IgnoreRules rules) {
+      if (rules != null && !rules.isEmpty()) {
+        list.add(rules);
+      }
+    }
 
-        @Override
-        public Integer getMode() {
-          return filePermissions.getPermissions(file);
+    @Override
+    public DirectoryWalker.Visitor enterDirectory(Path dir) {
+      if (useIgnoreFiles) {
+        IgnoreRules nested = IgnoreRules.fromFile(dir.resolve(IgnoreRules.GIT_IGNORE), relative(dir), false);
+        if (nested != null && !nested.isEmpty()) {
+          return new IgnoreVisitor(this, nested);
         }
+      }
+      return this;
+    }
+
+    @Override
+    public boolean include(Path path, boolean isDirectory) {
+      if (chain.isEmpty()) {
+        return true;
+      }
+      return !IgnoreRules.isIgnored(chain, relative(path), isDirectory);
+    }
+
+    private String relative(Path path) {
+      return root.relativize(path).toString().replace(NON_UNIX_FILE_SEPARATOR, UNIX_FILE_SEPARATOR);
+    }
+  }
+
+  /**
+   * Entry for a file within a directory, using the attributes captured during the walk.
+   */
+  private static ContainerEntry entry(String prefix, FileSnapshot snapshot, Path root) {
+    Path p = snapshot.getPath();
+    return new ContainerEntry() {
+      @Override
+      public long getSize() {
+        return snapshot.getSize();
+      }
+
+      @Override
+      public String getPath() {
+        // format MUST be unix, as we're putting them in a unix container
+        return prefix + root.relativize(p).toString().replace(NON_UNIX_FILE_SEPARATOR, UNIX_FILE_SEPARATOR);
+      }
+
+      @Override
+      public Integer getMode() {
+        return snapshot.getMode();
+      }
+
+      @Override
+      public long getLastModified() {
+        return snapshot.getLastModified();
+      }
 
-        @Override
-        public DataSupplier getDataSupplier() {
-          Path p = file.toPath();
-          return new DataSupplier() {
-            public InputStream getData() {
-              try {
-                return new BufferedInputStream(Files.newInputStream(p));
-              } catch (IOException e) {
-                throw BuildpackException.launderThrowable(e);
-              }
-            }
-          };
+      @Override
+      public Path getSourceFile() {
+        return p;
+      }
+
+      @Override
+      public DataSupplier getDataSupplier() {
+        return () -> open(p);
+      }
+    };
+  }
+
+  /**
+   * Entry for a single file, attributes are read as requested.
+   */
+  private static ContainerEntry entry(String prefix, File file) {
+    return new ContainerEntry() {
+      @Override
+      public long getSize() {
+        try {
+          return Files.size(file.toPath());
+        } catch (IOException e) {
+          throw BuildpackException.launderThrowable(e);
         }
+      }
 
-      });
-    } else if (file.isDirectory()) {
-      try {
-        return Files.walk(file.toPath()).filter(p -> !p.toFile().isDirectory())
-            .flatMap(p -> new FileContent(prefix, p.toFile(), file).getContainerEntries().stream())
-            .collect(Collectors.toList());
-      } catch (IOException e) {
-        throw BuildpackException.launderThrowable(e);
+      @Override
+      public String getPath() {
+        return prefix + "/" + file.getName();
       }
+
+      @Override
+      public Integer getMode() {
+        return filePermissions.getPermissions(file);
+      }
+
+      @Override
+      public long getLastModified() {
+        return file.lastModified();
+      }
+
+      @Override
+      public Path getSourceFile() {
+        return file.toPath();
+      }
+
+      @Override
+      public DataSupplier getDataSupplier() {
+        Path p = file.toPath();
+        return () -> open(p);
+      }
+    };
+  }
+
+  private static InputStream open(Path p) {
+    try {
+      return new BufferedInputStream(Files.newInputStream(p));
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable(e);
     }
-    return Collections.emptyList();
   }
 }
@@ -0,0 +1,348 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+/**
+ * Compiled set of ignore patterns, using .gitignore syntax.
+ *
+ * Supports comments, '!' negation, trailing '/' for directory only patterns, leading or embedded '/' to
+ * anchor a pattern to the base directory, and the '*', '?', '[...]' and '**' wildcards. Within a set, the
+ * last matching pattern wins. Rules only apply to paths under their base, allowing nested ignore files.
+ *
+ * A .dockerignore is compiled with Docker's rules instead (see parseDockerignore), where a pattern
+ * matching a directory also matches everything beneath it, so a later '!' pattern can re-include
+ * paths under an excluded directory.
+ */
+public class IgnoreRules {
+
+  public static final String GIT_IGNORE = ".gitignore";
+  public static final String DOCKER_IGNORE = ".dockerignore";
+  public static final String CNB_IGNORE = ".cnbignore";
+
+  private static final String REGEX_SPECIAL = ".^$+{}()|\\";
+
+  private static class Rule {
+    final Pattern pattern;
+    final boolean negate;
+    final boolean dirOnly;
+    //per segment patterns, null for a '**' segment, only for .dockerignore rules.
+    final List<Pattern> segments;
+
+    Rule(Pattern pattern, boolean negate, boolean dirOnly) {
+      this(pattern, negate, dirOnly, null);
+    }
+
+    Rule(Pattern pattern, boolean negate, boolean dirOnly, List<Pattern> segments) {
+      this.pattern = pattern;
+      this.negate = negate;
+      this.dirOnly = dirOnly;
+      this.segments = segments;
+    }
+
+    /**
+     * True if the rule could match a path beneath the directory, without matching the directory itself.
+     */
+    boolean couldMatchBeneath(String dir) {
+      String[] dirSegments = dir.split("/");
+      if (dirSegments.length >= segments.size()) {
+        return false;
+      }
+      for (int i = 0; i < dirSegments.length; i++) {
+        Pattern segment = segments.get(i);
+        if (segment == null) {
+          return true;
+        }
+        if (!segment.matcher(dirSegments[i]).matches()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final String base;
+  private final List<Rule> rules;
+  private final boolean dockerRules;
+
+  private IgnoreRules(String base, List<Rule> rules, boolean dockerRules) {
+    this.base = base;
+    this.rules = rules;
+    this.dockerRules = dockerRules;
+  }
+
+  /**
+   * Compile patterns.
+   *
+   * @param base relative path (using '/') of the directory the patterns apply to, or "" for the root.
+   * @param patterns lines in .gitignore syntax.
+   * @param anchored if true, every pattern is relative to the base (.dockerignore behavior), otherwise
+   *                 patterns without a '/' match at any depth (.gitignore behavior).
+   */
+  public static IgnoreRules parse(String base, List<String> patterns, boolean anchored) {
+    String normalizedBase = base == null ? "" : base;
+    if (!normalizedBase.isEmpty() && !normalizedBase.endsWith("/")) {
+      normalizedBase += "/";
+    }
+    List<Rule> rules = new ArrayList<>();
+    for (String line : patterns) {
+      Rule r = compile(line, anchored);
+      if (r != null) {
+        rules.add(r);
+      }
+    }
+    return new IgnoreRules(normalizedBase, rules, false);
+  }
+
+  /**
+   * Compile patterns from a .dockerignore, using Docker's rules rather than .gitignore syntax.
+   *
+   * Patterns are always relative to the content root, are cleaned as paths (so a trailing '/' is
+   * dropped, and matches files as well as directories), and a pattern matching a directory excludes
+   * everything beneath it. Directories are only skipped without being read if no '!' pattern could
+   * re-include a path beneath them.
+   */
+  public static IgnoreRules parseDockerignore(List<String> patterns) {
+    List<Rule> rules = new ArrayList<>();
+    for (String line : patterns) {
+      Rule r = compileDocker(line);
+      if (r != null) {
+        rules.add(r);
+      }
+    }
+    return new IgnoreRules("", rules, true);
+  }
+
+  /**
+   * Compile an ignore file, returns null if the file does not exist.
+   */
+  public static IgnoreRules fromFile(Path file, String base, boolean anchored) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return parse(base, Files.readAllLines(file, StandardCharsets.UTF_8), anchored);
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read ignore file " + file, e);
+    }
+  }
+
+  /**
+   * Compile a .dockerignore file, returns null if the file does not exist.
+   */
+  public static IgnoreRules fromDockerignoreFile(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      return parseDockerignore(Files.readAllLines(file, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to read ignore file " + file, e);
+    }
+  }
+
+  public boolean isEmpty() {
+    return rules.isEmpty();
+  }
+
+  /**
+   * @param path path relative to the content root, using '/' as separator.
+   * @return TRUE if the last matching pattern ignores the path, FALSE if it re-includes it, null if no pattern matches.
+   */
+  public Boolean match(String path, boolean isDirectory) {
+    if (!path.startsWith(base)) {
+      return null;
+    }
+    String relative = path.substring(base.length());
+    for (int i = rules.size() - 1; i >= 0; i--) {
+      Rule r = rules.get(i);
+      if (r.dirOnly && !isDirectory) {
+        continue;
+      }
+      if (r.pattern.matcher(relative).matches() || (dockerRules && parentMatches(r, relative))) {
+        return !r.negate;
+      }
+    }
+    return null;
+  }
+
+  private static boolean parentMatches(Rule r, String path) {
+    for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+      if (r.pattern.matcher(path.substring(0, i)).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * True if a '!' pattern could re-include a path beneath the directory.
+   */
+  private boolean mayIncludeBeneath(String dir) {
+    for (Rule r : rules) {
+      if (r.negate && r.couldMatchBeneath(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Evaluate a chain of rule sets, later sets take precedence over earlier ones.
+   */
+  public static boolean isIgnored(List<IgnoreRules> chain, String path, boolean isDirectory) {
+    Boolean result = null;
+    IgnoreRules decidedBy = null;
+    for (IgnoreRules rules : chain) {
+      Boolean m = rules.match(path, isDirectory);
+      if (m != null) {
+        result = m;
+        decidedBy = rules;
+      }
+    }
+    if (result == null || !result) {
+      return false;
+    }
+    // a directory excluded by .dockerignore is still walked if a later '!' pattern could re-include
+    // something beneath it, the entries within are matched against the directory pattern themselves.
+    return !(isDirectory && decidedBy.dockerRules && decidedBy.mayIncludeBeneath(path));
+  }
+
+  private static Rule compile(String line, boolean anchored) {
+    String p = line;
+    //trailing spaces are ignored unless escaped.
+    while (p.endsWith(" ") && !p.endsWith("\\ ")) {
+      p = p.substring(0, p.length() - 1);
+    }
+    if (p.isEmpty() || p.startsWith("#")) {
+      return null;
+    }
+    boolean negate = false;
+    if (p.startsWith("!")) {
+      negate = true;
+      p = p.substring(1);
+    } else if (p.startsWith("\\!") || p.startsWith("\\#")) {
+      p = p.substring(1);
+    }
+    boolean dirOnly = false;
+    if (p.endsWith("/")) {
+      dirOnly = true;
+      p = p.substring(0, p.length() - 1);
+    }
+    if (p.contains("/")) {
+      anchored = true;
+    }
+    while (p.startsWith("/")) {
+      p = p.substring(1);
+    }
+    if (p.isEmpty()) {
+      return null;
+    }
+    String regex = (anchored ? "" : "(?:.*/)?") + toRegex(p);
+    return new Rule(Pattern.compile(regex), negate, dirOnly);
+  }
+
+  private static Rule compileDocker(String line) {
+    String p = line.trim();
+    if (p.isEmpty() || p.startsWith("#")) {
+      return null;
+    }
+    boolean negate = false;
+    if (p.startsWith("!")) {
+      negate = true;
+      p = p.substring(1).trim();
+    }
+    p = cleanPath(p);
+    if (p.isEmpty()) {
+      return null;
+    }
+    List<Pattern> segments = new ArrayList<>();
+    for (String segment : p.split("/")) {
+      segments.add(segment.equals("**") ? null : Pattern.compile(toRegex(segment)));
+    }
+    return new Rule(Pattern.compile(toRegex(p)), negate, false, segments);
+  }
+
+  // as filepath.Clean, relative to the root, so leading '/' and '..' beyond the root are dropped.
+  private static String cleanPath(String path) {
+    List<String> segments = new ArrayList<>();
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty() || segment.equals(".")) {
+        continue;
+      }
+      if (segment.equals("..")) {
+        if (!segments.isEmpty()) {
+          segments.remove(segments.size() - 1);
+        }
+        continue;
+      }
+      segments.add(segment);
+    }
+    return String.join("/", segments);
+  }
+
+  static String toRegex(String glob) {
+    StringBuilder sb = new StringBuilder();
+    int i = 0;
+    int n = glob.length();
+    while (i < n) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        boolean doubleStar = i + 1 < n && glob.charAt(i + 1) == '*';
+        boolean atSegmentStart = i == 0 || glob.charAt(i - 1) == '/';
+        if (doubleStar && atSegmentStart && i + 2 < n && glob.charAt(i + 2) == '/') {
+          // '**/' matches zero or more directories
+          sb.append("(?:.*/)?");
+          i += 3;
+        } else if (doubleStar && atSegmentStart && i + 2 == n) {
+          // trailing '/**' matches everything within
+          sb.append(".*");
+          i += 2;
+        } else if (doubleStar) {
+          sb.append("[^/]*");
+          i += 2;
+        } else {
+          sb.append("[^/]*");
+          i++;
+        }
+      } else if (c == '?') {
+        sb.append("[^/]");
+        i++;
+      } else if (c == '[') {
+        int close = glob.indexOf(']', i + 2);
+        if (close < 0) {
+          sb.append("\\[");
+          i++;
+        } else {
+          String cls = glob.substring(i + 1, close);
+          if (cls.startsWith("!")) {
+            cls = "^" + cls.substring(1);
+          }
+          sb.append('[').append(cls.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+          i = close + 1;
+        }
+      } else if (c == '\\' && i + 1 < n) {
+        appendLiteral(sb, glob.charAt(i + 1));
+        i += 2;
+      } else {
+        appendLiteral(sb, c);
+        i++;
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void appendLiteral(StringBuilder sb, char c) {
+    if (REGEX_SPECIAL.indexOf(c) >= 0 || c == '[' || c == ']' || c == '*' || c == '?') {
+      sb.append('\\');
+    }
+    sb.append(c);
+  }
+}
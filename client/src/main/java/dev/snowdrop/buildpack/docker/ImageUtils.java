@@ -1,6 +1,8 @@
 package dev.snowdrop.buildpack.docker;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +27,10 @@ import dev.snowdrop.buildpack.config.DockerConfig;
 import dev.snowdrop.buildpack.config.ImageReference;
 import dev.snowdrop.buildpack.config.DockerConfig.PullPolicy;
 import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.jfr.BuildEvents;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
+import dev.snowdrop.buildpack.scheduler.DaemonLimits;
+import dev.snowdrop.buildpack.trace.BuildTrace;
 /**
  * Higher level docker image api
  */
@@ -38,6 +44,7 @@ public class ImageUtils {
     public Map<String, String> labels;
     public String[] env;
     public String platform;
+    public Long size;
   }
 
   /**
@@ -94,12 +101,26 @@ public class ImageUtils {
       }
     }
 
+    //limits concurrent pulls to the daemon, when running within a BuildScheduler, by pulling in batches.
+    DaemonLimits.pulls(imageNameSet, batch -> pullAll(dc, config, platform, batch));
+  }
+
+  private static void pullAll(DockerClient dc, DockerConfig config, String platform, Collection<ImageReference> imageNameSet) {
     int retryCount = 0;
     Map<String,PullImageResultCallback> pircMap = new HashMap<>();
+    //flight recorder events, and pull attempts, per image.
+    Map<String,Object> events = new HashMap<>();
+    Map<String,Integer> attempts = new HashMap<>();
+    //trace span for the current pull attempt, per image.
+    Map<String,BuildTrace.Span> spans = new HashMap<>();
+    long start = System.nanoTime();
 
     // pull the images still in set.
     for (ImageReference stillNeeded : imageNameSet) {
       log.debug("pulling '" + stillNeeded.getReferenceWithLatest() + "' "+(platform==null?"":" for platform "+platform));
+      events.put(stillNeeded.getReferenceWithLatest(), BuildEvents.beginImagePull());
+      attempts.put(stillNeeded.getReferenceWithLatest(), 1);
+      spans.put(stillNeeded.getReferenceWithLatest(), BuildTrace.begin(stillNeeded.getReferenceWithLatest(), "pull").arg("attempt", 1));
       PullImageResultCallback pirc = new PullImageResultCallback();
       if(platform!=null){
         dc.pullImageCmd(stillNeeded.getReferenceWithLatest()).withPlatform(platform).exec(pirc);
@@ -123,6 +144,8 @@ public class ImageUtils {
           done = e.getValue().awaitCompletion( thisWait, TimeUnit.SECONDS);
           if(done){ log.debug("success for image "+e.getKey()); }
         } catch (InterruptedException ie) {
+          //closing the callbacks abandons the pulls still in progress.
+          pircMap.values().stream().filter(p -> p != null).forEach(ImageUtils::closeQuietly);
           throw BuildpackException.launderThrowable(ie);
         } catch (DockerClientException dce) {
           //error occurred during pull for this pirc, need to pause & retry the pull op
@@ -139,9 +162,15 @@ public class ImageUtils {
             dc.pullImageCmd(imageName).exec(newPirc);
           }
           e.setValue(newPirc);
+          attempts.merge(imageName, 1, Integer::sum);
+          spans.get(imageName).arg("result", "retry").endAsync();
+          spans.put(imageName, BuildTrace.begin(imageName, "pull").arg("attempt", attempts.get(imageName)));
           allDone=false;      
         }else{
           e.setValue(null);
+          BuildEvents.endImagePull(events.remove(e.getKey()), e.getKey(), platform, attempts.get(e.getKey()), true);
+          BuildMetricsRegistry.get().imagePulled(e.getKey(), System.nanoTime() - start, attempts.get(e.getKey()), true);
+          spans.remove(e.getKey()).arg("result", "success").endAsync();
         }
       }
       retryCount++;
@@ -156,12 +185,27 @@ public class ImageUtils {
       }
     }
 
+    //anything still recorded did not complete.
+    events.forEach((image, event) -> {
+      BuildEvents.endImagePull(event, image, platform, attempts.get(image), false);
+      BuildMetricsRegistry.get().imagePulled(image, System.nanoTime() - start, attempts.get(image), false);
+    });
+    spans.values().forEach(span -> span.arg("result", "failed").endAsync());
+
     if(lastSeen!=null && !allDone){
       throw lastSeen;
     }
   }
 
 
+  private static void closeQuietly(PullImageResultCallback pirc) {
+    try {
+      pirc.close();
+    } catch (IOException e) {
+      log.debug("Error closing pull callback", e);
+    }
+  }
+
   /**
    * Util method to retrieve info for a given docker image.
    */
@@ -179,6 +223,7 @@ public class ImageUtils {
     }
     ii.labels = iir.getConfig().getLabels();
     ii.env = iir.getConfig().getEnv();
+    ii.size = iir.getSize();
     if(iir.getArch()!=null && !iir.getArch().isEmpty() && iir.getOs()!=null && !iir.getOs().isEmpty()){
       ii.platform = iir.getOs()+"/"+iir.getArch();
     }else{
@@ -0,0 +1,102 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Directory tree of the entries for an archive, built before writing when the whole set of entries is
+ * needed first, (to split content into shards, or find duplicate files)
+ *
+ * Each parent directory is created once when the first entry beneath it is added, rather than
+ * being looked up per entry. Children are kept sorted by name, so the tree is always visited
+ * in the same order regardless of the order entries were added, giving reproducible archives.
+ */
+public class TarEntryTree {
+
+  public interface Visitor {
+    void directory(String path) throws IOException;
+
+    void file(String path, ContainerEntry entry) throws IOException;
+  }
+
+  private static class Node {
+    private Map<String, Node> children;
+    private ContainerEntry entry;
+
+    Node child(String name) {
+      if (children == null) {
+        children = new TreeMap<>();
+      }
+      return children.computeIfAbsent(name, n -> new Node());
+    }
+  }
+
+  private final Node root = new Node();
+  private int size = 0;
+  private long contentSize = 0;
+
+  /**
+   * Add an entry at the path, (relative, using '/' as separator). If an entry was already added
+   * for the path, it is replaced.
+   */
+  public void add(String path, ContainerEntry entry) {
+    Node n = root;
+    int start = 0;
+    int slash;
+    while ((slash = path.indexOf('/', start)) >= 0) {
+      if (slash > start) {
+        n = n.child(path.substring(start, slash));
+      }
+      start = slash + 1;
+    }
+    n = n.child(path.substring(start));
+    if (n.entry == null) {
+      size++;
+    } else {
+      contentSize -= n.entry.getSize();
+    }
+    n.entry = entry;
+    contentSize += entry.getSize();
+  }
+
+  /**
+   * Number of file entries in the tree.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Total size of the content of the file entries in the tree.
+   */
+  public long contentSize() {
+    return contentSize;
+  }
+
+  /**
+   * Visit the tree depth first in name order, each directory is visited before its content.
+   * Directory paths are passed with a trailing '/'.
+   */
+  public void visit(Visitor visitor) throws IOException {
+    visit(root, "", visitor);
+  }
+
+  private void visit(Node node, String path, Visitor visitor) throws IOException {
+    if (node.children == null) {
+      return;
+    }
+    for (Map.Entry<String, Node> e : node.children.entrySet()) {
+      Node child = e.getValue();
+      String childPath = path + e.getKey();
+      if (child.entry != null) {
+        visitor.file(childPath, child.entry);
+      }
+      if (child.children != null) {
+        String dir = childPath + "/";
+        visitor.directory(dir);
+        visit(child, dir, visitor);
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.trace.BuildTrace;
+import dev.snowdrop.buildpack.utils.BoundedPipe;
+import dev.snowdrop.buildpack.utils.TaskExecutors;
+
+/**
+ * Streams a tar archive, as it is generated, to a consumer such as the docker copy api.
+ *
+ * The archive is written on a shared executor, while the consumer runs on the calling thread, connected by
+ * a bounded in memory pipe. The consumer starts immediately, and a failure on either side ends the other.
+ */
+public class TarStreamPipeline {
+  private static final Logger log = LoggerFactory.getLogger(TarStreamPipeline.class);
+
+  private static final String WRITERS = "buildpack-tar-writer";
+
+  @FunctionalInterface
+  public interface Compression {
+    OutputStream wrap(OutputStream out) throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface TarWriter {
+    void write(TarArchiveOutputStream tout) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface TarConsumer {
+    void consume(InputStream tarStream) throws Exception;
+  }
+
+  /**
+   * Thrown by a consumer that stops reading on purpose, once it has read all it needs. Only then is the
+   * writer being unable to finish the archive not a failure, any other early close fails the stream.
+   */
+  public static class StoppedReadingException extends Exception {
+    private static final long serialVersionUID = 1L;
+    public StoppedReadingException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Write a tar archive with the writer, compressed as requested, and pass it to the consumer.
+   *
+   * @return the number of bytes passed to the consumer.
+   */
+  public static long stream(Compression compression, TarWriter writer, TarConsumer consumer) {
+    BoundedPipe pipe = new BoundedPipe();
+    CountingOutputStream wire = new CountingOutputStream(pipe.getOutputStream());
+
+    Future<?> written = TaskExecutors.get(WRITERS).submit(BuildTrace.wrap(() -> {
+      BuildTrace.Span span = BuildTrace.begin("writeArchive", "upload");
+      try {
+        TarArchiveOutputStream tout = new TarArchiveOutputStream(compression.wrap(wire));
+        try {
+          tout.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+          writer.write(tout);
+        } catch (Throwable t) {
+          // fail the pipe before closing the archive, closing writes the end of archive records, and the
+          // consumer must not see a well formed archive holding only part of the content.
+          pipe.fail(t);
+          try {
+            tout.close();
+          } catch (IOException | RuntimeException e) {
+            log.trace("Error closing failed archive", e);
+          }
+          throw t;
+        }
+        tout.close();
+      } catch (Throwable t) {
+        log.debug("Error during tar writer", t);
+        pipe.fail(t);
+        throw t;
+      } finally {
+        span.arg("wireBytes", wire.getBytesWritten()).end();
+      }
+      log.trace("Tar writer complete");
+      return null;
+    }));
+
+    Exception consumerException = null;
+    boolean stoppedReading = false;
+    try (InputStream in = pipe.getInputStream()) {
+      consumer.consume(in);
+      log.trace("Tar consumer complete");
+    } catch (StoppedReadingException e) {
+      log.debug("Tar consumer stopped reading: " + e.getMessage());
+      stoppedReading = true;
+    } catch (Exception e) {
+      log.debug("Error during tar consumer", e);
+      consumerException = e;
+    }
+
+    Throwable writerException = null;
+    try {
+      written.get();
+    } catch (ExecutionException e) {
+      writerException = e.getCause();
+    } catch (CancellationException e) {
+      writerException = e;
+    } catch (InterruptedException ie) {
+      written.cancel(true);
+      throw BuildpackException.launderThrowable(ie);
+    }
+
+    // the consumer closing the stream before the writer completed means the archive was truncated, unless
+    // the consumer reported it had read all it needed. If the consumer failed, its failure is the cause.
+    if (writerException instanceof BoundedPipe.PipeClosedException) {
+      if (stoppedReading || consumerException != null) {
+        log.debug("Tar consumer closed stream before writer completed");
+        writerException = null;
+      } else {
+        throw new BuildpackException("Tar consumer closed the stream before the archive was complete", writerException);
+      }
+    }
+
+    // a writer failure is the root cause of any consumer failure it triggered, so report that first.
+    if (writerException != null) {
+      throw BuildpackException.launderThrowable(writerException);
+    }
+    if (consumerException != null) {
+      throw BuildpackException.launderThrowable(consumerException);
+    }
+    return wire.getBytesWritten();
+  }
+}
@@ -0,0 +1,117 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.config.DockerConfig.UploadCodec;
+import dev.snowdrop.buildpack.utils.ParallelGZIPOutputStream;
+
+/**
+ * Selection and application of the compression used for tar streams sent to containers.
+ *
+ * The daemon detects the compression of an uploaded archive itself, so the codec can vary per upload.
+ * For AUTO, local transports are sent uncompressed, and remote transports are gzipped with the level chosen
+ * from the observed wire throughput to that host, so slow links compress harder, and fast links spend less cpu.
+ */
+public class UploadCompression {
+  private static final Logger log = LoggerFactory.getLogger(UploadCompression.class);
+
+  //uploads smaller than this are dominated by container/request overhead, and don't tell us about the link.
+  static final long MIN_SAMPLE_BYTES = 1024 * 1024;
+  static final double SLOW_LINK_BYTES_PER_SEC = 10.0 * 1024 * 1024;
+  static final double FAST_LINK_BYTES_PER_SEC = 100.0 * 1024 * 1024;
+  private static final double EWMA_WEIGHT = 0.3;
+
+  //observed wire throughput (compressed bytes per second) per docker host.
+  private static final Map<String, Double> throughput = new ConcurrentHashMap<>();
+
+  /**
+   * Determine the codec to use for an upload using this config.
+   */
+  public static UploadCodec resolve(DockerConfig config) {
+    UploadCodec codec = config.getUploadCodec();
+    if (codec != null && codec != UploadCodec.AUTO) {
+      return codec;
+    }
+    return resolveAuto(config.getDockerHost());
+  }
+
+  static UploadCodec resolveAuto(String dockerHost) {
+    if (dockerHost != null && (dockerHost.startsWith("unix://") || dockerHost.startsWith("npipe://"))) {
+      // local transport, compressing only costs cpu.
+      return UploadCodec.NONE;
+    }
+
+    Double observed = dockerHost != null ? throughput.get(dockerHost) : null;
+    if (observed == null) {
+      return UploadCodec.GZIP_6;
+    }
+    if (observed < SLOW_LINK_BYTES_PER_SEC) {
+      return UploadCodec.GZIP_9;
+    }
+    if (observed > FAST_LINK_BYTES_PER_SEC) {
+      return UploadCodec.GZIP_1;
+    }
+    return UploadCodec.GZIP_6;
+  }
+
+  /**
+   * Record the outcome of an upload, to inform future AUTO selections for the host.
+   *
+   * @param wireBytes bytes sent to the daemon, after compression.
+   * @param nanos time taken for the upload to complete.
+   */
+  public static void recordUpload(String dockerHost, long wireBytes, long nanos) {
+    if (dockerHost == null || wireBytes < MIN_SAMPLE_BYTES || nanos <= 0) {
+      return;
+    }
+    double sample = wireBytes / (nanos / 1_000_000_000.0);
+    Double updated = throughput.merge(dockerHost, sample, (old, cur) -> old + EWMA_WEIGHT * (cur - old));
+    log.debug("Upload to " + dockerHost + " sent " + wireBytes + " bytes at " + (long) sample + " bytes/s, average now " + updated.longValue() + " bytes/s");
+  }
+
+  static void reset() {
+    throughput.clear();
+  }
+
+  /**
+   * Wrap the stream with the compression for the codec.
+   *
+   * @param compressionThreads number of threads to use for gzip codecs, 1 uses the single threaded jdk writer.
+   */
+  public static OutputStream compress(OutputStream out, UploadCodec codec, int compressionThreads) throws IOException {
+    OutputStream buffered = new BufferedOutputStream(out);
+    if (codec == null || codec == UploadCodec.AUTO) {
+      codec = UploadCodec.GZIP_6;
+    }
+    switch (codec) {
+      case NONE:
+        return buffered;
+      case BZIP2:
+        return new BZip2CompressorOutputStream(buffered);
+      default:
+        int level = codec.getGzipLevel();
+        if (compressionThreads > 1) {
+          return new ParallelGZIPOutputStream(buffered, compressionThreads, level);
+        }
+        if (level == 6) {
+          // 6 is the jdk default level, avoid touching the deflater.
+          return new GZIPOutputStream(buffered);
+        }
+        return new GZIPOutputStream(buffered) {
+          {
+            def.setLevel(level);
+          }
+        };
+    }
+  }
+}
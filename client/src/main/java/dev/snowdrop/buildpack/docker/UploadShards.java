@@ -0,0 +1,102 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Splits the files of an archive into shards of roughly equal content size, to be sent as separate
+ * archives concurrently.
+ *
+ * Files are assigned largest first, each to the shard with the least content so far. Hard links are
+ * always placed in the same shard as their target, as a link can only be extracted after its target.
+ * Shards contain files only, parent directories must be created before the shards are sent.
+ */
+class UploadShards {
+
+  private static class Shard {
+    final int index;
+    final TarEntryTree tree = new TarEntryTree();
+    long size = 0;
+
+    Shard(int index) {
+      this.index = index;
+    }
+  }
+
+  private static class FileEntry {
+    final String path;
+    final ContainerEntry entry;
+
+    FileEntry(String path, ContainerEntry entry) {
+      this.path = path;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * @param links path of each file to be written as a link, to the path of its target.
+   * @return the non empty shards, at most count.
+   */
+  static List<TarEntryTree> split(TarEntryTree tree, Map<String, String> links, int count) throws IOException {
+    List<FileEntry> files = new ArrayList<>();
+    tree.visit(new TarEntryTree.Visitor() {
+      @Override
+      public void directory(String path) {
+      }
+
+      @Override
+      public void file(String path, ContainerEntry entry) {
+        if (!links.containsKey(path)) {
+          files.add(new FileEntry(path, entry));
+        }
+      }
+    });
+    //stable sort, so equal sized files are assigned in path order, giving the same shards for the same content.
+    files.sort(Comparator.comparingLong((FileEntry f) -> f.entry.getSize()).reversed());
+
+    PriorityQueue<Shard> bySize = new PriorityQueue<>(
+        Comparator.comparingLong((Shard s) -> s.size).thenComparingInt(s -> s.index));
+    List<Shard> shards = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Shard s = new Shard(i);
+      shards.add(s);
+      bySize.add(s);
+    }
+
+    Map<String, Shard> assigned = new HashMap<>();
+    for (FileEntry f : files) {
+      Shard s = bySize.poll();
+      s.tree.add(f.path, f.entry);
+      s.size += f.entry.getSize();
+      assigned.put(f.path, s);
+      bySize.add(s);
+    }
+
+    tree.visit(new TarEntryTree.Visitor() {
+      @Override
+      public void directory(String path) {
+      }
+
+      @Override
+      public void file(String path, ContainerEntry entry) {
+        String target = links.get(path);
+        if (target != null) {
+          assigned.get(target).tree.add(path, entry);
+        }
+      }
+    });
+
+    List<TarEntryTree> result = new ArrayList<>();
+    for (Shard s : shards) {
+      if (s.tree.size() > 0) {
+        result.add(s.tree);
+      }
+    }
+    return result;
+  }
+}
@@ -1,7 +1,7 @@
 package dev.snowdrop.buildpack.docker;
 
 /**
- * Represents a named volume bound to a path in a container.
+ * Represents a named volume, or a host path, bound to a path in a container.
  */
 public class VolumeBind {
   String volumeName;
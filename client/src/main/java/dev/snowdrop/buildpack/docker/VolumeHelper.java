@@ -0,0 +1,112 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.snowdrop.buildpack.ContainerLogReader;
+import dev.snowdrop.buildpack.config.DockerConfig;
+
+/**
+ * A single helper container with a set of volumes mounted, used to write volume content
+ * for the duration of a build, rather than creating, starting and removing a container per operation.
+ *
+ * The container is started once, (to ensure the volume binds take effect) and then left in place;
+ * content is copied to it via the daemon archive api, which does not require it to be running.
+ * Volumes are mounted at the same paths as in the build containers, so those paths must exist in the
+ * image owned by the build uid/gid, as they do in the ephemeral builder.
+ *
+ * Where a volume's mountpoint is directly writable from this host, content for it is written there
+ * instead, (see VolumeMountpoint) falling back to the helper container otherwise.
+ */
+public class VolumeHelper implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(VolumeHelper.class);
+
+  private final DockerConfig config;
+  private final String containerId;
+  private final List<VolumeBind> volumes;
+  private final ContainerLogReader[] logReaders;
+  //direct mountpoint per volume and uid/gid, null where the volume must be written via the container.
+  private final Map<String, Path> mountpoints = new HashMap<>();
+
+  private VolumeHelper(DockerConfig config, String containerId, List<VolumeBind> volumes, ContainerLogReader... logReaders) {
+    this.config = config;
+    this.containerId = containerId;
+    this.volumes = volumes;
+    this.logReaders = logReaders;
+  }
+
+  public static VolumeHelper create(DockerConfig config, String useImage, int uid, List<VolumeBind> volumes) {
+    String id = VolumeUtils.createHelperContainer(config.getDockerClient(), useImage, uid, volumes.toArray(new VolumeBind[volumes.size()]));
+    try {
+      ContainerLogReader slf4j = new ContainerLogReader(new dev.snowdrop.buildpack.Slf4jLogger(VolumeHelper.class));
+      ContainerLogReader ignore = VolumeUtils.ignoringLogReader();
+      VolumeUtils.startHelperContainer(config.getDockerClient(), id, slf4j, ignore);
+      log.debug("Volume helper container "+id+" created for "+volumes.size()+" volumes");
+      return new VolumeHelper(config, id, volumes, slf4j, ignore);
+    } catch (RuntimeException e) {
+      ContainerUtils.removeContainer(config.getDockerClient(), id);
+      throw e;
+    }
+  }
+
+  public String getContainerId() {
+    return containerId;
+  }
+
+  /**
+   * Adds content under path, (where path is within one of the mounted volumes) with the specified uid/gid.
+   * Entries are consumed from the stream as they are sent, and the stream is closed on completion.
+   */
+  public void addContent(String path, int uid, int gid, Stream<ContainerEntry> entries) {
+    for (VolumeBind vb : volumes) {
+      if (path.equals(vb.mountPath) || path.startsWith(vb.mountPath + "/")) {
+        Path mountpoint = getMountpoint(vb, uid, gid);
+        if (mountpoint != null) {
+          log.debug("Adding content at "+path+" directly to volume "+vb.volumeName+" at "+mountpoint);
+          VolumeMountpoint.write(mountpoint, path.substring(vb.mountPath.length()), uid, gid, entries);
+          return;
+        }
+        break;
+      }
+    }
+    log.debug("Adding content at "+path+" via volume helper "+containerId);
+    ContainerUtils.addContentToContainer(config, containerId, path, uid, gid, entries);
+  }
+
+  private Path getMountpoint(VolumeBind vb, int uid, int gid) {
+    //host paths are bound as-is, only named volumes have a mountpoint.
+    if (vb.volumeName.startsWith("/")) {
+      return null;
+    }
+    String key = vb.volumeName + ":" + uid + ":" + gid;
+    if (!mountpoints.containsKey(key)) {
+      mountpoints.put(key, VolumeMountpoint.find(config, vb.volumeName, uid, gid));
+    }
+    return mountpoints.get(key);
+  }
+
+  public void addContent(String path, int uid, int gid, List<ContainerEntry> entries) {
+    addContent(path, uid, gid, entries.stream());
+  }
+
+  /**
+   * Removes the helper container, must be called before the volumes can be removed.
+   */
+  @Override
+  public void close() {
+    for (ContainerLogReader reader : logReaders) {
+      try {
+        reader.close();
+      } catch (Exception e) {
+        log.error("Error closing log relay ", e);
+      }
+    }
+    ContainerUtils.removeContainer(config.getDockerClient(), containerId);
+  }
+}
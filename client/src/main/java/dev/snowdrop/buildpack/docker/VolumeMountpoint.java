@@ -0,0 +1,142 @@
+package dev.snowdrop.buildpack.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dockerjava.api.command.InspectVolumeResponse;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.utils.FilePermissions;
+import dev.snowdrop.buildpack.utils.FileSnapshot;
+import dev.snowdrop.buildpack.utils.FileTransfer;
+
+/**
+ * Writes content straight into the host directory backing a volume, rather than sending it as an
+ * archive via the daemon. Only possible when the client runs on the daemon host, with permission to
+ * write to the volume mountpoint and to set file ownership, (eg, when running as root alongside a
+ * rootful daemon) otherwise find returns null, and content should be added via the daemon instead.
+ */
+public class VolumeMountpoint {
+  private static final Logger log = LoggerFactory.getLogger(VolumeMountpoint.class);
+
+  private static final String PROBE_PREFIX = ".buildpack-probe-";
+  private static final int DIR_MODE = 0755;
+
+  /**
+   * The host path of the volume, if content can be written to it directly as uid/gid, otherwise null.
+   *
+   * The volume root must already be owned by uid, (as it is once the volume has been mounted over a
+   * directory owned by the build uid) so writing to it directly cannot leave it owned by root.
+   */
+  public static Path find(DockerConfig config, String volumeName, int uid, int gid) {
+    String host = config.getDockerHost();
+    if (host == null || !host.startsWith("unix://")) {
+      return null;
+    }
+    try {
+      InspectVolumeResponse volume = config.getDockerClient().inspectVolumeCmd(volumeName).exec();
+      if (volume.getMountpoint() == null) {
+        return null;
+      }
+      Path mountpoint = Paths.get(volume.getMountpoint());
+      return accepts(mountpoint, uid, gid) ? mountpoint : null;
+    } catch (RuntimeException e) {
+      log.debug("Unable to inspect volume "+volumeName+" for direct writes", e);
+      return null;
+    }
+  }
+
+  /**
+   * True if the directory is owned by uid, and new content within it can be given uid/gid ownership.
+   */
+  static boolean accepts(Path dir, int uid, int gid) {
+    if (!Files.isDirectory(dir) || !Files.isWritable(dir) || !FileSnapshot.isPosix(dir)) {
+      return false;
+    }
+    Path probe = null;
+    try {
+      Object owner = Files.getAttribute(dir, "unix:uid", LinkOption.NOFOLLOW_LINKS);
+      if (!Integer.valueOf(uid).equals(owner)) {
+        return false;
+      }
+      probe = Files.createTempFile(dir, PROBE_PREFIX, null);
+      chown(probe, uid, gid);
+      return true;
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+      log.debug("Unable to write directly to "+dir+" as "+uid+":"+gid, e);
+      return false;
+    } finally {
+      if (probe != null) {
+        try {
+          Files.deleteIfExists(probe);
+        } catch (IOException e) {
+          log.debug("Unable to remove probe file "+probe, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the entries under prefix within the mountpoint, owned by uid/gid. Missing parent directories
+   * are created with the same ownership, a later entry for the same path replaces an earlier one.
+   * Entries are consumed from the stream as they are written, and the stream is closed on completion.
+   */
+  public static void write(Path mountpoint, String prefix, int uid, int gid, Stream<ContainerEntry> entries) {
+    try (Stream<ContainerEntry> toWrite = entries) {
+      String relative = prefix.replaceAll("^/+", "");
+      Path base = relative.isEmpty() ? mountpoint : ApplicationStaging.resolve(mountpoint, relative);
+      Path realMountpoint = mountpoint.toRealPath();
+      Iterator<ContainerEntry> it = toWrite.iterator();
+      while (it.hasNext()) {
+        ContainerEntry ce = it.next();
+        Path target = ApplicationStaging.resolve(base, ce.getPath());
+        createDirectories(mountpoint, target.getParent(), uid, gid);
+        //existing volume content may include links, never follow one out of the volume.
+        if (!target.getParent().toRealPath().startsWith(realMountpoint)) {
+          throw new IOException("Entry path '" + ce.getPath() + "' resolves outside of the volume");
+        }
+        Files.deleteIfExists(target);
+        Path source = ce.getSourceFile();
+        if (FileTransfer.supports(source)) {
+          FileTransfer.copy(source, target);
+        } else {
+          try (InputStream is = ce.getDataSupplier().getData();
+               OutputStream os = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            FileTransfer.copy(is, os);
+          }
+        }
+        Files.setPosixFilePermissions(target, FilePermissions.fromMode(ce.getMode()));
+        chown(target, uid, gid);
+      }
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to write content to " + mountpoint, e);
+    }
+  }
+
+  private static void createDirectories(Path mountpoint, Path dir, int uid, int gid) throws IOException {
+    if (dir.equals(mountpoint) || Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    createDirectories(mountpoint, dir.getParent(), uid, gid);
+    Files.createDirectory(dir);
+    Files.setPosixFilePermissions(dir, FilePermissions.fromMode(DIR_MODE));
+    chown(dir, uid, gid);
+  }
+
+  private static void chown(Path p, int uid, int gid) throws IOException {
+    Files.setAttribute(p, "unix:uid", uid, LinkOption.NOFOLLOW_LINKS);
+    Files.setAttribute(p, "unix:gid", gid, LinkOption.NOFOLLOW_LINKS);
+  }
+}
@@ -4,21 +4,27 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 
 import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.WaitContainerResultCallback;
 import com.github.dockerjava.api.exception.NotFoundException;
 import com.github.dockerjava.api.model.Frame;
 
 import dev.snowdrop.buildpack.ContainerLogReader;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
 import dev.snowdrop.buildpack.utils.LifecycleArgs;
 
 public class VolumeUtils {
@@ -30,6 +36,18 @@ public class VolumeUtils {
   //will have this present as owned by build uid/gid.
   final static String mountPrefix = "/workspace";
 
+  //Second mountpoint used when copying between volumes, as with mountPrefix, this must exist in the ephemeral builder
+  //owned by the build uid/gid.
+  final static String copyTargetPrefix = "/layers";
+
+  //layout of a persistent application mirror volume.
+  final static String SYNC_APP_DIR = "app";
+  final static String SYNC_MANIFEST = "manifest.json";
+  //the new manifest is sent under this name, and only replaces the manifest once the sync script succeeds.
+  final static String SYNC_MANIFEST_PENDING = "manifest.json.pending";
+  final static String SYNC_REMOVED = "removed";
+  final static String SYNC_SCRIPT = "sync.sh";
+
   public static boolean createVolumeIfRequired(DockerClient dc, String volumeName) {
     if (!exists(dc, volumeName)) {
       return internalCreateVolume(dc, volumeName);
@@ -49,33 +67,71 @@ public class VolumeUtils {
 
   public static void removeVolume(DockerClient dc, String volumeName) {
     dc.removeVolumeCmd(volumeName).exec();
+    BuildMetricsRegistry.get().volumeRemoved();
   }
 
   public static boolean addContentToVolume(DockerClient dc, String volumeName, String useImage, String pathInVolume, File content) {
-    return internalAddContentToVolume(dc, volumeName, useImage, mountPrefix, 0,0, new FileContent(content).getContainerEntries());
+    return internalAddContentToVolume(dc, null, volumeName, useImage, mountPrefix, 0,0, new FileContent(content).getContainerEntries());
   }
 
   public static boolean addContentToVolume(DockerClient dc, String volumeName, String useImage, String name, Integer mode, String content) {
-    return internalAddContentToVolume(dc, volumeName, useImage, mountPrefix, 0,0, new StringContent(name, mode, content).getContainerEntries());
+    return internalAddContentToVolume(dc, null, volumeName, useImage, mountPrefix, 0,0, new StringContent(name, mode, content).getContainerEntries());
   }
 
   public static boolean addContentToVolume(DockerClient dc, String volumeName, String useImage, String prefix, int uid, int gid, List<ContainerEntry> entries) {
     if(!prefix.isEmpty() && !prefix.startsWith("/")) prefix = "/"+prefix;
-    return internalAddContentToVolume(dc, volumeName, useImage, mountPrefix+prefix, uid, gid, entries);
+    return internalAddContentToVolume(dc, null, volumeName, useImage, mountPrefix+prefix, uid, gid, entries);
+  }
+
+  /**
+   * Adds content to the volume, using the upload settings from the DockerConfig.
+   */
+  public static boolean addContentToVolume(DockerConfig config, String volumeName, String useImage, String prefix, int uid, int gid, List<ContainerEntry> entries) {
+    return addContentToVolume(config, volumeName, useImage, prefix, uid, gid, entries.stream());
+  }
+
+  /**
+   * Adds content to the volume, using the upload settings from the DockerConfig.
+   * Entries are consumed from the stream as they are sent, and the stream is closed on completion.
+   */
+  public static boolean addContentToVolume(DockerConfig config, String volumeName, String useImage, String prefix, int uid, int gid, Stream<ContainerEntry> entries) {
+    if(!prefix.isEmpty() && !prefix.startsWith("/")) prefix = "/"+prefix;
+    //when the volume is on this host, and writable as uid/gid, skip the daemon entirely.
+    Path mountpoint = VolumeMountpoint.find(config, volumeName, uid, gid);
+    if(mountpoint!=null){
+      log.debug("Adding content to volume "+volumeName+" under prefix "+prefix+" directly at "+mountpoint);
+      VolumeMountpoint.write(mountpoint, prefix, uid, gid, entries);
+      return true;
+    }
+    return internalAddContentToVolume(config.getDockerClient(), config, volumeName, useImage, mountPrefix+prefix, uid, gid, entries);
   }
 
   private static boolean internalCreateVolume(DockerClient dc, String volumeName) {
     dc.createVolumeCmd().withName(volumeName).exec();
+    BuildMetricsRegistry.get().volumeCreated();
     return exists(dc, volumeName);
   }
 
-  private static boolean internalAddContentToVolume(DockerClient dc, String volumeName, String useImage, String prefix, int uid, int gid, List<ContainerEntry> entries) {
-    return internalAddContentToVolume(dc, volumeName, useImage, prefix, uid, gid, entries.toArray(new ContainerEntry[entries.size()]));
+  private static boolean internalAddContentToVolume(DockerClient dc, DockerConfig config, String volumeName, String useImage, String prefix, int uid, int gid, List<ContainerEntry> entries) {
+    return internalAddContentToVolume(dc, config, volumeName, useImage, prefix, uid, gid, entries.stream());
   }
 
-  @SuppressWarnings("resource")
-  private static boolean internalAddContentToVolume(DockerClient dc, String volumeName, String useImage, String prefix, int uid, int gid, ContainerEntry... entries) {
+  //config is optional, when absent the content is sent with the default upload settings.
+  private static void upload(DockerClient dc, DockerConfig config, String containerId, String prefix, int uid, int gid, Stream<ContainerEntry> entries) {
+    if(config!=null){
+      ContainerUtils.addContentToContainer(config, containerId, prefix, uid, gid, entries);
+    }else{
+      try(Stream<ContainerEntry> toAdd = entries){
+        ContainerUtils.addContentToContainer(dc, containerId, prefix, uid, gid, toAdd.toArray(ContainerEntry[]::new));
+      }
+    }
+  }
 
+  private static String createHelperContainer(DockerClient dc, String volumeName, String useImage, int uid) {
+    return createHelperContainer(dc, useImage, uid, new VolumeBind(volumeName, mountPrefix));
+  }
+
+  static String createHelperContainer(DockerClient dc, String useImage, int uid, VolumeBind... volumes) {
     LifecycleArgs args = new LifecycleArgs("/cnb/lifecycle/analyzer", null);
     args.addArg("-version");
 
@@ -83,23 +139,16 @@ public class VolumeUtils {
     Map<String,String> envMap = new HashMap<>();
     envMap.put("CNB_PLATFORM_API", "0.10");
 
-    String dummyId = ContainerUtils.createContainer(dc, useImage, args.toList(), uid, envMap, null, null,  new VolumeBind(volumeName, mountPrefix));
-    try{
-      log.debug("Adding content to volume "+volumeName+" under prefix "+prefix+" using image "+useImage+" with volume bound at "+mountPrefix+" temp container id "+dummyId);
+    return ContainerUtils.createContainer(dc, useImage, args.toList(), uid, envMap, null, null, volumes);
+  }
 
+  @SuppressWarnings("resource")
+  static void startHelperContainer(DockerClient dc, String dummyId, ContainerLogReader slf4j, ContainerLogReader ignore) {
       log.trace("Starting container to ensure volume binds take effect correctly.");
       dc.startContainerCmd(dummyId).exec();         
 
       log.trace("- Attaching log relay for volume copy container");
 
-      //log relays for ignore/debug for this operation.
-      ContainerLogReader slf4j = new ContainerLogReader(new dev.snowdrop.buildpack.Slf4jLogger(VolumeUtils.class));
-      ContainerLogReader ignore = new ContainerLogReader(null){
-        public void onNext(Frame object) {
-          //do-nothing
-        }
-      };
-      
       //if debug is enabled for this class, collect container logs 
       ContainerLogReader logger = log.isDebugEnabled() ? slf4j : ignore;
 
@@ -110,8 +159,29 @@ public class VolumeUtils {
           .withStdErr(true)
           .withTimestamps(true)
           .exec(logger); 
+  }
+
+  static ContainerLogReader ignoringLogReader() {
+    return new ContainerLogReader(null){
+      public void onNext(Frame object) {
+        //do-nothing
+      }
+    };
+  }
+
+  private static boolean internalAddContentToVolume(DockerClient dc, DockerConfig config, String volumeName, String useImage, String prefix, int uid, int gid, Stream<ContainerEntry> entries) {
+
+    String dummyId = createHelperContainer(dc, volumeName, useImage, uid);
+    try{
+      log.debug("Adding content to volume "+volumeName+" under prefix "+prefix+" using image "+useImage+" with volume bound at "+mountPrefix+" temp container id "+dummyId);
+
+      //log relays for ignore/debug for this operation.
+      ContainerLogReader slf4j = new ContainerLogReader(new dev.snowdrop.buildpack.Slf4jLogger(VolumeUtils.class));
+      ContainerLogReader ignore = ignoringLogReader();
+
+      startHelperContainer(dc, dummyId, slf4j, ignore);
         
-      ContainerUtils.addContentToContainer(dc, dummyId, prefix, uid, gid, entries);
+      upload(dc, config, dummyId, prefix, uid, gid, entries);
 
       try{
         slf4j.close();
@@ -127,4 +197,126 @@ public class VolumeUtils {
       }
     }
   }
+
+  /**
+   * Incrementally syncs entries into a persistent mirror volume, then populates the target volume from the mirror.
+   * 
+   * The mirror volume holds the application under /app, alongside a manifest describing the content last synced.
+   * Only entries that differ from the manifest are sent to the daemon, entries no longer present are removed, 
+   * and the target volume is then populated by a copy performed entirely within the daemon. 
+   * 
+   * @return true if the target volume was populated, false if the in daemon copy failed, in which case the 
+   *         caller should fall back to adding the content to the target volume directly.
+   */
+  public static boolean syncContentToVolume(DockerConfig config, String mirrorVolumeName, String targetVolumeName, String useImage, int uid, int gid, Stream<ContainerEntry> entries) {
+    DockerClient dc = config.getDockerClient();
+    ContentManifest.Delta delta;
+
+    String dummyId = createHelperContainer(dc, mirrorVolumeName, useImage, uid);
+    try{
+      ContainerLogReader slf4j = new ContainerLogReader(new dev.snowdrop.buildpack.Slf4jLogger(VolumeUtils.class));
+      ContainerLogReader ignore = ignoringLogReader();
+
+      startHelperContainer(dc, dummyId, slf4j, ignore);
+
+      ContentManifest previous;
+      try{
+        previous = ContentManifest.fromJson(ContainerUtils.getFileFromContainer(dc, dummyId, mountPrefix+"/"+SYNC_MANIFEST));
+      }catch(RuntimeException e){
+        log.debug("No usable content manifest in volume "+mirrorVolumeName+", all content will be sent", e);
+        previous = new ContentManifest();
+      }
+
+      //changed entries are read as they are sent, so the stream is held open until the upload completes.
+      try(Stream<ContainerEntry> all = entries){
+        delta = previous.diff(all, uid, gid);
+        log.info("Syncing application to volume "+mirrorVolumeName+", "+delta.changed.size()+" of "+delta.manifest.entries.size()+" entries changed, "+delta.removed.size()+" removed");
+
+        List<ContainerEntry> toSend = new ArrayList<>();
+        for(ContainerEntry ce : delta.changed){
+          toSend.add(new PrefixedContainerEntry(SYNC_APP_DIR+"/", ce));
+        }
+        toSend.addAll(new StringContent(SYNC_REMOVED, 0644, String.join("\n", delta.removed)).getContainerEntries());
+        toSend.addAll(new StringContent(SYNC_SCRIPT, 0755, syncScript()).getContainerEntries());
+        toSend.addAll(new StringContent(SYNC_MANIFEST_PENDING, 0644, delta.manifest.toJson()).getContainerEntries());
+
+        ContainerUtils.addContentToContainer(config, dummyId, mountPrefix, uid, gid, toSend);
+      }
+
+      try{
+        slf4j.close();
+        ignore.close();
+      }catch(Exception e){
+        log.error("Error closing log relay ",e);
+      }
+    }finally{
+      if(dummyId!=null){
+        ContainerUtils.removeContainer(dc, dummyId);
+      }
+    }
+
+    //remove stale content from the mirror, then copy the mirror to the target volume.
+    List<String> command = Arrays.asList("/bin/sh", mountPrefix+"/"+SYNC_SCRIPT);
+    String copyId = ContainerUtils.createContainer(dc, useImage, command, uid, null, null, null,
+                                                   new VolumeBind(mirrorVolumeName, mountPrefix),
+                                                   new VolumeBind(targetVolumeName, copyTargetPrefix));
+    try{
+      dc.startContainerCmd(copyId).exec();
+      int rc = dc.waitContainerCmd(copyId).exec(new WaitContainerResultCallback()).awaitStatusCode();
+      log.debug("Volume sync container "+copyId+" completed with exit code "+rc);
+      return rc==0;
+    }finally{
+      ContainerUtils.removeContainer(dc, copyId);
+    }
+  }
+
+  private static String syncScript() {
+    String app = mountPrefix+"/"+SYNC_APP_DIR;
+    return "#!/bin/sh\n" +
+           "set -e\n" +
+           "if [ -s "+mountPrefix+"/"+SYNC_REMOVED+" ]; then\n" +
+           "  while IFS= read -r f; do rm -rf -- \""+app+"/$f\"; done < "+mountPrefix+"/"+SYNC_REMOVED+"\n" +
+           "  find "+app+" -mindepth 1 -depth -type d -empty -delete 2>/dev/null || true\n" +
+           "fi\n" +
+           "if [ -d "+app+" ]; then cp -a "+app+"/. "+copyTargetPrefix+"/; fi\n" +
+           //only record the sync as done once every step has succeeded, else the next sync retries the removals.
+           "mv -f "+mountPrefix+"/"+SYNC_MANIFEST_PENDING+" "+mountPrefix+"/"+SYNC_MANIFEST+"\n";
+  }
+
+  /**
+   * Presents an entry under an additional path prefix.
+   */
+  private static class PrefixedContainerEntry implements ContainerEntry {
+    private final String prefix;
+    private final ContainerEntry delegate;
+
+    PrefixedContainerEntry(String prefix, ContainerEntry delegate) {
+      this.prefix = prefix;
+      this.delegate = delegate;
+    }
+
+    public String getPath() {
+      return prefix + ContentManifest.normalize(delegate.getPath());
+    }
+
+    public long getSize() {
+      return delegate.getSize();
+    }
+
+    public Integer getMode() {
+      return delegate.getMode();
+    }
+
+    public long getLastModified() {
+      return delegate.getLastModified();
+    }
+
+    public Path getSourceFile() {
+      return delegate.getSourceFile();
+    }
+
+    public DataSupplier getDataSupplier() {
+      return delegate.getDataSupplier();
+    }
+  }
 }
@@ -0,0 +1,80 @@
+package dev.snowdrop.buildpack.jfr;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+/**
+ * Emits Java Flight Recorder events for builds, lifecycle phases, uploads, image pulls and docker requests.
+ *
+ * Each begin method returns a token to pass to the matching end method, or null when there is nothing to
+ * record, (JFR is not present in this runtime, or the event is not enabled in any recording) in which case
+ * the end method does nothing. The event classes are only loaded when JFR is present, so the client still
+ * runs on Java 8 runtimes without JFR.
+ */
+public class BuildEvents {
+
+  private static final boolean AVAILABLE = isJfrAvailable();
+
+  private static boolean isJfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, BuildEvents.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  public static Object beginBuild() {
+    return AVAILABLE ? JfrEvents.beginBuild() : null;
+  }
+
+  public static void endBuild(Object token, String builderImage, String outputImage, String platformLevel, Integer exitCode) {
+    if (token != null) {
+      JfrEvents.endBuild(token, builderImage, outputImage, platformLevel, exitCode);
+    }
+  }
+
+  public static Object beginPhase() {
+    return AVAILABLE ? JfrEvents.beginPhase() : null;
+  }
+
+  public static void endPhase(Object token, String phase, String platformLevel, String containerId, Integer exitCode) {
+    if (token != null) {
+      JfrEvents.endPhase(token, phase, platformLevel, containerId, exitCode);
+    }
+  }
+
+  public static Object beginUpload() {
+    return AVAILABLE ? JfrEvents.beginUpload() : null;
+  }
+
+  /**
+   * @param contentBytes uncompressed size of the file content sent.
+   * @param wireBytes bytes sent to the daemon, after compression.
+   */
+  public static void endUpload(Object token, String containerId, String path, String codec, int shards, long entries, long contentBytes, long wireBytes) {
+    if (token != null) {
+      JfrEvents.endUpload(token, containerId, path, codec, shards, entries, contentBytes, wireBytes);
+    }
+  }
+
+  public static Object beginImagePull() {
+    return AVAILABLE ? JfrEvents.beginImagePull() : null;
+  }
+
+  public static void endImagePull(Object token, String image, String platform, int attempts, boolean success) {
+    if (token != null) {
+      JfrEvents.endImagePull(token, image, platform, attempts, success);
+    }
+  }
+
+  /**
+   * Wrap the client so each request made to the daemon is recorded, returns the client unchanged when JFR is not present.
+   */
+  public static DockerHttpClient recording(DockerHttpClient client) {
+    return AVAILABLE ? new RecordingDockerHttpClient(client) : client;
+  }
+}
@@ -0,0 +1,187 @@
+package dev.snowdrop.buildpack.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JFR event types, only referenced via BuildEvents once JFR is known to be present.
+ */
+class JfrEvents {
+
+  @Name("dev.snowdrop.buildpack.Build")
+  @Label("Buildpack Build")
+  @Category("Buildpack Client")
+  static class BuildEvent extends Event {
+    @Label("Builder Image")
+    String builderImage;
+    @Label("Output Image")
+    String outputImage;
+    @Label("Platform Level")
+    String platformLevel;
+    @Label("Exit Code")
+    @Description("Exit code of the build, -1 if the build failed with an exception")
+    int exitCode;
+  }
+
+  @Name("dev.snowdrop.buildpack.Phase")
+  @Label("Lifecycle Phase")
+  @Category("Buildpack Client")
+  static class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+    @Label("Platform Level")
+    String platformLevel;
+    @Label("Container Id")
+    String containerId;
+    @Label("Exit Code")
+    @Description("Exit code of the phase, -1 if the phase failed with an exception")
+    int exitCode;
+  }
+
+  @Name("dev.snowdrop.buildpack.Upload")
+  @Label("Content Upload")
+  @Category("Buildpack Client")
+  static class UploadEvent extends Event {
+    @Label("Container Id")
+    String containerId;
+    @Label("Path")
+    String path;
+    @Label("Codec")
+    String codec;
+    @Label("Shards")
+    int shards;
+    @Label("Entries")
+    long entries;
+    @Label("Content Size")
+    @DataAmount
+    long contentBytes;
+    @Label("Bytes Sent")
+    @DataAmount
+    long wireBytes;
+    @Label("Compression Ratio")
+    @Description("Content size divided by bytes sent")
+    double compressionRatio;
+  }
+
+  @Name("dev.snowdrop.buildpack.ImagePull")
+  @Label("Image Pull")
+  @Category("Buildpack Client")
+  static class ImagePullEvent extends Event {
+    @Label("Image")
+    String image;
+    @Label("Platform")
+    String platform;
+    @Label("Attempts")
+    int attempts;
+    @Label("Success")
+    boolean success;
+  }
+
+  @Name("dev.snowdrop.buildpack.DockerRequest")
+  @Label("Docker Request")
+  @Category("Buildpack Client")
+  @Description("A request to the docker daemon, until the response headers are received")
+  static class DockerRequestEvent extends Event {
+    @Label("Method")
+    String method;
+    @Label("Path")
+    String path;
+    @Label("Status Code")
+    int statusCode;
+  }
+
+  private static <T extends Event> T begin(T event) {
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static Object beginBuild() {
+    return begin(new BuildEvent());
+  }
+
+  static void endBuild(Object token, String builderImage, String outputImage, String platformLevel, Integer exitCode) {
+    BuildEvent event = (BuildEvent) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.builderImage = builderImage;
+      event.outputImage = outputImage;
+      event.platformLevel = platformLevel;
+      event.exitCode = exitCode != null ? exitCode : -1;
+      event.commit();
+    }
+  }
+
+  static Object beginPhase() {
+    return begin(new PhaseEvent());
+  }
+
+  static void endPhase(Object token, String phase, String platformLevel, String containerId, Integer exitCode) {
+    PhaseEvent event = (PhaseEvent) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.phase = phase;
+      event.platformLevel = platformLevel;
+      event.containerId = containerId;
+      event.exitCode = exitCode != null ? exitCode : -1;
+      event.commit();
+    }
+  }
+
+  static Object beginUpload() {
+    return begin(new UploadEvent());
+  }
+
+  static void endUpload(Object token, String containerId, String path, String codec, int shards, long entries, long contentBytes, long wireBytes) {
+    UploadEvent event = (UploadEvent) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.containerId = containerId;
+      event.path = path;
+      event.codec = codec;
+      event.shards = shards;
+      event.entries = entries;
+      event.contentBytes = contentBytes;
+      event.wireBytes = wireBytes;
+      event.compressionRatio = wireBytes > 0 ? (double) contentBytes / wireBytes : 0;
+      event.commit();
+    }
+  }
+
+  static Object beginImagePull() {
+    return begin(new ImagePullEvent());
+  }
+
+  static void endImagePull(Object token, String image, String platform, int attempts, boolean success) {
+    ImagePullEvent event = (ImagePullEvent) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.image = image;
+      event.platform = platform;
+      event.attempts = attempts;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  static Object beginDockerRequest() {
+    return begin(new DockerRequestEvent());
+  }
+
+  static void endDockerRequest(Object token, String method, String path, int statusCode) {
+    DockerRequestEvent event = (DockerRequestEvent) token;
+    event.end();
+    if (event.shouldCommit()) {
+      event.method = method;
+      event.path = path;
+      event.statusCode = statusCode;
+      event.commit();
+    }
+  }
+}
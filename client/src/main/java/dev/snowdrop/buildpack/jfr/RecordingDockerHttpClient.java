@@ -0,0 +1,39 @@
+package dev.snowdrop.buildpack.jfr;
+
+import java.io.IOException;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+/**
+ * Records a DockerRequest event for each request made via the wrapped client. Streamed responses, (eg, logs
+ * or attach) are only timed until the response headers are received, not until the stream is consumed.
+ */
+class RecordingDockerHttpClient implements DockerHttpClient {
+
+  private final DockerHttpClient delegate;
+
+  RecordingDockerHttpClient(DockerHttpClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Response execute(Request request) {
+    Object token = JfrEvents.beginDockerRequest();
+    if (token == null) {
+      return delegate.execute(request);
+    }
+    int status = -1;
+    try {
+      Response response = delegate.execute(request);
+      status = response.getStatusCode();
+      return response;
+    } finally {
+      JfrEvents.endDockerRequest(token, request.method(), request.path(), status);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
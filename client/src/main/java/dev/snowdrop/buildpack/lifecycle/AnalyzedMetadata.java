@@ -0,0 +1,131 @@
+package dev.snowdrop.buildpack.lifecycle;
+
+import org.tomlj.Toml;
+import org.tomlj.TomlParseResult;
+import org.tomlj.TomlPosition;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.ImageReference;
+
+/**
+ * The parts of analyzed.toml the build acts on, parsed once from the copy taken after a phase.
+ *
+ * Instances are immutable, withRunImageReference returns a new instance with the toml updated, and
+ * records that it differs from the copy in the layers volume, so it is only written back when changed.
+ */
+public class AnalyzedMetadata {
+
+    private static final String RUN_IMAGE_REFERENCE = "run-image.reference";
+    private static final String RUN_IMAGE_EXTEND = "run-image.extend";
+
+    private final String toml;
+    private final String runImageReference;
+    private final boolean runImageExtend;
+    private final TomlPosition runImageReferencePosition;
+    private final boolean changed;
+
+    private AnalyzedMetadata(String toml, boolean changed){
+        TomlParseResult analyzed = Toml.parse(toml);
+        this.toml = toml;
+        this.runImageReference = analyzed.getString(RUN_IMAGE_REFERENCE);
+        Boolean extend = analyzed.getBoolean(RUN_IMAGE_EXTEND);
+        this.runImageExtend = extend == null ? false : extend.booleanValue();
+        this.runImageReferencePosition = runImageReference == null ? null : analyzed.inputPositionOf(RUN_IMAGE_REFERENCE);
+        this.changed = changed;
+    }
+
+    private AnalyzedMetadata(AnalyzedMetadata written){
+        this.toml = written.toml;
+        this.runImageReference = written.runImageReference;
+        this.runImageExtend = written.runImageExtend;
+        this.runImageReferencePosition = written.runImageReferencePosition;
+        this.changed = false;
+    }
+
+    /**
+     * Parse analyzed.toml as copied from a phase container, null if no copy was taken.
+     */
+    public static AnalyzedMetadata parse(byte[] analyzedToml){
+        if(analyzedToml == null){
+            return null;
+        }
+        return new AnalyzedMetadata(new String(analyzedToml), false);
+    }
+
+    /**
+     * run-image.reference, null if not present.
+     */
+    public String getRunImageReference(){
+        return runImageReference;
+    }
+
+    /**
+     * run-image.reference as an ImageReference, null if not present.
+     */
+    public ImageReference getRunImage(){
+        return runImageReference == null ? null : new ImageReference(runImageReference);
+    }
+
+    /**
+     * run-image.extend, (platform 0.12 onwards) false if not present.
+     */
+    public boolean isRunImageExtend(){
+        return runImageExtend;
+    }
+
+    /**
+     * True if this differs from the analyzed.toml in the layers volume.
+     */
+    public boolean isChanged(){
+        return changed;
+    }
+
+    public String toToml(){
+        return toml;
+    }
+
+    /**
+     * Set run-image.reference, leaving the rest of the toml untouched.
+     * @return this if the reference is unchanged, else the updated metadata.
+     */
+    public AnalyzedMetadata withRunImageReference(String reference){
+        if(reference == null || reference.equals(runImageReference)){
+            return this;
+        }
+        if(runImageReferencePosition == null){
+            throw new BuildpackException("analyzed.toml has no run-image.reference to update", new IllegalStateException());
+        }
+
+        //locate the value from the position of its key, and replace just the value.
+        int lineStart = 0;
+        for(int line = 1; line < runImageReferencePosition.line(); line++){
+            lineStart = toml.indexOf('\n', lineStart) + 1;
+        }
+        int equals = toml.indexOf('=', lineStart + runImageReferencePosition.column() - 1);
+        int valueStart = equals + 1;
+        while(toml.charAt(valueStart) == ' ' || toml.charAt(valueStart) == '\t'){
+            valueStart++;
+        }
+        char quote = toml.charAt(valueStart);
+        int valueEnd = toml.indexOf(quote, valueStart + 1);
+        //basic strings may contain escaped quotes, references never do, but skip them to be safe.
+        while(quote == '"' && toml.charAt(valueEnd - 1) == '\\'){
+            valueEnd = toml.indexOf(quote, valueEnd + 1);
+        }
+
+        String value = "\"" + reference.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        return new AnalyzedMetadata(toml.substring(0, valueStart) + value + toml.substring(valueEnd + 1), true);
+    }
+
+    /**
+     * Write the toml back to the layers volume via the phase, only if it has changed.
+     * @return the metadata as now held in the layers volume.
+     */
+    public AnalyzedMetadata writeTo(LifecyclePhaseAnalyzedTomlUpdater phase){
+        if(!changed){
+            return this;
+        }
+        phase.updateAnalyzedToml(toml);
+        return new AnalyzedMetadata(this);
+    }
+}
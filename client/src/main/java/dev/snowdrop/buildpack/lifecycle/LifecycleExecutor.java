@@ -2,17 +2,21 @@ package dev.snowdrop.buildpack.lifecycle;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.tomlj.Toml;
-import org.tomlj.TomlParseResult;
 
 import dev.snowdrop.buildpack.BuildConfig;
 import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.BuildReport;
+import dev.snowdrop.buildpack.BuildpackException;
 import dev.snowdrop.buildpack.config.ImageReference;
-import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.docker.ImageUtils;
 import dev.snowdrop.buildpack.docker.ImageUtils.ImageInfo;
+import dev.snowdrop.buildpack.jfr.BuildEvents;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
+import dev.snowdrop.buildpack.scheduler.DaemonLimits;
+import dev.snowdrop.buildpack.trace.BuildTrace;
 import dev.snowdrop.buildpack.lifecycle.phases.Analyzer;
 import dev.snowdrop.buildpack.lifecycle.phases.Detector;
+import dev.snowdrop.buildpack.lifecycle.phases.Exporter;
 import dev.snowdrop.buildpack.lifecycle.phases.Restorer;
 
 public class LifecycleExecutor {
@@ -23,6 +27,9 @@ public class LifecycleExecutor {
     private final LifecyclePhaseFactory factory;
     private final Version activePlatformLevel;
     private final boolean useCreator;
+    private final BuildReport buildReport;
+    //analyzed.toml as last read from, or written to, the layers volume.
+    private AnalyzedMetadata analyzed;
 
     private boolean useCreator(boolean extensionsPresent, Boolean trustBuilder) {
         if(trustBuilder==null){
@@ -44,26 +51,33 @@ public class LifecycleExecutor {
     }  
 
     public LifecycleExecutor(BuildConfig config, BuilderImage originalBuilder, BuilderImage extendedBuilder, String activePlatformLevel) {
+        this(config, originalBuilder, extendedBuilder, activePlatformLevel, new BuildReport());
+    }
+
+    public LifecycleExecutor(BuildConfig config, BuilderImage originalBuilder, BuilderImage extendedBuilder, String activePlatformLevel, BuildReport buildReport) {
         this.config = config;
+        this.buildReport = buildReport;
         this.useCreator = useCreator(extendedBuilder.hasExtensions(), config.getPlatformConfig().getTrustBuilder());
         this.activePlatformLevel = new Version(activePlatformLevel);
         this.factory = new LifecyclePhaseFactory(config.getDockerConfig(),
                                                  config.getBuildCacheConfig(),
                                                  config.getLaunchCacheConfig(),
                                                  config.getKanikoCacheConfig(),
+                                                 config.getApplicationCacheConfig(),
                                                  config.getPlatformConfig(),
                                                  config.getLogConfig(),
                                                  config.getOutputImage(),
                                                  originalBuilder,
                                                  extendedBuilder,
-                                                 activePlatformLevel);
+                                                 activePlatformLevel,
+                                                 buildReport);
     }
 
     public int execute() {
         int rc;
         try{
             //have factory create volumes for caches/application etc
-            factory.createVolumes(config.getApplication());
+            BuildTrace.span("prepare", "build", () -> buildReport.time("createVolumes", () -> factory.createVolumes(config.getApplication())));
 
             //do build phases, pay attention to useCreator & activePlatformLevel
             if(useCreator) {
@@ -73,24 +87,26 @@ public class LifecycleExecutor {
                 //creator if the builder image has extensions.
 
                 //create and run the creator phase
-                rc = runPhase(factory.getCreator());
+                rc = runPhase(factory.getCreator(), null);
             } else {
                 do{
                     Analyzer analyzer = (Analyzer)factory.getAnalyzer();
                     Detector detector = (Detector)factory.getDetector();
+                    Restorer restorer = (Restorer)factory.getRestorer();
 
                     //spec below 0.7 use detect/analyze ordering, 0.7 and above use analyze/detect ordering
+                    //each phase container is prepared while the phase before it runs.
                     if(activePlatformLevel.lessThan("0.7")) {
-                        rc=runPhase(detector);
+                        rc=runPhase(detector, analyzer);
                         if(rc!=0) break;
             
-                        rc=runPhase(analyzer);
+                        rc=runPhase(analyzer, restorer);
                         if(rc!=0) break;                        
                     }else{
-                        rc=runPhase(analyzer);
+                        rc=runPhase(analyzer, detector);
                         if(rc!=0) break;
 
-                        rc=runPhase(detector);
+                        rc=runPhase(detector, restorer);
                         if(rc!=0) break;
                     }
 
@@ -101,6 +117,7 @@ public class LifecycleExecutor {
                     if(activePlatformLevel.atLeast("0.10") && factory.getBuilderImage().hasExtensions()){
 
                         //read analyzed.toml, and update the run reference to a sanitized form.
+                        analyzed = AnalyzedMetadata.parse(detector.getAnalyzedToml());
                         ImageReference runRef = updateRunReference(detector);
 
                         if(runRef!=null){
@@ -116,10 +133,16 @@ public class LifecycleExecutor {
                         }  
                     }
 
-                    Restorer restorer = (Restorer)factory.getRestorer();
-                    rc=runPhase(restorer);
+                    //the builder (or build extender) is prepared while restorer runs, if the run image
+                    //changes it will not affect the build container.
+                    boolean extensions = activePlatformLevel.atLeast("0.10") && factory.getBuilderImage().hasExtensions();
+                    LifecyclePhase build = extensions ? factory.getBuildImageExtender() : factory.getBuilder();
+                    rc=runPhase(restorer, build);
                     if(rc!=0) break;
 
+                    //restorer may have rewritten analyzed.toml, read its copy once for the checks below.
+                    analyzed = AnalyzedMetadata.parse(restorer.getAnalyzedToml());
+
                     //restorer can update the image reference, this has been observed during multi-arch daemon builds,
                     //test if the analyzed.toml run ref is still the one we 
                     if(config.getDockerConfig().getUseDaemon()){
@@ -127,7 +150,7 @@ public class LifecycleExecutor {
                         //if the run image is multi-arch, restorer updates the analyzed.toml to add the digest of the architecture specific image
                         //this will not always match the digest for the run image pulled after detect with architecture, depending on container runtime
                         //repull the run image if it has a digest, just to be certain, else exporter will fail when the image is not present.
-                        ImageReference runRef = getRunReference(restorer);
+                        ImageReference runRef = analyzed != null ? analyzed.getRunImage() : null;
 
                         //if the new runRef has a digest, and no longer matches the expected run image, then update the builder's runImage.
                         if(runRef!=null && runRef.digestPresent() && !factory.getBuilderImage().getRunImages(activePlatformLevel)[0].equals(runRef)){
@@ -140,25 +163,29 @@ public class LifecycleExecutor {
                     boolean extendedRunImage=false;
                     if(activePlatformLevel.atLeast("0.10") && factory.getBuilderImage().hasExtensions()){
                         //if run image extension is requested, we need to drive the run image extension phase, alongside build image extension.
-                        extendedRunImage = isRunImageExtensionRequired(restorer,activePlatformLevel);
+                        extendedRunImage = isRunImageExtensionRequired(activePlatformLevel);
                     }
 
-                    if(activePlatformLevel.atLeast("0.10") && factory.getBuilderImage().hasExtensions()){
-                        rc=runPhase(factory.getBuildImageExtender());
-                        if(rc!=0) break;
+                    //if platform is at least 0.12, and run image extension happened, add -extended flag to exporter
+                    LifecyclePhase exporter = factory.getExporter(extendedRunImage);
 
+                    if(extensions){
                         //if platform is atleast 0.12, and analyzerToml run-image.extend is true, we must run run image extender.
-                        if(extendedRunImage){
-                            rc=runPhase(factory.getRunImageExtender());
+                        LifecyclePhase runExtender = extendedRunImage ? factory.getRunImageExtender() : null;
+
+                        rc=runPhase(build, runExtender!=null ? runExtender : exporter);
+                        if(rc!=0) break;
+
+                        if(runExtender!=null){
+                            rc=runPhase(runExtender, exporter);
                             if(rc!=0) break;
                         }
                     }else{
-                        rc=runPhase(factory.getBuilder());
+                        rc=runPhase(build, exporter);
                         if(rc!=0) break;
                     }
             
-                    //if platform is at least 0.12, and run image extension happened, add -extended flag to exporter
-                    rc=runPhase(factory.getExporter(extendedRunImage));
+                    rc=runPhase(exporter, null);
                     if(rc!=0) break;
                 }while(false);
             }
@@ -169,57 +196,67 @@ public class LifecycleExecutor {
             return rc;            
         }finally{
             //allow factory to clean up any volumes created
-            factory.tidyUp();
+            buildReport.time("tidyUp", () -> factory.tidyUp());
         }
     }
 
     private ImageReference updateRunReference(LifecyclePhaseAnalyzedTomlUpdater phase){
-        ImageReference runRef = getRunReference(phase);
+        ImageReference runRef = analyzed != null ? analyzed.getRunImage() : null;
         if(runRef!=null){
-            String oldToml = new String(phase.getAnalyzedToml());
-            String newToml = oldToml.replaceAll(runRef.getReference(),runRef.getReferenceWithLatest());     
-            phase.updateAnalyzedToml(newToml);
-            return runRef;
-        }else{
-            return null;
-        }
-    }
-
-    private ImageReference getRunReference(LifecyclePhaseAnalyzedTomlUpdater phase){
-        byte[] analyzedToml = phase.getAnalyzedToml();
-        if(analyzedToml == null){
-            return null;
+            //only written back if sanitizing changed the reference.
+            analyzed = analyzed.withRunImageReference(runRef.getReferenceWithLatest()).writeTo(phase);
         }
-        TomlParseResult analyzed = Toml.parse(new String(analyzedToml));
-        String newRunImage = analyzed.getString("run-image.reference");
-        return new ImageReference(newRunImage);
+        return runRef;
     }
 
-    private boolean isRunImageExtensionRequired(LifecyclePhaseAnalyzedTomlUpdater phase, Version activePlatformLevel){
-        boolean extendedRunImage = false;
-        if(activePlatformLevel.atLeast("0.12")){
-            byte[] analyzedToml = phase.getAnalyzedToml();
-            TomlParseResult analyzed = Toml.parse(new String(analyzedToml));
-
-            Boolean extend = analyzed.getBoolean("run-image.extend");
-            extendedRunImage = extend == null ? false : extend.booleanValue();
-        }
-        return extendedRunImage;
+    private boolean isRunImageExtensionRequired(Version activePlatformLevel){
+        return activePlatformLevel.atLeast("0.12") && analyzed != null && analyzed.isRunImageExtend();
     }
 
     private void pullRunImage(ImageReference runRef) {
         //pull the new image.. (use platform read from builder image)
         log.debug("Pulling new Run Image by sha"); 
-        ImageUtils.pullImages(config.getDockerConfig(), factory.getBuilderImage().getImagePlatform(), runRef);
+        buildReport.time("pullRunImage", () -> ImageUtils.pullImages(config.getDockerConfig(), factory.getBuilderImage().getImagePlatform(), runRef));
 
         //collect the run image id/digests for debug (helpful in edge case run image mismatches)
         ImageInfo ii = ImageUtils.inspectImage(config.getDockerConfig().getDockerClient(), runRef);
+        buildReport.addImagePull(runRef.getReferenceWithLatest(), ii.size);
         log.debug("new Run Image ID "+ii.id+" with Digests "+ii.digest+" Tags "+ii.tags+" for platform "+ii.platform);
     }
 
-    private int runPhase(LifecyclePhase phase){
-        ContainerStatus phaseRC = phase.runPhase(config.getLogConfig().getLogger(), config.getLogConfig().getUseTimestamps());
-        ContainerUtils.removeContainer(config.getDockerConfig().getDockerClient(), phaseRC.getContainerId());
+    /**
+     * Run the phase, preparing the container for the next phase (if any) while it runs.
+     * The completed container is removed in the background, before the volumes are removed by tidyUp.
+     */
+    private int runPhase(LifecyclePhase phase, LifecyclePhase next){
+        //docker-java does not always preserve an interrupt, so a cancelled build may only notice between phases.
+        if(Thread.currentThread().isInterrupted()){
+            throw new BuildpackException("Build cancelled before "+phase.getClass().getSimpleName(), new InterruptedException());
+        }
+        if(next!=null){
+            next.prepare();
+        }
+        Object event = BuildEvents.beginPhase();
+        BuildTrace.Span span = BuildTrace.begin(phase.getClass().getSimpleName(), "lifecycle");
+        long start = System.nanoTime();
+        ContainerStatus phaseRC = null;
+        try{
+            //exporters are the I/O heavy phase, limited per daemon when running within a BuildScheduler.
+            if(phase instanceof Exporter){
+                phaseRC = DaemonLimits.exporter(() -> phase.runPhase(config.getLogConfig().getLogger(), config.getLogConfig().getUseTimestamps()));
+            }else{
+                phaseRC = phase.runPhase(config.getLogConfig().getLogger(), config.getLogConfig().getUseTimestamps());
+            }
+            BuildMetricsRegistry.get().phaseCompleted(phase.getClass().getSimpleName(), activePlatformLevel.toString(), System.nanoTime() - start, phaseRC.getRc());
+        }finally{
+            BuildEvents.endPhase(event, phase.getClass().getSimpleName(), activePlatformLevel.toString(),
+                                 phaseRC!=null ? phaseRC.getContainerId() : null, phaseRC!=null ? phaseRC.getRc() : null);
+            span.arg("platformLevel", activePlatformLevel.toString())
+                .arg("containerId", phaseRC!=null ? phaseRC.getContainerId() : null)
+                .arg("exitCode", phaseRC!=null ? phaseRC.getRc() : null)
+                .end();
+        }
+        factory.removeContainer(phaseRC.getContainerId());
         return phaseRC.getRc(); 
     }
 }
@@ -4,4 +4,11 @@ import dev.snowdrop.buildpack.Logger;
 
 public interface LifecyclePhase {
     public ContainerStatus runPhase(Logger logger, boolean useTimestamps);
+
+    /**
+     * Create the container for this phase in the background, ahead of runPhase. If the arguments for
+     * the phase have changed by the time it is run, the prepared container is discarded and recreated.
+     */
+    public default void prepare() {
+    }
 }
@@ -1,26 +1,40 @@
 package dev.snowdrop.buildpack.lifecycle;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.BuildReport;
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.config.CacheConfig;
 import dev.snowdrop.buildpack.config.DockerConfig;
 import dev.snowdrop.buildpack.config.ImageReference;
 import dev.snowdrop.buildpack.config.LogConfig;
 import dev.snowdrop.buildpack.config.PlatformConfig;
 import dev.snowdrop.buildpack.config.RegistryAuthConfig;
+import dev.snowdrop.buildpack.docker.ApplicationStaging;
 import dev.snowdrop.buildpack.docker.ContainerEntry;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.docker.Content;
 import dev.snowdrop.buildpack.docker.StringContent;
 import dev.snowdrop.buildpack.docker.VolumeBind;
+import dev.snowdrop.buildpack.docker.VolumeHelper;
 import dev.snowdrop.buildpack.docker.VolumeUtils;
 import dev.snowdrop.buildpack.lifecycle.phases.Analyzer;
 import dev.snowdrop.buildpack.lifecycle.phases.Builder;
@@ -29,11 +43,16 @@ import dev.snowdrop.buildpack.lifecycle.phases.Detector;
 import dev.snowdrop.buildpack.lifecycle.phases.Exporter;
 import dev.snowdrop.buildpack.lifecycle.phases.Extender;
 import dev.snowdrop.buildpack.lifecycle.phases.Restorer;
+import dev.snowdrop.buildpack.trace.BuildTrace;
+import dev.snowdrop.buildpack.utils.TaskExecutors;
 
 public class LifecyclePhaseFactory {
 
     private static final Logger log = LoggerFactory.getLogger(LifecyclePhaseFactory.class);
 
+    //creates the next phase container, and removes completed ones, off the critical path of the build.
+    private static final String CONTAINER_TASKS = "buildpack-phase-container";
+
     //paths we use for mountpoints within build container.
     public final static String CACHE_VOL_PATH = "/cache-dir";
     public final static String LAUNCH_CACHE_VOL_PATH = "/launch-cache-dir";
@@ -43,6 +62,9 @@ public class LifecyclePhaseFactory {
     public final static String KANIKO_VOL_PATH = "/kaniko";
     public final static String DOCKER_SOCKET_PATH = "/var/run/docker.sock";
 
+    //command for the long lived containers that phases are exec'd in, removal of the container ends it.
+    private final static String[] EXEC_IDLE_COMMAND = {"/bin/sh", "-c", "while true; do sleep 3600; done"};
+
     public final static String APP_PATH_PREFIX = ""; //previously /content to avoid permissions, should not be issue with extended builder.
     public final static String ENV_PATH_PREFIX = "";
 
@@ -50,6 +72,7 @@ public class LifecyclePhaseFactory {
     private final CacheConfig      buildCacheConfig;
     private final CacheConfig      launchCacheConfig;
     private final CacheConfig      kanikoCacheConfig;
+    private final CacheConfig      applicationCacheConfig;
     private final PlatformConfig   platformConfig;
     private final LogConfig        logConfig;
 
@@ -57,6 +80,7 @@ public class LifecyclePhaseFactory {
     private final BuilderImage     originalBuilder;
     private final BuilderImage     builder;
     private final Version          platformLevel;
+    private final BuildReport      buildReport;
 
     //names of the volumes during buildtime.
     final String buildCacheVolume;
@@ -65,6 +89,20 @@ public class LifecyclePhaseFactory {
     final String applicationVolume;
     final String outputVolume;
     final String platformVolume;
+    //persistent mirror of the application content, only used for incremental uploads.
+    final String applicationCacheVolume;
+    //host dir bind mounted in place of the application volume, only set when the application is staged.
+    Path applicationStagingDir;
+    //container with all build volumes mounted, used for all content added to them during the build.
+    private VolumeHelper volumeHelper;
+    //container created ahead of the next phase, with the args/uid it was created for.
+    private Future<String> preparedContainer;
+    private List<String> preparedContainerKey;
+    //long lived containers, by uid, that phases are exec'd in when exec mode is enabled.
+    private final Map<Integer, Future<String>> execContainers = new HashMap<>();
+    private final Set<String> execContainerIds = ConcurrentHashMap.newKeySet();
+    //pending background removals, which must complete before the volumes can be removed.
+    private final List<Future<?>> containerRemovals = new ArrayList<>();
 
     // util method for random suffix.
     private String randomString(int length) {
@@ -82,15 +120,157 @@ public class LifecyclePhaseFactory {
         return volumeName;
     }
 
-    public String getContainerForPhase(String args[], Integer runAsId){
-        ArrayList<VolumeBind> binds = new ArrayList<>(Arrays.asList(
+    //the build volumes, at the paths used by the phase containers.
+    private ArrayList<VolumeBind> getVolumeBinds(){
+        return new ArrayList<>(Arrays.asList(
                                         new VolumeBind(buildCacheVolume, LifecyclePhaseFactory.CACHE_VOL_PATH), 
                                         new VolumeBind(launchCacheVolume, LifecyclePhaseFactory.LAUNCH_CACHE_VOL_PATH),
-                                        new VolumeBind(applicationVolume, LifecyclePhaseFactory.WORKSPACE_VOL_PATH),
+                                        new VolumeBind(getApplicationSource(), LifecyclePhaseFactory.WORKSPACE_VOL_PATH),
                                         new VolumeBind(platformVolume, LifecyclePhaseFactory.PLATFORM_VOL_PATH),
                                         new VolumeBind(outputVolume, LifecyclePhaseFactory.LAYERS_VOL_PATH),
                                         new VolumeBind(kanikoCacheVolume, LifecyclePhaseFactory.KANIKO_VOL_PATH)
-                                    ));        
+                                    ));
+    }
+
+    /**
+     * Create the container for a phase in the background, to be returned by getContainerForPhase
+     * if that is then called with the same args/uid. Replaces any container previously prepared.
+     */
+    public void prepareContainerForPhase(String args[], Integer runAsId){
+        discardPreparedContainer();
+        preparedContainerKey = getContainerKey(args, runAsId);
+        preparedContainer = TaskExecutors.get(CONTAINER_TASKS).submit(BuildTrace.wrap(() -> createContainerForPhase(args, runAsId)));
+    }
+
+    public String getContainerForPhase(String args[], Integer runAsId){
+        if(preparedContainer!=null){
+            if(preparedContainerKey.equals(getContainerKey(args, runAsId))){
+                Future<String> prepared = preparedContainer;
+                preparedContainer = null;
+                try{
+                    String id = prepared.get();
+                    log.debug("- using prepared container id " + id);
+                    return id;
+                }catch(ExecutionException e){
+                    log.debug("Prepared container could not be created, creating again", e.getCause());
+                }catch(InterruptedException e){
+                    discardContainer(prepared);
+                    throw BuildpackException.launderThrowable(e);
+                }
+            }else{
+                //args differ, (eg, analyzed.toml changed the run image) so the prepared container is of no use.
+                log.debug("Prepared container does not match phase args, recreating");
+                discardPreparedContainer();
+            }
+        }
+        return createContainerForPhase(args, runAsId);
+    }
+
+    /**
+     * True if phases should be run via exec in a long lived container per uid, rather than a container per phase.
+     */
+    public boolean getExecPhases(){
+        return Boolean.TRUE.equals(platformConfig.getExecPhases());
+    }
+
+    /**
+     * Create and start the exec container for the uid in the background, if not already present.
+     */
+    public void prepareExecContainer(int runAsId){
+        getExecContainer(runAsId);
+    }
+
+    /**
+     * Run the phase via exec, in the long lived container for the uid, which has the same volumes, env
+     * and user as a container created for the phase by getContainerForPhase.
+     * @return the exit code of the phase, and the id of the container it ran in.
+     */
+    public ContainerStatus execPhase(String args[], int runAsId, dev.snowdrop.buildpack.Logger logger){
+        String id;
+        try{
+            id = getExecContainer(runAsId).get();
+        }catch(ExecutionException e){
+            throw BuildpackException.launderThrowable("Unable to create container for uid "+runAsId, e.getCause());
+        }catch(InterruptedException e){
+            throw BuildpackException.launderThrowable(e);
+        }
+        log.debug("- exec in container id " + id);
+        int rc = ContainerUtils.execInContainer(dockerConfig.getDockerClient(), id, Arrays.asList(args), runAsId, new ContainerLogReader(logger));
+        return ContainerStatus.of(rc, id);
+    }
+
+    private Future<String> getExecContainer(int runAsId){
+        return execContainers.computeIfAbsent(runAsId, uid -> TaskExecutors.get(CONTAINER_TASKS).submit(BuildTrace.wrap(() -> {
+            String id = createContainerForPhase(EXEC_IDLE_COMMAND, uid);
+            try{
+                dockerConfig.getDockerClient().startContainerCmd(id).exec();
+            }catch(RuntimeException e){
+                ContainerUtils.removeContainer(dockerConfig.getDockerClient(), id);
+                throw e;
+            }
+            execContainerIds.add(id);
+            log.debug("- exec container id " + id + " started for uid " + uid);
+            return id;
+        })));
+    }
+
+    /**
+     * Remove a completed phase container in the background. Exec containers are kept until tidyUp.
+     */
+    public void removeContainer(String containerId){
+        if(execContainerIds.contains(containerId)){
+            return;
+        }
+        containerRemovals.add(TaskExecutors.get(CONTAINER_TASKS).submit(BuildTrace.wrap(() -> {
+            long start = System.nanoTime();
+            BuildTrace.span("removeContainer", "container", () -> ContainerUtils.removeContainer(dockerConfig.getDockerClient(), containerId));
+            buildReport.recordRemoval(containerId, (System.nanoTime() - start) / 1_000_000);
+        })));
+    }
+
+    private List<String> getContainerKey(String args[], Integer runAsId){
+        List<String> key = new ArrayList<>(Arrays.asList(args));
+        key.add(String.valueOf(runAsId));
+        return key;
+    }
+
+    private void discardPreparedContainer(){
+        if(preparedContainer!=null){
+            discardContainer(preparedContainer);
+            preparedContainer = null;
+            preparedContainerKey = null;
+        }
+    }
+
+    private void discardContainer(Future<String> container){
+        containerRemovals.add(TaskExecutors.get(CONTAINER_TASKS).submit(BuildTrace.wrap(() -> {
+            try{
+                ContainerUtils.removeContainer(dockerConfig.getDockerClient(), container.get());
+            }catch(ExecutionException e){
+                //container was never created.
+            }
+            return null;
+        })));
+    }
+
+    //waits for background container removals, logging rather than failing on any errors.
+    private void awaitContainerRemovals(){
+        for(Future<?> removal : containerRemovals){
+            try{
+                removal.get();
+            }catch(ExecutionException e){
+                log.warn("Unable to remove build container", e.getCause());
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted waiting for build container removal", e);
+                break;
+            }
+        }
+        containerRemovals.clear();
+    }
+
+    private String createContainerForPhase(String args[], Integer runAsId){
+        ArrayList<VolumeBind> binds = getVolumeBinds();
 
         if(dockerConfig.getUseDaemon())
           binds.add(new VolumeBind(dockerConfig.getDockerSocket(), LifecyclePhaseFactory.DOCKER_SOCKET_PATH));
@@ -108,7 +288,7 @@ public class LifecyclePhaseFactory {
         log.debug("- mounted " + buildCacheVolume + " at " + CACHE_VOL_PATH);
         log.debug("- mounted " + launchCacheVolume + " at " + LAUNCH_CACHE_VOL_PATH);
         log.debug("- mounted " + kanikoCacheVolume + " at " + KANIKO_VOL_PATH);        
-        log.debug("- mounted " + applicationVolume + " at " + WORKSPACE_VOL_PATH);
+        log.debug("- mounted " + getApplicationSource() + " at " + WORKSPACE_VOL_PATH);
         log.debug("- mounted " + platformVolume + " at " + PLATFORM_VOL_PATH);
         if(dockerConfig.getUseDaemon())
           log.debug("- mounted " + dockerConfig.getDockerSocket() + " at " + LifecyclePhaseFactory.DOCKER_SOCKET_PATH);
@@ -118,16 +298,38 @@ public class LifecyclePhaseFactory {
         return id;
     }
 
+    //volume name, or host path, to mount at the workspace path.
+    private String getApplicationSource(){
+        return applicationStagingDir != null ? applicationStagingDir.toString() : applicationVolume;
+    }
+
     public LifecyclePhaseFactory(DockerConfig dockerConfig,
                                  CacheConfig  buildCacheConfig,
                                  CacheConfig  launchCacheConfig,
                                  CacheConfig  kanikoCacheConfig,
+                                 CacheConfig  applicationCacheConfig,
                                  PlatformConfig platformConfig,
                                  LogConfig logConfig,
                                  ImageReference outputImage,
                                  BuilderImage originalBuilder,
                                  BuilderImage extendedBuilder,
                                  String platformLevel) {
+        this(dockerConfig, buildCacheConfig, launchCacheConfig, kanikoCacheConfig, applicationCacheConfig, platformConfig, 
+             logConfig, outputImage, originalBuilder, extendedBuilder, platformLevel, new BuildReport());
+    }
+
+    public LifecyclePhaseFactory(DockerConfig dockerConfig,
+                                 CacheConfig  buildCacheConfig,
+                                 CacheConfig  launchCacheConfig,
+                                 CacheConfig  kanikoCacheConfig,
+                                 CacheConfig  applicationCacheConfig,
+                                 PlatformConfig platformConfig,
+                                 LogConfig logConfig,
+                                 ImageReference outputImage,
+                                 BuilderImage originalBuilder,
+                                 BuilderImage extendedBuilder,
+                                 String platformLevel,
+                                 BuildReport buildReport) {
 
         this.buildCacheVolume = getVolumeName(buildCacheConfig, "buildpack-build-");
         this.launchCacheVolume = getVolumeName(launchCacheConfig, "buildpack-launch-");
@@ -135,24 +337,27 @@ public class LifecyclePhaseFactory {
         this.outputVolume = getVolumeName(null,"buildpack-output-");
         this.platformVolume = getVolumeName(null,"buildpack-platform-");
         this.kanikoCacheVolume = getVolumeName(kanikoCacheConfig,"buildpack-kaniko-");
+        //application cache is opt-in, only enabled when a volume name is supplied, as reusing it across builds is the point.
+        this.applicationCacheVolume = (applicationCacheConfig!=null && applicationCacheConfig.getCacheVolumeName()!=null) ? applicationCacheConfig.getCacheVolumeName() : null;
 
         this.dockerConfig = dockerConfig;
         this.buildCacheConfig = buildCacheConfig;
         this.launchCacheConfig = launchCacheConfig;
         this.kanikoCacheConfig = kanikoCacheConfig;
+        this.applicationCacheConfig = applicationCacheConfig;
         this.platformConfig = platformConfig;
         this.logConfig = logConfig;
         this.outputImage = outputImage;
         this.originalBuilder = originalBuilder;
         this.builder = extendedBuilder;
         this.platformLevel = new Version(platformLevel);
+        this.buildReport = buildReport;
     }
 
     public void createVolumes(List<Content> content){
         // create the volumes.
         VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), buildCacheVolume);
         VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), launchCacheVolume);
-        VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), applicationVolume);
         VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), outputVolume);
         VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), platformVolume);
         VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), kanikoCacheVolume);
@@ -160,20 +365,63 @@ public class LifecyclePhaseFactory {
         // add the application to the volume. Note we are placing it at /content,
         // because the volume mountpoint is mounted such that the user has no perms to create 
         // new content there, but subdirs are ok.
-        log.debug("There are "+content.size()+" entries to add for the app dir");
-        List<ContainerEntry> appEntries = content
-            .stream()
-            .flatMap(c -> c.getContainerEntries().stream())
-            .collect(Collectors.toList());
-
-        log.info("Adding application to volume "+applicationVolume);
-        VolumeUtils.addContentToVolume(dockerConfig.getDockerClient(), 
-                                       applicationVolume,
-                                       builder.getImage().getCanonicalReference(), 
-                                       LifecyclePhaseFactory.APP_PATH_PREFIX, 
-                                       builder.getUserId(), 
-                                       builder.getGroupId(), 
-                                       appEntries);
+        // entries are streamed, so content is walked as it is sent, rather than being collected up front.
+        log.debug("There are "+content.size()+" content items to add for the app dir");
+        // each content's stream stays open until the upload closes the combined stream, as entry data is read as it is sent.
+        Supplier<Stream<ContainerEntry>> appEntries = () -> ContainerUtils
+            .streamContent(content)
+            .peek(ce -> buildReport.addApplicationBytes(ce.getSize()));
+
+        boolean synced = false;
+        if(dockerConfig.getBindMountApplication()){
+            if(ApplicationStaging.supports(dockerConfig)){
+                //local daemon, stage the application to a host dir to bind mount, rather than uploading it.
+                log.info("Staging application for bind mount");
+                buildReport.startApplicationTransfer("bind");
+                applicationStagingDir = ApplicationStaging.stage(appEntries.get(), builder.getUserId(), builder.getGroupId());
+                if(applicationStagingDir!=null){
+                    log.info("- staged application to "+applicationStagingDir);
+                    synced = true;
+                }else{
+                    log.warn("Unable to stage application owned by build user "+builder.getUserId()+":"+builder.getGroupId()+", application will be uploaded");
+                }
+            }else{
+                log.warn("Application bind mount requested, but daemon at "+dockerConfig.getDockerHost()+" is not local, application will be uploaded");
+            }
+        }
+
+        if(!synced){
+            VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), applicationVolume);
+        }
+
+        //one helper with every build volume mounted serves all writes for this build.
+        volumeHelper = VolumeHelper.create(dockerConfig, builder.getImage().getCanonicalReference(), builder.getUserId(), getVolumeBinds());
+
+        if(!synced && applicationCacheVolume!=null){
+            //incremental mode, only send changes to the persistent application cache, then copy it to the app volume within the daemon.
+            log.info("Syncing application via application cache volume "+applicationCacheVolume);
+            VolumeUtils.createVolumeIfRequired(dockerConfig.getDockerClient(), applicationCacheVolume);
+            buildReport.startApplicationTransfer("sync");
+            synced = VolumeUtils.syncContentToVolume(dockerConfig, 
+                                                     applicationCacheVolume, 
+                                                     applicationVolume, 
+                                                     builder.getImage().getCanonicalReference(), 
+                                                     builder.getUserId(), 
+                                                     builder.getGroupId(), 
+                                                     appEntries.get());
+            if(!synced){
+                log.warn("Unable to populate application volume from application cache volume "+applicationCacheVolume+", sending full application content");
+            }
+        }
+
+        if(!synced){
+            log.info("Adding application to volume "+applicationVolume);
+            buildReport.startApplicationTransfer("upload");
+            volumeHelper.addContent(LifecyclePhaseFactory.WORKSPACE_VOL_PATH + LifecyclePhaseFactory.APP_PATH_PREFIX, 
+                                    builder.getUserId(), 
+                                    builder.getGroupId(), 
+                                    appEntries.get());
+        }
   
         //add workarounds to environment.
         if(!platformConfig.getEnvironment().containsKey("CNB_PLATFORM_API")) platformConfig.getEnvironment().put("CNB_PLATFORM_API", platformLevel.toString());
@@ -230,17 +478,40 @@ public class LifecyclePhaseFactory {
                                                      .collect(Collectors.toList());
 
         log.info("Adding platform entries to platform volume "+platformVolume);
-        VolumeUtils.addContentToVolume(dockerConfig.getDockerClient(), 
-                                       platformVolume,
-                                       builder.getImage().getCanonicalReference(),
-                                       LifecyclePhaseFactory.ENV_PATH_PREFIX, 
-                                       builder.getUserId(), 
-                                       builder.getGroupId(),
-                                       envEntries);  
+        volumeHelper.addContent(LifecyclePhaseFactory.PLATFORM_VOL_PATH + LifecyclePhaseFactory.ENV_PATH_PREFIX, 
+                                builder.getUserId(), 
+                                builder.getGroupId(),
+                                envEntries);  
     }
 
+    /**
+     * Remove the containers and volumes created for the build. Runs even when the build was cancelled
+     * by interrupt, with the interrupt restored afterwards.
+     */
     public void tidyUp(){
+        boolean interrupted = Thread.interrupted();
+        try{
+            removeBuildResources();
+        }finally{
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void removeBuildResources(){
         log.info("Post Build cleanup activites:");
+        //containers must be removed before the volumes they mount.
+        discardPreparedContainer();
+        execContainers.values().forEach(this::discardContainer);
+        execContainers.clear();
+        awaitContainerRemovals();
+        execContainerIds.clear();
+        //the helper must be removed before the volumes it mounts.
+        if(volumeHelper!=null){
+            volumeHelper.close();
+            volumeHelper = null;
+        }
         // remove volumes
         // (note when/if we persist the cache between builds, we'll be more selective here over what we remove)
         if (buildCacheConfig.getDeleteCacheAfterBuild()) {
@@ -252,9 +523,18 @@ public class LifecyclePhaseFactory {
         if (kanikoCacheConfig.getDeleteCacheAfterBuild()) {
             VolumeUtils.removeVolume(dockerConfig.getDockerClient(), kanikoCacheVolume);
         }
+        //unlike the other caches, a named application cache is kept unless deletion is asked for, as the mirror is only of use to later builds.
+        if (applicationCacheVolume!=null && applicationCacheConfig.getDeleteCacheAfterBuild(Boolean.FALSE)) {
+            VolumeUtils.removeVolume(dockerConfig.getDockerClient(), applicationCacheVolume);
+        }
 
         //always remove the app/output/platform vols, they are unique to each build.
-        VolumeUtils.removeVolume(dockerConfig.getDockerClient(), applicationVolume);
+        if(applicationStagingDir!=null){
+            ApplicationStaging.remove(dockerConfig.getDockerClient(), builder.getImage().getCanonicalReference(), applicationStagingDir);
+            applicationStagingDir = null;
+        }else{
+            VolumeUtils.removeVolume(dockerConfig.getDockerClient(), applicationVolume);
+        }
         VolumeUtils.removeVolume(dockerConfig.getDockerClient(), outputVolume);
         VolumeUtils.removeVolume(dockerConfig.getDockerClient(), platformVolume);
     
@@ -262,18 +542,18 @@ public class LifecyclePhaseFactory {
     }
 
     public void addContentToLayersVolume(StringContent content){
-        VolumeUtils.addContentToVolume(dockerConfig.getDockerClient(), 
-                                       outputVolume, 
-                                       builder.getImage().getCanonicalReference(), 
-                                       "", 
-                                       builder.getUserId(),
-                                       builder.getGroupId(),
-                                       content.getContainerEntries());
+        volumeHelper.addContent(LifecyclePhaseFactory.LAYERS_VOL_PATH, 
+                                builder.getUserId(),
+                                builder.getGroupId(),
+                                content.getContainerEntries());
     }
 
     public BuilderImage getBuilderImage(){
         return builder;
     }
+    public BuildReport getBuildReport(){
+        return buildReport;
+    }
     public DockerConfig getDockerConfig(){
         return dockerConfig;
     }
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.lifecycle.ContainerStatus;
@@ -24,7 +25,15 @@ public class Builder implements LifecyclePhase{
     }
 
     @Override
-    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+    public void prepare() {
+        if(factory.getExecPhases()){
+            factory.prepareExecContainer(getRunAsId());
+        }else{
+            factory.prepareContainerForPhase(getArgs().toArray(), getRunAsId());
+        }
+    }
+
+    private LifecycleArgs getArgs() {
 
         LifecycleArgs args = new LifecycleArgs("/cnb/lifecycle/builder", null);
 
@@ -34,15 +43,40 @@ public class Builder implements LifecyclePhase{
         args.addArg("-platform", LifecyclePhaseFactory.PLATFORM_VOL_PATH);
         args.addArg("-log-level", factory.getLogConfig().getLogLevel());
 
-        int runAsId = factory.getBuilderImage().getUserId();
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        return args;
+    }
+
+    private int getRunAsId() {
+        return factory.getBuilderImage().getUserId();
+    }
+
+    @Override
+    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+
+        LifecycleArgs args = getArgs();
+        int runAsId = getRunAsId();
+
+        BuildReport.Phase timing = factory.getBuildReport().phase("builder");
+
+        if(factory.getExecPhases()){
+            log.info("Builder phase will be run via exec with uid "+runAsId);
+            log.debug("- exec args "+args);
+            ContainerStatus status = timing.time("exec", () -> factory.execPhase(args.toArray(), runAsId, logger));
+            timing.containerId = status.getContainerId();
+            timing.exitCode = status.getRc();
+            log.info("Builder phase complete, with exit code " + status.getRc());
+            return status;
+        }
+
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Builder container id " + id+ " will be run with uid "+runAsId); 
             log.debug("- container args "+args);               
 
             // launch the container!
             log.info("- launching builder container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();          
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());          
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -54,7 +88,8 @@ public class Builder implements LifecyclePhase{
                 .exec(new ContainerLogReader(logger));
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Builder container complete, with exit code " + rc);    
 
             return ContainerStatus.of(rc,id);
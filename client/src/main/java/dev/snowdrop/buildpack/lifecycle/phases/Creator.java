@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.lifecycle.ContainerStatus;
@@ -46,16 +47,19 @@ public class Creator implements LifecyclePhase{
             args.addArg("-daemon");  
         }
     
+        BuildReport.Phase timing = factory.getBuildReport().phase("creator");
+
         //creator process always has to run as root.
         int runAsId = 0;
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Creator container id " + id+ " will be run with uid "+runAsId);
             log.debug("- container args "+args);
 
             // launch the container!
             log.info("- launching build container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();            
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());            
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -67,7 +71,8 @@ public class Creator implements LifecyclePhase{
                 .exec(new ContainerLogReader(logger));
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Creator container complete, with exit code " + rc);    
 
             return ContainerStatus.of(rc,id);
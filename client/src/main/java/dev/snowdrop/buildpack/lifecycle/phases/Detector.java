@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.docker.StringContent;
@@ -29,7 +30,15 @@ public class Detector implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
     }
 
     @Override
-    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+    public void prepare() {
+        if(factory.getExecPhases()){
+            factory.prepareExecContainer(getRunAsId());
+        }else{
+            factory.prepareContainerForPhase(getArgs().toArray(), getRunAsId());
+        }
+    }
+
+    private LifecycleArgs getArgs() {
 
         //0.7 onwards.. detector will look for order.toml in /layers before checking other paths. 
         //              allowing platforms to write an order.toml & override the builders order.toml
@@ -55,16 +64,46 @@ public class Detector implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
             args.addArg("-run", "/cnb/run.toml");
         }
 
+        return args;
+    }
+
+    private int getRunAsId() {
         // detector phase must run as non-root
-        int runAsId = factory.getBuilderImage().getUserId();
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        return factory.getBuilderImage().getUserId();
+    }
+
+    @Override
+    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+
+        LifecycleArgs args = getArgs();
+        int runAsId = getRunAsId();
+
+        BuildReport.Phase timing = factory.getBuildReport().phase("detector");
+
+        if(factory.getExecPhases()){
+            log.info("Detect phase will be run via exec with uid "+runAsId);
+            log.debug("- exec args "+args);
+            ContainerStatus status = timing.time("exec", () -> factory.execPhase(args.toArray(), runAsId, logger));
+            timing.containerId = status.getContainerId();
+            timing.exitCode = status.getRc();
+            log.info("Detect phase complete, with exit code " + status.getRc());
+
+            analyzedToml = timing.time("copy", () -> ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
+                                                            status.getContainerId(), 
+                                                            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml"));
+
+            return status;
+        }
+
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Detect container id " + id+ " will be run with uid "+runAsId);
             log.debug("- container args "+args);                         
 
             // launch the container!
             log.info("- launching detect container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -76,12 +115,13 @@ public class Detector implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
                 .exec(new ContainerLogReader(logger));
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Detect container complete, with exit code " + rc);   
             
-            analyzedToml = ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
+            analyzedToml = timing.time("copy", () -> ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
                                                             id, 
-                                                            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml");
+                                                            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml"));
 
             return ContainerStatus.of(rc,id);
         }catch(Exception e){
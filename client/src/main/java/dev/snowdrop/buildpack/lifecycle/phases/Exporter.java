@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.lifecycle.ContainerStatus;
@@ -26,7 +27,15 @@ public class Exporter implements LifecyclePhase{
     }
 
     @Override
-    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+    public void prepare() {
+        if(factory.getExecPhases()){
+            factory.prepareExecContainer(getRunAsId());
+        }else{
+            factory.prepareContainerForPhase(getArgs().toArray(), getRunAsId());
+        }
+    }
+
+    private LifecycleArgs getArgs() {
 
         //0.6 onwards..  added -process-type (to set default process type)
         //0.7 onwards..  removed -run-image
@@ -50,23 +59,46 @@ public class Exporter implements LifecyclePhase{
             args.addArg("-run", "/cnb/run.toml");
         }
 
-        int runAsId = factory.getBuilderImage().getUserId();
-
         //if using daemon, add daemon arg, run as root
         if(factory.getDockerConfig().getUseDaemon()){
             args.addArg("-daemon");  
-            runAsId = 0;
-        }        
+        }
+
+        return args;
+    }
 
+    private int getRunAsId() {
+        //if using daemon, run as root
+        return factory.getDockerConfig().getUseDaemon() ? 0 : factory.getBuilderImage().getUserId();
+    }
+
+    @Override
+    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+
+        LifecycleArgs args = getArgs();
+        int runAsId = getRunAsId();
+
+        BuildReport.Phase timing = factory.getBuildReport().phase("exporter");
+
+        if(factory.getExecPhases()){
+            log.info("Export phase will be run via exec with uid "+runAsId);
+            log.debug("- exec args "+args);
+            ContainerStatus status = timing.time("exec", () -> factory.execPhase(args.toArray(), runAsId, logger));
+            timing.containerId = status.getContainerId();
+            timing.exitCode = status.getRc();
+            log.info("Export phase complete, with exit code " + status.getRc());
+            return status;
+        }
 
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Export container id " + id+ " will be run with uid "+runAsId);
             log.debug("- container args "+args);        
 
             // launch the container!
             log.info("- launching export container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -78,7 +110,8 @@ public class Exporter implements LifecyclePhase{
                 .exec(new ContainerLogReader(logger));        
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Export container complete, with exit code " + rc);    
 
             return ContainerStatus.of(rc,id);
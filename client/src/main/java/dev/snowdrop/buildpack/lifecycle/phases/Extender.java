@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.lifecycle.ContainerStatus;
@@ -25,8 +26,14 @@ public class Extender implements LifecyclePhase{
         this.kind = kind;
     }
 
+    //unlike the other phases, extender always runs in a container of its own, even when phases are run via exec,
+    //as build image extension modifies the filesystem of the container it runs in.
     @Override
-    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+    public void prepare() {
+        factory.prepareContainerForPhase(getArgs().toArray(), getRunAsId());
+    }
+
+    private LifecycleArgs getArgs() {
 
         //0.12 onwards, must specify -kind of 'build' or 'run'
 
@@ -43,20 +50,35 @@ public class Extender implements LifecyclePhase{
             args.addArg("-kind", kind);
         }
 
+        return args;
+    }
+
+    private int getRunAsId() {
         //extender process has to run as root.
         // 
         //as per https://buildpacks.io/docs/reference/spec/migration/platform-api-0.9-0.10/
         //... The extender user should have sufficient permissions to execute all RUN instructions, 
         //    typically it should run as root.
-        int runAsId = 0;
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        return 0;
+    }
+
+    @Override
+    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+
+        LifecycleArgs args = getArgs();
+        int runAsId = getRunAsId();
+
+        BuildReport.Phase timing = factory.getBuildReport().phase("extender");
+
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Extender container id " + id+ " will be run with uid "+runAsId);   
             log.debug("- container args "+args);
 
             // launch the container!
             log.info("- launching extender container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -68,7 +90,8 @@ public class Extender implements LifecyclePhase{
                 .exec(new ContainerLogReader(logger));
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Extender container complete, with exit code " + rc);    
 
             return ContainerStatus.of(rc,id);
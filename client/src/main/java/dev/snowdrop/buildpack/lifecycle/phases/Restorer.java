@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
 import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.ContainerLogReader;
 import dev.snowdrop.buildpack.docker.ContainerUtils;
 import dev.snowdrop.buildpack.docker.StringContent;
@@ -30,7 +31,15 @@ public class Restorer implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
     }
 
     @Override
-    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+    public void prepare() {
+        if(factory.getExecPhases()){
+            factory.prepareExecContainer(getRunAsId());
+        }else{
+            factory.prepareContainerForPhase(getArgs().toArray(), getRunAsId());
+        }
+    }
+
+    private LifecycleArgs getArgs() {
 
         //0.7 onwards..  added -analyzed, -skip-layers
         //0.10 onwards.. when building with extensions, add -build-image flag
@@ -54,22 +63,53 @@ public class Restorer implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
             args.addArg("-build-image", originalBuilder.getImage().getReferenceWithLatest());
         }
 
-        int runAsId = factory.getBuilderImage().getUserId();
-
         if(factory.getPlatformLevel().atLeast("0.12") && factory.getDockerConfig().getUseDaemon()){
             args.addArg("-daemon");
-            runAsId = 0;
         }
 
+        return args;
+    }
+
+    private int getRunAsId() {
+        //in daemon mode, from 0.12, restorer runs as root
+        if(factory.getPlatformLevel().atLeast("0.12") && factory.getDockerConfig().getUseDaemon()){
+            return 0;
+        }
+        return factory.getBuilderImage().getUserId();
+    }
+
+    @Override
+    public ContainerStatus runPhase(dev.snowdrop.buildpack.Logger logger, boolean useTimestamps) {
+
+        LifecycleArgs args = getArgs();
+        int runAsId = getRunAsId();
+
+        BuildReport.Phase timing = factory.getBuildReport().phase("restorer");
+
+        if(factory.getExecPhases()){
+            log.info("Restorer phase will be run via exec with uid "+runAsId);
+            log.debug("- exec args "+args);
+            ContainerStatus status = timing.time("exec", () -> factory.execPhase(args.toArray(), runAsId, logger));
+            timing.containerId = status.getContainerId();
+            timing.exitCode = status.getRc();
+            log.info("Restorer phase complete, with exit code " + status.getRc());
+
+            analyzedToml = timing.time("copy", () -> ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
+                                                            status.getContainerId(), 
+                                                            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml"));
+
+            return status;
+        }
 
-        String id = factory.getContainerForPhase(args.toArray(), runAsId);
+        String id = timing.time("create", () -> factory.getContainerForPhase(args.toArray(), runAsId));
+        timing.containerId = id;
         try{
             log.info("Restorer container id " + id+ " will be run with uid "+runAsId);
             log.debug("- container args "+args);
 
             // launch the container!
             log.info("- launching restorer container");
-            factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec();
+            timing.time("start", () -> factory.getDockerConfig().getDockerClient().startContainerCmd(id).exec());
 
             log.info("- attaching log relay");
             // grab the logs to stdout.
@@ -81,12 +121,13 @@ public class Restorer implements LifecyclePhase, LifecyclePhaseAnalyzedTomlUpdat
                 .exec(new ContainerLogReader(logger));
 
             // wait for the container to complete, and retrieve the exit code.
-            int rc = factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode();
+            int rc = timing.time("wait", () -> factory.getDockerConfig().getDockerClient().waitContainerCmd(id).exec(new WaitContainerResultCallback()).awaitStatusCode());
+            timing.exitCode = rc;
             log.info("Restorer container complete, with exit code " + rc);
 
-            analyzedToml = ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
+            analyzedToml = timing.time("copy", () -> ContainerUtils.getFileFromContainer(factory.getDockerConfig().getDockerClient(), 
             id, 
-            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml");
+            LifecyclePhaseFactory.LAYERS_VOL_PATH + "/analyzed.toml"));
 
             return ContainerStatus.of(rc,id);
         }catch(Exception e){
@@ -0,0 +1,46 @@
+package dev.snowdrop.buildpack.metrics;
+
+/**
+ * Receives measurements from the client, for recording in a metrics system. Register an implementation
+ * via BuildMetricsRegistry; all methods default to doing nothing, so implementations only override the
+ * measurements they need. Durations are in nanoseconds.
+ *
+ * Methods may be called concurrently from multiple builds, and from background threads within a build,
+ * so implementations must be thread safe, and should return quickly.
+ */
+public interface BuildMetrics {
+
+  /**
+   * A build completed, with the exit code of the lifecycle.
+   */
+  default void buildCompleted(long durationNanos, int exitCode) {}
+
+  /**
+   * A build failed with an exception, rather than completing with an exit code.
+   */
+  default void buildFailed(long durationNanos, Throwable error) {}
+
+  /**
+   * A lifecycle phase completed, phase is the name of the phase, (eg, Detector)
+   */
+  default void phaseCompleted(String phase, String platformLevel, long durationNanos, int exitCode) {}
+
+  /**
+   * An image pull completed or gave up, attempts includes the initial pull.
+   */
+  default void imagePulled(String image, long durationNanos, int attempts, boolean success) {}
+
+  /**
+   * Content was sent to a container, contentBytes is the size of the content, wireBytes is the number of bytes
+   * sent to the daemon, after compression.
+   */
+  default void contentUploaded(long contentBytes, long wireBytes, long durationNanos) {}
+
+  default void containerCreated(long durationNanos) {}
+
+  default void containerRemoved(long durationNanos) {}
+
+  default void volumeCreated() {}
+
+  default void volumeRemoved() {}
+}
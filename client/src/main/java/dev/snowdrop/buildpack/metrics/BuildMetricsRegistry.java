@@ -0,0 +1,84 @@
+package dev.snowdrop.buildpack.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the BuildMetrics implementations measurements are sent to. Registration is global to the
+ * classloader, as measurements are taken within static utilities that have no per-build context.
+ * When nothing is registered, sending a measurement costs an iteration over an empty list.
+ */
+public class BuildMetricsRegistry {
+  private static final Logger log = LoggerFactory.getLogger(BuildMetricsRegistry.class);
+
+  private static final List<BuildMetrics> registered = new CopyOnWriteArrayList<>();
+
+  private static final BuildMetrics dispatcher = new BuildMetrics() {
+    @Override
+    public void buildCompleted(long durationNanos, int exitCode) {
+      send(m -> m.buildCompleted(durationNanos, exitCode));
+    }
+    @Override
+    public void buildFailed(long durationNanos, Throwable error) {
+      send(m -> m.buildFailed(durationNanos, error));
+    }
+    @Override
+    public void phaseCompleted(String phase, String platformLevel, long durationNanos, int exitCode) {
+      send(m -> m.phaseCompleted(phase, platformLevel, durationNanos, exitCode));
+    }
+    @Override
+    public void imagePulled(String image, long durationNanos, int attempts, boolean success) {
+      send(m -> m.imagePulled(image, durationNanos, attempts, success));
+    }
+    @Override
+    public void contentUploaded(long contentBytes, long wireBytes, long durationNanos) {
+      send(m -> m.contentUploaded(contentBytes, wireBytes, durationNanos));
+    }
+    @Override
+    public void containerCreated(long durationNanos) {
+      send(m -> m.containerCreated(durationNanos));
+    }
+    @Override
+    public void containerRemoved(long durationNanos) {
+      send(m -> m.containerRemoved(durationNanos));
+    }
+    @Override
+    public void volumeCreated() {
+      send(BuildMetrics::volumeCreated);
+    }
+    @Override
+    public void volumeRemoved() {
+      send(BuildMetrics::volumeRemoved);
+    }
+  };
+
+  public static void register(BuildMetrics metrics) {
+    registered.add(metrics);
+  }
+
+  public static void unregister(BuildMetrics metrics) {
+    registered.remove(metrics);
+  }
+
+  /**
+   * The BuildMetrics that sends each measurement to every registered implementation.
+   */
+  public static BuildMetrics get() {
+    return dispatcher;
+  }
+
+  //a failing metrics implementation must not fail the build.
+  private static void send(Consumer<BuildMetrics> measurement) {
+    for (BuildMetrics m : registered) {
+      try {
+        measurement.accept(m);
+      } catch (RuntimeException e) {
+        log.debug("Error recording metrics via "+m.getClass().getName(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package dev.snowdrop.buildpack.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.snowdrop.buildpack.BuildConfig;
+import dev.snowdrop.buildpack.BuildConfigBuilder;
+import dev.snowdrop.buildpack.BuildResult;
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.utils.TaskExecutors;
+import io.sundr.builder.annotations.Buildable;
+
+/**
+ * Runs many builds, limiting the work sent to each daemon at once. Limits apply separately to each docker
+ * host: the number of builds running, the number of exporters running, (the I/O heavy phase) and the
+ * number of images being pulled.
+ *
+ * Builds are submitted as a BuildConfigBuilder, as building the BuildConfig starts the build. Queued builds
+ * for a host are started highest priority first, and within a priority, round robin between submitters,
+ * so one submitter queueing many builds does not hold back another submitter's builds.
+ */
+@Buildable(generateBuilderPackage=true, builderPackage="dev.snowdrop.buildpack.builder")
+public class BuildScheduler implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(BuildScheduler.class);
+
+    public static BuildSchedulerBuilder builder() {
+        return new BuildSchedulerBuilder();
+    }
+
+    public static final String DEFAULT_SUBMITTER = "default";
+
+    private static final Integer DEFAULT_MAX_BUILDS = 4;
+    private static final Integer DEFAULT_MAX_EXPORTERS = 2;
+    private static final Integer DEFAULT_MAX_PULLS = 2;
+
+    private final Integer maxBuilds;
+    private final Integer maxExporters;
+    private final Integer maxPulls;
+    private final Executor executor;
+    //the executor is only shut down on close if the scheduler created it.
+    private final ExecutorService ownedExecutor;
+
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private boolean closed = false;
+
+    public BuildScheduler(Integer maxBuilds,
+                          Integer maxExporters,
+                          Integer maxPulls,
+                          Executor executor){
+        this.maxBuilds = maxBuilds != null ? Integer.max(1, maxBuilds) : DEFAULT_MAX_BUILDS;
+        this.maxExporters = maxExporters != null ? Integer.max(1, maxExporters) : DEFAULT_MAX_EXPORTERS;
+        this.maxPulls = maxPulls != null ? Integer.max(1, maxPulls) : DEFAULT_MAX_PULLS;
+        if(executor != null){
+            this.executor = executor;
+            this.ownedExecutor = null;
+        }else{
+            this.ownedExecutor = TaskExecutors.newExecutor("buildpack-scheduled-build");
+            this.executor = this.ownedExecutor;
+        }
+    }
+
+    /**
+     * Maximum builds running at once against each docker host.
+     */
+    public Integer getMaxBuilds(){
+        return maxBuilds;
+    }
+
+    /**
+     * Maximum exporter phases running at once against each docker host.
+     */
+    public Integer getMaxExporters(){
+        return maxExporters;
+    }
+
+    /**
+     * Maximum images being pulled at once by each docker host.
+     */
+    public Integer getMaxPulls(){
+        return maxPulls;
+    }
+
+    /**
+     * Executor builds are run on, a build occupies a thread for as long as it runs.
+     */
+    public Executor getExecutor(){
+        return executor;
+    }
+
+    /**
+     * A queued or running build, cancelling it removes it from the queue, or cancels the running build.
+     */
+    private class ScheduledBuild extends CompletableFuture<BuildResult> {
+        final BuildConfigBuilder build;
+        final HostQueue host;
+        final int priority;
+        final String submitter;
+        CompletableFuture<BuildResult> running;
+
+        ScheduledBuild(BuildConfigBuilder build, HostQueue host, int priority, String submitter){
+            this.build = build;
+            this.host = host;
+            this.priority = priority;
+            this.submitter = submitter;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning){
+            CompletableFuture<BuildResult> toCancel;
+            synchronized(BuildScheduler.this){
+                host.remove(this);
+                toCancel = running;
+            }
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if(toCancel != null){
+                toCancel.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Builds queued and running against one docker host.
+     */
+    private class HostQueue {
+        final String host;
+        final DaemonLimits limits = new DaemonLimits(maxExporters, maxPulls);
+        int running = 0;
+        //highest priority first, each priority holds a queue per submitter, in round robin order.
+        final TreeMap<Integer, LinkedHashMap<String, Deque<ScheduledBuild>>> queued = new TreeMap<>(Collections.reverseOrder());
+
+        HostQueue(String host){
+            this.host = host;
+        }
+
+        void add(ScheduledBuild b){
+            queued.computeIfAbsent(b.priority, p -> new LinkedHashMap<>())
+                  .computeIfAbsent(b.submitter, s -> new ArrayDeque<>())
+                  .add(b);
+        }
+
+        void remove(ScheduledBuild b){
+            LinkedHashMap<String, Deque<ScheduledBuild>> submitters = queued.get(b.priority);
+            if(submitters == null){
+                return;
+            }
+            Deque<ScheduledBuild> builds = submitters.get(b.submitter);
+            if(builds != null && builds.remove(b) && builds.isEmpty()){
+                submitters.remove(b.submitter);
+                if(submitters.isEmpty()){
+                    queued.remove(b.priority);
+                }
+            }
+        }
+
+        ScheduledBuild next(){
+            if(queued.isEmpty()){
+                return null;
+            }
+            LinkedHashMap<String, Deque<ScheduledBuild>> submitters = queued.firstEntry().getValue();
+            Iterator<Map.Entry<String, Deque<ScheduledBuild>>> first = submitters.entrySet().iterator();
+            Map.Entry<String, Deque<ScheduledBuild>> e = first.next();
+            ScheduledBuild b = e.getValue().poll();
+            //move the submitter to the back of the rotation, or drop it if it has nothing left queued.
+            first.remove();
+            if(!e.getValue().isEmpty()){
+                submitters.put(e.getKey(), e.getValue());
+            }
+            if(submitters.isEmpty()){
+                queued.remove(b.priority);
+            }
+            return b;
+        }
+
+        int size(){
+            return queued.values().stream().flatMap(m -> m.values().stream()).mapToInt(Deque::size).sum();
+        }
+    }
+
+    /**
+     * Queue a build, with default priority and submitter.
+     */
+    public CompletableFuture<BuildResult> submit(BuildConfigBuilder build){
+        return submit(build, 0, DEFAULT_SUBMITTER);
+    }
+
+    /**
+     * Queue a build, to be started once the limits for its docker host allow.
+     * @param priority builds with higher priority are started before those with lower priority.
+     * @param submitter builds of the same priority are started in turn for each submitter.
+     * @return a future completing with the result of the build, cancelling it cancels the build.
+     */
+    public CompletableFuture<BuildResult> submit(BuildConfigBuilder build, int priority, String submitter){
+        //resolve the docker config now to find the host, the build reuses its client.
+        DockerConfig dockerConfig = build.hasDockerConfig() ? build.buildDockerConfig() : DockerConfig.builder().build();
+        build.withDockerConfig(dockerConfig);
+        String host = dockerConfig.getDockerHost();
+
+        ScheduledBuild scheduled;
+        synchronized(this){
+            if(closed){
+                throw new BuildpackException("Build scheduler is closed", new IllegalStateException());
+            }
+            HostQueue queue = hosts.computeIfAbsent(host, HostQueue::new);
+            scheduled = new ScheduledBuild(build, queue, priority, submitter != null ? submitter : DEFAULT_SUBMITTER);
+            queue.add(scheduled);
+            log.debug("Build queued for "+host+" with priority "+priority+" for "+scheduled.submitter+", "+queue.size()+" queued, "+queue.running+" running");
+        }
+        dispatch(scheduled.host);
+        return scheduled;
+    }
+
+    /**
+     * Number of builds queued, and not yet started, for the docker host.
+     */
+    public synchronized int getQueued(String dockerHost){
+        HostQueue queue = hosts.get(dockerHost);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Number of builds running against the docker host.
+     */
+    public synchronized int getRunning(String dockerHost){
+        HostQueue queue = hosts.get(dockerHost);
+        return queue == null ? 0 : queue.running;
+    }
+
+    private void dispatch(HostQueue queue){
+        List<ScheduledBuild> toStart = new ArrayList<>();
+        synchronized(this){
+            while(queue.running < maxBuilds){
+                ScheduledBuild next = queue.next();
+                if(next == null){
+                    break;
+                }
+                queue.running++;
+                toStart.add(next);
+            }
+        }
+        toStart.forEach(this::start);
+    }
+
+    private void start(ScheduledBuild scheduled){
+        HostQueue queue = scheduled.host;
+        //the slot is freed when the build thread exits, not when the result completes, as a cancelled
+        //build completes its result while still tidying up its containers and volumes.
+        AtomicBoolean finished = new AtomicBoolean();
+        Runnable release = () -> {
+            if(finished.compareAndSet(false, true)){
+                synchronized(this){
+                    queue.running--;
+                }
+                dispatch(queue);
+            }
+        };
+        CompletableFuture<BuildResult> result;
+        try{
+            //building the config starts the build on the executor, with the host limits attached.
+            BuildConfig config = scheduled.build.withBuildExecutor(task -> executor.execute(queue.limits.wrap(() -> {
+                try{
+                    task.run();
+                }finally{
+                    release.run();
+                }
+            }))).build();
+            result = config.getBuildResult();
+        }catch(RuntimeException e){
+            //the build never reached the executor.
+            release.run();
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        synchronized(this){
+            scheduled.running = result;
+        }
+        result.whenComplete((r, t) -> {
+            if(t != null){
+                scheduled.completeExceptionally(t);
+            }else{
+                scheduled.complete(r);
+            }
+        });
+        //cancelled while starting.
+        if(scheduled.isCancelled()){
+            result.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel queued builds, and stop accepting new builds. Running builds continue to completion,
+     * the executor is shut down once they complete if it was created by the scheduler.
+     */
+    @Override
+    public void close(){
+        List<ScheduledBuild> pending = new ArrayList<>();
+        synchronized(this){
+            closed = true;
+            for(HostQueue queue : hosts.values()){
+                ScheduledBuild b;
+                while((b = queue.next()) != null){
+                    pending.add(b);
+                }
+            }
+        }
+        pending.forEach(b -> b.cancel(false));
+        if(ownedExecutor != null){
+            ownedExecutor.shutdown();
+        }
+    }
+}
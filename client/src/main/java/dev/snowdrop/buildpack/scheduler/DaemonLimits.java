@@ -0,0 +1,103 @@
+package dev.snowdrop.buildpack.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+/**
+ * Limits the exporters and image pulls running concurrently against a single daemon, shared by the
+ * builds a BuildScheduler runs against that daemon.
+ *
+ * Limits are attached to the thread running a build, in the same way as a BuildTrace. Builds not run by
+ * a BuildScheduler have no limits attached, and are not limited.
+ */
+public class DaemonLimits {
+
+  private static final ThreadLocal<DaemonLimits> current = new ThreadLocal<>();
+
+  private final int maxExporters;
+  private final int maxPulls;
+  private final Semaphore exporters;
+  private final Semaphore pulls;
+
+  public DaemonLimits(int maxExporters, int maxPulls) {
+    this.maxExporters = Integer.max(1, maxExporters);
+    this.maxPulls = Integer.max(1, maxPulls);
+    //fair, so a waiting build is not overtaken indefinitely by later builds.
+    this.exporters = new Semaphore(this.maxExporters, true);
+    this.pulls = new Semaphore(this.maxPulls, true);
+  }
+
+  public int getMaxExporters() {
+    return maxExporters;
+  }
+
+  public int getMaxPulls() {
+    return maxPulls;
+  }
+
+  /**
+   * Wrap a build task, so it runs with these limits attached to its thread.
+   */
+  public Runnable wrap(Runnable task) {
+    return () -> {
+      DaemonLimits previous = current.get();
+      current.set(this);
+      try {
+        task.run();
+      } finally {
+        if (previous == null) {
+          current.remove();
+        } else {
+          current.set(previous);
+        }
+      }
+    };
+  }
+
+  /**
+   * Run an exporter, waiting for an exporter permit if limits are attached to the current thread.
+   */
+  public static <T> T exporter(Supplier<T> action) {
+    DaemonLimits limits = current.get();
+    return limits == null ? action.get() : limits.withPermits(limits.exporters, 1, action);
+  }
+
+  /**
+   * Pull images, if limits are attached to the current thread, the images are passed to the action in
+   * batches of at most the pull limit, each batch holding a permit per image while its pulls run.
+   */
+  public static <T> void pulls(Collection<T> images, Consumer<Collection<T>> action) {
+    DaemonLimits limits = current.get();
+    if (limits == null) {
+      action.accept(images);
+      return;
+    }
+    List<T> all = new ArrayList<>(images);
+    for (int i = 0; i < all.size(); i += limits.maxPulls) {
+      List<T> batch = all.subList(i, Integer.min(all.size(), i + limits.maxPulls));
+      limits.withPermits(limits.pulls, batch.size(), () -> {
+        action.accept(batch);
+        return null;
+      });
+    }
+  }
+
+  private <T> T withPermits(Semaphore semaphore, int permits, Supplier<T> action) {
+    try {
+      semaphore.acquire(permits);
+    } catch (InterruptedException e) {
+      throw BuildpackException.launderThrowable(e);
+    }
+    try {
+      return action.get();
+    } finally {
+      semaphore.release(permits);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package dev.snowdrop.buildpack.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.transport.DockerHttpClient;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+/**
+ * Collects a timeline of nested spans for a build, written as a Chrome trace_event JSON file that can be
+ * opened offline in Perfetto (ui.perfetto.dev) or chrome://tracing.
+ *
+ * A trace is attached to the thread running the build, spans started on that thread, (or on threads running
+ * tasks wrapped via wrap) are recorded into it, and nest by time within each thread. When no trace is attached,
+ * starting a span does nothing, so spans cost nothing unless a trace file was requested.
+ */
+public class BuildTrace {
+
+  private static final ThreadLocal<BuildTrace> current = new ThreadLocal<>();
+
+  private static final Span NONE = new Span(null, null, null);
+
+  /**
+   * A span of time within the trace, recorded when end is called.
+   */
+  public static class Span {
+    private final BuildTrace trace;
+    private final String name;
+    private final String category;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Object> args = new LinkedHashMap<>();
+
+    private Span(BuildTrace trace, String name, String category) {
+      this.trace = trace;
+      this.name = name;
+      this.category = category;
+    }
+
+    /**
+     * Add a value shown alongside the span, null values are ignored.
+     */
+    public Span arg(String key, Object value) {
+      if (trace != null && value != null) {
+        args.put(key, value);
+      }
+      return this;
+    }
+
+    public void end() {
+      if (trace != null) {
+        trace.record(name, category, startNanos, System.nanoTime() - startNanos, args, false);
+      }
+    }
+
+    /**
+     * End the span as an async span, shown on its own track, for spans that overlap others on the same
+     * thread rather than nesting within them, (eg, concurrent image pulls)
+     */
+    public void endAsync() {
+      if (trace != null) {
+        trace.record(name, category, startNanos, System.nanoTime() - startNanos, args, true);
+      }
+    }
+  }
+
+  private final long originNanos = System.nanoTime();
+  private final AtomicLong asyncIds = new AtomicLong();
+  private final List<Map<String, Object>> events = new ArrayList<>();
+  private final Map<Long, String> threads = new LinkedHashMap<>();
+
+  /**
+   * The trace attached to the current thread, or null if none.
+   */
+  public static BuildTrace current() {
+    return current.get();
+  }
+
+  /**
+   * Attach this trace to the current thread, until detach is called with the trace returned.
+   * @return the trace previously attached, if any.
+   */
+  public BuildTrace attach() {
+    BuildTrace previous = current.get();
+    current.set(this);
+    return previous;
+  }
+
+  public static void detach(BuildTrace previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /**
+   * Start a span in the trace attached to the current thread.
+   */
+  public static Span begin(String name, String category) {
+    BuildTrace trace = current.get();
+    return trace == null ? NONE : new Span(trace, name, category);
+  }
+
+  public static <T> T span(String name, String category, Supplier<T> action) {
+    Span span = begin(name, category);
+    try {
+      return action.get();
+    } finally {
+      span.end();
+    }
+  }
+
+  public static void span(String name, String category, Runnable action) {
+    span(name, category, () -> {
+      action.run();
+      return null;
+    });
+  }
+
+  /**
+   * Wrap a task to be run on another thread, so spans it starts are recorded in the trace attached
+   * to the thread calling wrap.
+   */
+  public static Runnable wrap(Runnable task) {
+    BuildTrace trace = current.get();
+    if (trace == null) {
+      return task;
+    }
+    return () -> {
+      BuildTrace previous = trace.attach();
+      try {
+        task.run();
+      } finally {
+        detach(previous);
+      }
+    };
+  }
+
+  public static <T> Callable<T> wrap(Callable<T> task) {
+    BuildTrace trace = current.get();
+    if (trace == null) {
+      return task;
+    }
+    return () -> {
+      BuildTrace previous = trace.attach();
+      try {
+        return task.call();
+      } finally {
+        detach(previous);
+      }
+    };
+  }
+
+  /**
+   * Wrap the client, so each request made on a thread with a trace attached is recorded as a span.
+   * Streamed responses, (eg, logs) are only timed until the response headers are received.
+   */
+  public static DockerHttpClient tracing(DockerHttpClient delegate) {
+    return new TracingDockerHttpClient(delegate);
+  }
+
+  private synchronized void record(String name, String category, long startNanos, long durationNanos, Map<String, Object> args, boolean async) {
+    Thread t = Thread.currentThread();
+    threads.putIfAbsent(t.getId(), t.getName());
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("name", name);
+    event.put("cat", category);
+    event.put("pid", 1);
+    event.put("tid", t.getId());
+    if (!args.isEmpty()) {
+      event.put("args", args);
+    }
+    if (async) {
+      //async spans are written as a begin/end pair sharing an id.
+      long id = asyncIds.incrementAndGet();
+      Map<String, Object> end = new LinkedHashMap<>(event);
+      event.put("ph", "b");
+      event.put("id", id);
+      event.put("ts", micros(startNanos));
+      end.put("ph", "e");
+      end.put("id", id);
+      end.put("ts", micros(startNanos + durationNanos));
+      end.remove("args");
+      events.add(event);
+      events.add(end);
+    } else {
+      event.put("ph", "X");
+      event.put("ts", micros(startNanos));
+      event.put("dur", durationNanos / 1000.0);
+      events.add(event);
+    }
+  }
+
+  private double micros(long nanos) {
+    return (nanos - originNanos) / 1000.0;
+  }
+
+  /**
+   * The trace, as Chrome trace_event JSON.
+   */
+  public String toJson() {
+    try {
+      return new ObjectMapper().writeValueAsString(traceDocument());
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to serialize build trace", e);
+    }
+  }
+
+  /**
+   * Write the trace to the file, as Chrome trace_event JSON. The file is written outside the trace lock,
+   * so a thread waiting to record a span is not held (or its virtual thread pinned) by file I/O.
+   */
+  public void write(File file) {
+    try {
+      new ObjectMapper().writeValue(file, traceDocument());
+    } catch (IOException e) {
+      throw BuildpackException.launderThrowable("Unable to write build trace to " + file, e);
+    }
+  }
+
+  //a copy of the events recorded so far, spans are not changed once recorded.
+  private synchronized Map<String, Object> traceDocument() {
+    List<Map<String, Object>> all = new ArrayList<>();
+    Map<String, Object> process = new LinkedHashMap<>();
+    process.put("name", "process_name");
+    process.put("ph", "M");
+    process.put("pid", 1);
+    process.put("args", Collections.singletonMap("name", "buildpack-client"));
+    all.add(process);
+    threads.forEach((id, name) -> {
+      Map<String, Object> thread = new LinkedHashMap<>();
+      thread.put("name", "thread_name");
+      thread.put("ph", "M");
+      thread.put("pid", 1);
+      thread.put("tid", id);
+      thread.put("args", Collections.singletonMap("name", name));
+      all.add(thread);
+    });
+    all.addAll(events);
+
+    Map<String, Object> doc = new LinkedHashMap<>();
+    doc.put("traceEvents", all);
+    doc.put("displayTimeUnit", "ms");
+    return doc;
+  }
+}
@@ -0,0 +1,35 @@
+package dev.snowdrop.buildpack.trace;
+
+import java.io.IOException;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+/**
+ * Records a span for each request made via the wrapped client, on threads with a trace attached.
+ */
+class TracingDockerHttpClient implements DockerHttpClient {
+
+  private final DockerHttpClient delegate;
+
+  TracingDockerHttpClient(DockerHttpClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Response execute(Request request) {
+    BuildTrace.Span span = BuildTrace.begin(request.method() + " " + request.path(), "docker");
+    int status = -1;
+    try {
+      Response response = delegate.execute(request);
+      status = response.getStatusCode();
+      return response;
+    } finally {
+      span.arg("status", status).end();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -0,0 +1,227 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In memory pipe between a writing and a reading thread, holding at most a fixed number of chunks.
+ *
+ * Unlike PipedInputStream/PipedOutputStream, failures propagate in both directions: if the writer fails
+ * the reader sees the cause on its next read, and if the reader closes, the writer's next write fails
+ * rather than blocking forever. Data is handed over a chunk at a time, as chunks fill, and on close.
+ */
+public class BoundedPipe {
+
+    /**
+     * Raised to the writer when the reader has closed the pipe.
+     */
+    public static class PipeClosedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        public PipeClosedException() {
+            super("Pipe closed by reader");
+        }
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CHUNKS = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final int chunkSize;
+    private final int maxChunks;
+
+    private boolean writerClosed = false;
+    private boolean readerClosed = false;
+    private Throwable writerFailure = null;
+
+    private final OutputStream out;
+    private final InputStream in;
+
+    public BoundedPipe() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    public BoundedPipe(int chunkSize, int maxChunks) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+        this.out = new PipeOutputStream();
+        this.in = new PipeInputStream();
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Mark the writing side as failed, the reader will receive an IOException with this cause.
+     */
+    public void fail(Throwable cause) {
+        lock.lock();
+        try {
+            writerFailure = cause;
+            writerClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        lock.lock();
+        try {
+            while (chunks.size() >= maxChunks && !readerClosed) {
+                notFull.await();
+            }
+            if (readerClosed) {
+                throw new PipeClosedException();
+            }
+            chunks.add(chunk);
+            notEmpty.signal();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing to pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //returns null at end of stream.
+    private byte[] take() throws IOException {
+        lock.lock();
+        try {
+            while (chunks.isEmpty() && !writerClosed) {
+                notEmpty.await();
+            }
+            if (writerFailure != null) {
+                throw new IOException("Error writing to pipe", writerFailure);
+            }
+            byte[] chunk = chunks.poll();
+            notFull.signal();
+            return chunk;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading from pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        private byte[] buffer = new byte[chunkSize];
+        private int used = 0;
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (len > 0) {
+                int count = Math.min(len, chunkSize - used);
+                System.arraycopy(b, off, buffer, used, count);
+                used += count;
+                off += count;
+                len -= count;
+                if (used == chunkSize) {
+                    put(buffer);
+                    buffer = new byte[chunkSize];
+                    used = 0;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (used > 0) {
+                    put(Arrays.copyOf(buffer, used));
+                }
+            } finally {
+                lock.lock();
+                try {
+                    writerClosed = true;
+                    notEmpty.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] current = null;
+        private int pos = 0;
+        private boolean eof = false;
+
+        private boolean ensureData() throws IOException {
+            while (!eof && (current == null || pos == current.length)) {
+                current = take();
+                pos = 0;
+                if (current == null) {
+                    eof = true;
+                }
+            }
+            return !eof;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            return current[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, count);
+            pos += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - pos;
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                chunks.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
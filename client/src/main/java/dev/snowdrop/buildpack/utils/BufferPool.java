@@ -0,0 +1,26 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small pool of fixed size transfer buffers, to avoid allocating a new buffer per copied entry.
+ * Buffers beyond the pool capacity are allocated on demand and left for collection on release.
+ */
+public class BufferPool {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_CAPACITY = 32;
+
+    private static final ArrayBlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+    public static byte[] acquire() {
+        byte[] buf = pool.poll();
+        return buf != null ? buf : new byte[BUFFER_SIZE];
+    }
+
+    public static void release(byte[] buf) {
+        if (buf != null && buf.length == BUFFER_SIZE) {
+            pool.offer(buf);
+        }
+    }
+}
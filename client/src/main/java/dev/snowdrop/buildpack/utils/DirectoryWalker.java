@@ -0,0 +1,233 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Depth first walk of a directory tree, returning a snapshot of the attributes of each file within it.
+ *
+ * Unlike Files.walk, directories can be excluded before they are opened, pruning the whole subtree, and
+ * the visitor is told as each directory is entered (eg, to load per directory configuration).
+ * Attributes are read once per entry during the walk and retained in the snapshot.
+ * The entries of each directory are visited in name order, so a tree is always walked in the same order.
+ * Symbolic links to files are returned (with the attributes of the target), symbolic links to
+ * directories are not followed.
+ */
+public class DirectoryWalker {
+
+    public interface Visitor {
+        /**
+         * Called before the entries of a directory (including the root) are visited.
+         * @return the visitor to use for the entries within the directory.
+         */
+        default Visitor enterDirectory(Path dir) {
+            return this;
+        }
+
+        /**
+         * @return false to skip the file, or for a directory, to skip it and everything within it.
+         */
+        boolean include(Path path, boolean isDirectory);
+    }
+
+    /**
+     * Lazily walk the tree, directories are read as the stream is consumed. The stream must be closed.
+     */
+    public static Stream<FileSnapshot> walk(Path root, Visitor visitor) {
+        FileIterator it = new FileIterator(root, visitor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(it::close);
+    }
+
+    /**
+     * Walk the tree with directories read in parallel, for wide trees, or filesystems where each
+     * attribute read has high latency. Results are in the same order as a sequential walk.
+     * The visitor may be invoked concurrently from multiple threads.
+     */
+    public static List<FileSnapshot> walkParallel(Path root, Visitor visitor, int parallelism) {
+        boolean posix = FileSnapshot.isPosix(root);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new DirectoryTask(root, visitor.enterDirectory(root), posix));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Read the attributes of a directory entry, returns null for entries that are neither a directory
+     * nor a file, (including symbolic links to directories, and broken links)
+     */
+    private static FileSnapshot snapshot(Path p, boolean posix) throws IOException {
+        FileSnapshot s = FileSnapshot.read(p, posix, LinkOption.NOFOLLOW_LINKS);
+        if (s.isSymbolicLink()) {
+            try {
+                s = FileSnapshot.read(p, posix);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            return s.isRegularFile() ? s : null;
+        }
+        return (s.isDirectory() || s.isRegularFile()) ? s : null;
+    }
+
+    /**
+     * The entries of the directory, sorted by name.
+     */
+    private static List<Path> list(Path dir) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                entries.add(p);
+            }
+        }
+        entries.sort(BY_NAME);
+        return entries;
+    }
+
+    private static final Comparator<Path> BY_NAME = Comparator.comparing(p -> p.getFileName().toString());
+
+    private static class DirectoryTask extends RecursiveTask<List<FileSnapshot>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final transient Visitor visitor;
+        private final boolean posix;
+
+        DirectoryTask(Path dir, Visitor visitor, boolean posix) {
+            this.dir = dir;
+            this.visitor = visitor;
+            this.posix = posix;
+        }
+
+        @Override
+        protected List<FileSnapshot> compute() {
+            // each element is either a FileSnapshot, or a forked task for a subdirectory, to retain walk order.
+            List<Object> parts = new ArrayList<>();
+            try {
+                for (Path p : list(dir)) {
+                    FileSnapshot s = snapshot(p, posix);
+                    if (s == null || !visitor.include(p, s.isDirectory())) {
+                        continue;
+                    }
+                    if (s.isDirectory()) {
+                        DirectoryTask t = new DirectoryTask(p, visitor.enterDirectory(p), posix);
+                        t.fork();
+                        parts.add(t);
+                    } else {
+                        parts.add(s);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<FileSnapshot> result = new ArrayList<>();
+            for (Object o : parts) {
+                if (o instanceof DirectoryTask) {
+                    result.addAll(((DirectoryTask) o).join());
+                } else {
+                    result.add((FileSnapshot) o);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Frame {
+        final Iterator<Path> entries;
+        final Visitor visitor;
+
+        Frame(List<Path> entries, Visitor visitor) {
+            this.entries = entries.iterator();
+            this.visitor = visitor;
+        }
+    }
+
+    private static class FileIterator implements Iterator<FileSnapshot>, Closeable {
+        private final boolean posix;
+        private final Deque<Frame> open = new ArrayDeque<>();
+        private FileSnapshot next = null;
+
+        FileIterator(Path root, Visitor visitor) {
+            this.posix = FileSnapshot.isPosix(root);
+            enter(root, visitor);
+        }
+
+        private void enter(Path dir, Visitor parent) {
+            Visitor visitor = parent.enterDirectory(dir);
+            try {
+                open.push(new Frame(list(dir), visitor));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private FileSnapshot advance() {
+            try {
+                while (!open.isEmpty()) {
+                    Frame current = open.peek();
+                    if (!current.entries.hasNext()) {
+                        open.pop();
+                        continue;
+                    }
+                    Path p = current.entries.next();
+                    FileSnapshot s = snapshot(p, posix);
+                    if (s == null || !current.visitor.include(p, s.isDirectory())) {
+                        continue;
+                    }
+                    if (s.isDirectory()) {
+                        enter(p, current.visitor);
+                    } else {
+                        return s;
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public FileSnapshot next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileSnapshot result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            //directories are listed as they are entered, so there is nothing held open, just drop the frames.
+            open.clear();
+        }
+    }
+}
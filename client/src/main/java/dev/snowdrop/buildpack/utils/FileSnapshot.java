@@ -0,0 +1,87 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+
+/**
+ * Attributes of a file captured with a single attribute read, so size, mode, type and
+ * modification time can be used without further stat calls against the filesystem.
+ */
+public class FileSnapshot {
+
+    //mode used when the filesystem has no permission information.
+    public static final int DEFAULT_MODE = 0644;
+
+    private final Path path;
+    private final long size;
+    private final int mode;
+    private final long lastModified;
+    private final boolean directory;
+    private final boolean regularFile;
+    private final boolean symbolicLink;
+
+    private FileSnapshot(Path path, BasicFileAttributes attrs, int mode) {
+        this.path = path;
+        this.size = attrs.size();
+        this.mode = mode;
+        this.lastModified = attrs.lastModifiedTime().toMillis();
+        this.directory = attrs.isDirectory();
+        this.regularFile = attrs.isRegularFile();
+        this.symbolicLink = attrs.isSymbolicLink();
+    }
+
+    /**
+     * True if the filesystem of the path supports posix attributes, (read once per walk, rather than per file)
+     */
+    public static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Read the attributes of a path.
+     * @param posix if the filesystem supports posix attributes, see {@link #isPosix(Path)}
+     */
+    public static FileSnapshot read(Path path, boolean posix, LinkOption... options) throws IOException {
+        if (posix) {
+            PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class, options);
+            return new FileSnapshot(path, attrs, FilePermissions.toMode(attrs.permissions()));
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, options);
+        //java io File perms are only available for the default filesystem (eg, not within a zip)
+        int mode = path.getFileSystem() == FileSystems.getDefault() ? FilePermissions.fallbackMode(path.toFile()) : DEFAULT_MODE;
+        return new FileSnapshot(path, attrs, mode);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+}
@@ -0,0 +1,114 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies file content to an OutputStream via a FileChannel, rather than through a buffered stream.
+ *
+ * Small files are read straight into a pooled buffer, large files are memory mapped a window at a time,
+ * avoiding a read syscall per buffer and the per file buffer allocations of the stream path.
+ */
+public class FileTransfer {
+
+    //files at least this large are memory mapped.
+    static final long MMAP_THRESHOLD = 4L * 1024 * 1024;
+    //size of each mapped window, keeps address space use bounded for multi GB files.
+    static final long MMAP_WINDOW = 64L * 1024 * 1024;
+
+    /**
+     * True if the path can be copied via this class, (only files from the default filesystem can be channel read/mapped)
+     */
+    public static boolean supports(Path file) {
+        return file != null && file.getFileSystem() == FileSystems.getDefault();
+    }
+
+    /**
+     * Copy the content of the file to the stream.
+     * @return the number of bytes copied.
+     */
+    public static long copy(Path file, OutputStream out) throws IOException {
+        byte[] buf = BufferPool.acquire();
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fc.size();
+            if (size >= MMAP_THRESHOLD) {
+                return copyMapped(fc, size, out, buf);
+            }
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            long total = 0;
+            int n;
+            while ((n = fc.read(bb)) > 0) {
+                out.write(buf, 0, n);
+                total += n;
+                //via Buffer, as compiled on 9+ ByteBuffer.clear() links to a covariant override missing on Java 8.
+                ((Buffer) bb).clear();
+            }
+            return total;
+        } finally {
+            BufferPool.release(buf);
+        }
+    }
+
+    private static long copyMapped(FileChannel fc, long size, OutputStream out, byte[] buf) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long window = Math.min(MMAP_WINDOW, size - position);
+            MappedByteBuffer mapped = fc.map(FileChannel.MapMode.READ_ONLY, position, window);
+            while (mapped.hasRemaining()) {
+                int n = Math.min(buf.length, mapped.remaining());
+                mapped.get(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+            position += window;
+        }
+        return size;
+    }
+
+    /**
+     * Copy a file to a new file, via FileChannel.transferTo, allowing the platform to copy within the kernel,
+     * (and on filesystems that support it, to share the underlying blocks until either copy is modified)
+     * @return the number of bytes copied.
+     */
+    public static long copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long n = in.transferTo(position, size - position, out);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Copy a stream using a pooled buffer.
+     * @return the number of bytes copied.
+     */
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = BufferPool.acquire();
+        try {
+            long total = 0;
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+                total += n;
+            }
+            return total;
+        } finally {
+            BufferPool.release(buf);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Block parallel gzip writer, in the style of pigz.
+ *
+ * Input is split into fixed size blocks, each block is deflated independently on a worker pool
+ * (primed with the tail of the previous block as dictionary to retain most of the ratio), and the
+ * results are written in order as a single gzip member, readable by any gzip implementation.
+ *
+ * Blocks from every stream are deflated on one pool shared by all streams, sized to the available
+ * processors, so concurrent uploads (or upload shards) do not each start their own threads. The thread
+ * count given to a stream limits how many of its blocks are deflated at once.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    //created on first use, idle threads expire so the pool costs nothing between builds.
+    private static class Workers {
+        static final ExecutorService POOL = createPool();
+
+        private static ExecutorService createPool() {
+            int size = Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "buildpack-gzip-"+threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    static int getPoolSize() {
+        return ((ThreadPoolExecutor) Workers.POOL).getMaximumPoolSize();
+    }
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int maxPending;
+    private final Semaphore running;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block;
+    private int blockUsed = 0;
+    private byte[] dictionary = null;
+    private long totalIn = 0;
+    private boolean closed = false;
+
+    public ParallelGZIPOutputStream(OutputStream out, int threads) throws IOException {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out, int threads, int level) throws IOException {
+        this(out, threads, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    ParallelGZIPOutputStream(OutputStream out, int threads, int level, int blockSize) throws IOException {
+        if(threads < 1){
+            throw new IllegalArgumentException("Compression thread count must be at least 1");
+        }
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        //allow each worker to have a block in flight, plus one being queued, to bound memory use.
+        this.maxPending = threads * 2;
+        this.running = new Semaphore(threads);
+        this.block = new byte[blockSize];
+
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        //magic, deflate method, no flags, no mtime, no extra flags, unknown os.
+        out.write(new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 });
+    }
+
+    private void writeTrailer() throws IOException {
+        writeInt((int) crc.getValue());
+        writeInt((int) totalIn);
+    }
+
+    private void writeInt(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(closed){
+            throw new IOException("Stream closed");
+        }
+        crc.update(b, off, len);
+        totalIn += len;
+        while(len > 0){
+            int count = Math.min(len, blockSize - blockUsed);
+            System.arraycopy(b, off, block, blockUsed, count);
+            blockUsed += count;
+            off += count;
+            len -= count;
+            if(blockUsed == blockSize){
+                submitBlock(false);
+            }
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] input = block;
+        final int inputLength = blockUsed;
+        final byte[] dict = dictionary;
+
+        try{
+            running.acquire();
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during compression", ie);
+        }
+        try{
+            pending.add(Workers.POOL.submit(() -> {
+                try{
+                    return deflate(input, inputLength, dict, last);
+                }finally{
+                    running.release();
+                }
+            }));
+        }catch(RuntimeException e){
+            running.release();
+            throw e;
+        }
+
+        //retain the tail of this block to prime the next one.
+        if(inputLength >= DICTIONARY_SIZE){
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        }else if(inputLength > 0){
+            dictionary = Arrays.copyOf(input, inputLength);
+        }
+        block = new byte[blockSize];
+        blockUsed = 0;
+
+        while(pending.size() >= maxPending){
+            writeNext();
+        }
+    }
+
+    private byte[] deflate(byte[] input, int length, byte[] dict, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try{
+            if(dict != null){
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buf = new byte[64 * 1024];
+            if(last){
+                deflater.finish();
+                while(!deflater.finished()){
+                    int n = deflater.deflate(buf);
+                    result.write(buf, 0, n);
+                }
+            }else{
+                //sync flush ends the block on a byte boundary without marking it final, so blocks can be concatenated.
+                int n;
+                do{
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    result.write(buf, 0, n);
+                }while(n == buf.length);
+            }
+            return result.toByteArray();
+        }finally{
+            deflater.end();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        Future<byte[]> next = pending.poll();
+        try{
+            out.write(next.get());
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during compression", ie);
+        }catch(ExecutionException ee){
+            throw new IOException("Error during compression", ee.getCause());
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //blocks are only emitted once full, flushing here would fragment the stream.
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try{
+            submitBlock(true);
+            while(!pending.isEmpty()){
+                writeNext();
+            }
+            writeTrailer();
+            out.flush();
+        }finally{
+            //the pool is shared, so leave running blocks to finish rather than interrupting its threads.
+            for(Future<byte[]> f : pending){
+                f.cancel(false);
+            }
+            out.close();
+        }
+    }
+}
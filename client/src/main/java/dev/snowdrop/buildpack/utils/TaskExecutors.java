@@ -0,0 +1,133 @@
+package dev.snowdrop.buildpack.utils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Supplies the executors used for blocking work within a build, (tar writers, upload shards, phase container
+ * creation/removal, and scheduled builds) so that work can run on virtual threads where the JVM has them.
+ *
+ * On Java 21 and above, tasks run on virtual threads by default, set the system property
+ * dev.snowdrop.buildpack.virtualThreads=false to use platform threads instead. On older JVMs tasks always
+ * run on cached pools of daemon platform threads. Alternatively, supply a Factory via setFactory, before
+ * the first build, or any time to affect executors obtained afterwards.
+ *
+ * CPU bound work, (eg, parallel compression) keeps its own pool of platform threads, sized to the processors.
+ */
+public class TaskExecutors {
+    private static final Logger log = LoggerFactory.getLogger(TaskExecutors.class);
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "dev.snowdrop.buildpack.virtualThreads";
+
+    /**
+     * Creates an executor for tasks, named for the threads it will run them on.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        ExecutorService newExecutor(String name);
+    }
+
+    /**
+     * A cached pool of daemon platform threads per executor.
+     */
+    public static final Factory PLATFORM = name -> {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    };
+
+    //the Thread.ofVirtual builder methods, and Executors.newThreadPerTaskExecutor, when present.
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method THREAD_PER_TASK;
+
+    static {
+        Method ofVirtual = null, name = null, factory = null, perTask = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            //preview builds of 19/20 have the methods, but throw unless preview is enabled.
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+        THREAD_PER_TASK = perTask;
+    }
+
+    /**
+     * A virtual thread per task, only usable when isVirtualThreadsAvailable is true.
+     */
+    public static final Factory VIRTUAL = name -> {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads are not available in this JVM");
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L);
+            ThreadFactory threads = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) THREAD_PER_TASK.invoke(null, threads);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    };
+
+    private static volatile Factory factory = defaultFactory();
+    private static final Map<String, ExecutorService> shared = new ConcurrentHashMap<>();
+
+    private static Factory defaultFactory() {
+        boolean wanted = !"false".equalsIgnoreCase(System.getProperty(VIRTUAL_THREADS_PROPERTY));
+        if (wanted && OF_VIRTUAL != null) {
+            log.debug("Using virtual threads for build tasks");
+            return VIRTUAL;
+        }
+        return PLATFORM;
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    public static Factory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Replace the factory, shared executors obtained afterwards are created by the new factory. Executors
+     * created by the old factory are left to complete their tasks, (idle platform threads expire on their own)
+     */
+    public static void setFactory(Factory newFactory) {
+        factory = newFactory != null ? newFactory : defaultFactory();
+        shared.clear();
+    }
+
+    /**
+     * The executor shared by all tasks of the name, created on first use.
+     */
+    public static ExecutorService get(String name) {
+        return shared.computeIfAbsent(name, n -> factory.newExecutor(n));
+    }
+
+    /**
+     * A new executor, for the caller to shut down when done with it.
+     */
+    public static ExecutorService newExecutor(String name) {
+        return factory.newExecutor(name);
+    }
+}
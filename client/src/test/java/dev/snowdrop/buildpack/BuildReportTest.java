@@ -0,0 +1,104 @@
+package dev.snowdrop.buildpack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BuildReportTest {
+
+  @Test
+  void recordsStepsInOrder() {
+    BuildReport report = new BuildReport();
+
+    assertEquals("fish", report.time("pull", () -> "fish"));
+    report.time("volumes", () -> {});
+
+    assertEquals(2, report.steps.size());
+    assertEquals("pull", report.steps.get(0).name);
+    assertEquals("volumes", report.steps.get(1).name);
+  }
+
+  @Test
+  void recordsStepWhenActionFails() {
+    BuildReport report = new BuildReport();
+
+    assertThrows(IllegalStateException.class, () -> report.time("pull", () -> {
+      throw new IllegalStateException();
+    }));
+
+    assertEquals(1, report.steps.size());
+  }
+
+  @Test
+  void recordsRemovalAgainstLatestPhaseForContainer() {
+    BuildReport report = new BuildReport();
+    BuildReport.Phase detect = report.phase("detector");
+    detect.containerId = "one";
+    BuildReport.Phase build = report.phase("builder");
+    build.containerId = "two";
+
+    report.recordRemoval("one", 5);
+    report.recordRemoval("one", 2);
+    report.recordRemoval("unknown", 9);
+
+    assertEquals(7L, detect.timings.get("remove"));
+    assertTrue(build.timings.isEmpty());
+  }
+
+  @Test
+  void applicationTransferRestartsCount() {
+    BuildReport report = new BuildReport();
+    report.startApplicationTransfer("sync");
+    report.addApplicationBytes(100);
+    report.startApplicationTransfer("upload");
+    report.addApplicationBytes(40);
+
+    assertEquals("upload", report.applicationTransfer);
+    assertEquals(40, report.applicationBytes);
+  }
+
+  @Test
+  void serializesToJson() throws Exception {
+    BuildReport report = new BuildReport();
+    report.time("createVolumes", () -> {});
+    BuildReport.Phase phase = report.phase("analyzer");
+    phase.containerId = "id";
+    phase.exitCode = 0;
+    phase.record("wait", 12);
+    report.addImagePull("builder:latest", 1024L);
+    report.complete(0);
+
+    JsonNode json = new ObjectMapper().readTree(report.toJson());
+
+    assertEquals(0, json.get("exitCode").asInt());
+    assertNotNull(json.get("durationMillis"));
+    assertEquals("createVolumes", json.get("steps").get(0).get("name").asText());
+    assertEquals("analyzer", json.get("phases").get(0).get("name").asText());
+    assertEquals(12, json.get("phases").get(0).get("timings").get("wait").asLong());
+    assertEquals(1024, json.get("pulls").get(0).get("size").asLong());
+  }
+
+  @Test
+  void recordsUploadsOnlyWhenAttached() {
+    BuildReport report = new BuildReport();
+
+    BuildReport.recordUpload(10);
+    assertEquals(0, report.uploadedBytes);
+
+    BuildReport previous = report.attach();
+    try {
+      BuildReport.recordUpload(10);
+      BuildReport.recordUpload(5);
+    } finally {
+      BuildReport.detach(previous);
+    }
+    BuildReport.recordUpload(10);
+    assertEquals(15, report.uploadedBytes);
+  }
+}
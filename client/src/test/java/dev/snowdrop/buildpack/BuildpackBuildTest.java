@@ -0,0 +1,123 @@
+package dev.snowdrop.buildpack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.snowdrop.buildpack.config.ImageReference;
+
+@ExtendWith(MockitoExtension.class)
+public class BuildpackBuildTest {
+
+    @Test
+    void buildAsyncCompletesWithResult(@Mock BuildConfig config) throws Exception {
+        ImageReference output = new ImageReference("test/output:latest");
+        when(config.getOutputImage()).thenReturn(output);
+        BuildpackBuild build = new BuildpackBuild(config){
+            @Override
+            public int build(){
+                return 0;
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            BuildResult result = build.buildAsync(executor).get(10, TimeUnit.SECONDS);
+            assertEquals(0, result.getExitCode());
+            assertTrue(result.isSuccess());
+            assertSame(output, result.getOutputImage());
+            assertSame(build.getReport(), result.getBuildReport());
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void buildAsyncCompletesExceptionally(@Mock BuildConfig config) throws Exception {
+        BuildpackBuild build = new BuildpackBuild(config){
+            @Override
+            public int build(){
+                throw new BuildpackException("Pull failed", new IllegalStateException());
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            ExecutionException e = assertThrows(ExecutionException.class, () -> build.buildAsync(executor).get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof BuildpackException);
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelInterruptsRunningBuild(@Mock BuildConfig config) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        BuildpackBuild build = new BuildpackBuild(config){
+            @Override
+            public int build(){
+                started.countDown();
+                try{
+                    Thread.sleep(60000);
+                    return 0;
+                }catch(InterruptedException e){
+                    interrupted.countDown();
+                    throw BuildpackException.launderThrowable(e);
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try{
+            CompletableFuture<BuildResult> result = build.buildAsync(executor);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(result.cancel(true));
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            assertTrue(result.isCancelled());
+
+            //the interrupt is cleared before the thread is reused.
+            assertFalse(executor.submit(() -> Thread.currentThread().isInterrupted()).get(10, TimeUnit.SECONDS));
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void cancelBeforeStartSkipsBuild(@Mock BuildConfig config) {
+        AtomicBoolean ran = new AtomicBoolean();
+        BuildpackBuild build = new BuildpackBuild(config){
+            @Override
+            public int build(){
+                ran.set(true);
+                return 0;
+            }
+        };
+
+        List<Runnable> queued = new ArrayList<>();
+        CompletableFuture<BuildResult> result = build.buildAsync(queued::add);
+        assertTrue(result.cancel(true));
+        queued.forEach(Runnable::run);
+
+        assertFalse(ran.get());
+        assertTrue(result.isCancelled());
+    }
+}
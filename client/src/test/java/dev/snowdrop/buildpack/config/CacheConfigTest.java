@@ -26,4 +26,11 @@ public class CacheConfigTest {
         assertTrue(c4.getDeleteCacheAfterBuild());
         assertEquals("stilettos", c4.getCacheVolumeName());
     }
+
+    @Test
+    void defaultOnlyAppliesWhenNotSet(){
+        assertFalse(new CacheConfig("fred", null).getDeleteCacheAfterBuild(false));
+        assertTrue(new CacheConfig("fred", true).getDeleteCacheAfterBuild(false));
+        assertFalse(new CacheConfig("fred", false).getDeleteCacheAfterBuild(true));
+    }
 }
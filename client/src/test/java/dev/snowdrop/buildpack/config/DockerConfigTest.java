@@ -168,4 +168,74 @@ public class DockerConfigTest {
         DockerConfig dc3 = new DockerConfig(null, 0, null, null, null, null, null, null, dockerClient, null);
         assertEquals(0, dc3.getPullRetryCount());        
     }     
+
+    @Test
+    void checkUploadCompressionThreads(@Mock DockerClient dockerClient, @Mock PingCmd pingCmd){
+        lenient().when(dockerClient.pingCmd()).thenReturn(pingCmd);
+        lenient().when(pingCmd.exec()).thenAnswer(Answers.RETURNS_DEFAULTS);
+
+        DockerConfig dc1 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null);
+        assertEquals(1, dc1.getUploadCompressionThreads());
+
+        DockerConfig dc2 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, 4, null, null, null, null, null);
+        assertEquals(4, dc2.getUploadCompressionThreads());
+
+        DockerConfig dc3 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, 0, null, null, null, null, null);
+        assertEquals(1, dc3.getUploadCompressionThreads());
+    }
+
+    @Test
+    void checkUploadCodec(@Mock DockerClient dockerClient, @Mock PingCmd pingCmd){
+        lenient().when(dockerClient.pingCmd()).thenReturn(pingCmd);
+        lenient().when(pingCmd.exec()).thenAnswer(Answers.RETURNS_DEFAULTS);
+
+        DockerConfig dc1 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null);
+        assertEquals(DockerConfig.UploadCodec.AUTO, dc1.getUploadCodec());
+
+        DockerConfig dc2 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, null, DockerConfig.UploadCodec.GZIP_1, null, null, null, null);
+        assertEquals(DockerConfig.UploadCodec.GZIP_1, dc2.getUploadCodec());
+        assertEquals(1, dc2.getUploadCodec().getGzipLevel());
+    }
+
+    @Test
+    void checkUploadLinkDuplicates(@Mock DockerClient dockerClient, @Mock PingCmd pingCmd){
+        lenient().when(dockerClient.pingCmd()).thenReturn(pingCmd);
+        lenient().when(pingCmd.exec()).thenAnswer(Answers.RETURNS_DEFAULTS);
+
+        DockerConfig dc1 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null);
+        assertEquals(Boolean.FALSE, dc1.getUploadLinkDuplicates());
+
+        DockerConfig dc2 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, null, null, true, null, null, null);
+        assertEquals(Boolean.TRUE, dc2.getUploadLinkDuplicates());
+    }
+
+    @Test
+    void checkBindMountApplication(@Mock DockerClient dockerClient, @Mock PingCmd pingCmd){
+        lenient().when(dockerClient.pingCmd()).thenReturn(pingCmd);
+        lenient().when(pingCmd.exec()).thenAnswer(Answers.RETURNS_DEFAULTS);
+
+        DockerConfig dc1 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null);
+        assertEquals(Boolean.FALSE, dc1.getBindMountApplication());
+
+        DockerConfig dc2 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, null, null, null, true, null, null);
+        assertEquals(Boolean.TRUE, dc2.getBindMountApplication());
+    }
+
+    @Test
+    void checkUploadShards(@Mock DockerClient dockerClient, @Mock PingCmd pingCmd){
+        lenient().when(dockerClient.pingCmd()).thenReturn(pingCmd);
+        lenient().when(pingCmd.exec()).thenAnswer(Answers.RETURNS_DEFAULTS);
+
+        DockerConfig dc1 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null);
+        assertEquals(1, dc1.getUploadShards());
+        assertEquals(256L * 1024 * 1024, dc1.getUploadShardThreshold());
+
+        DockerConfig dc2 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, null, null, null, null, 4, 1024L);
+        assertEquals(4, dc2.getUploadShards());
+        assertEquals(1024L, dc2.getUploadShardThreshold());
+
+        DockerConfig dc3 = new DockerConfig(null, null, null, null, null, null, null, null, dockerClient, null, null, null, null, null, -1, -1L);
+        assertEquals(1, dc3.getUploadShards());
+        assertEquals(0L, dc3.getUploadShardThreshold());
+    }
 }
@@ -3,8 +3,11 @@ package dev.snowdrop.buildpack.config;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -39,4 +42,13 @@ public class LogConfigTest {
         LogConfig lc2 = new LogConfig(null, null, logger);
         assertEquals(logger, lc2.getLogger());
     }
+
+    @Test
+    void checkTraceFile() {
+        LogConfig lc1 = new LogConfig(null, null, null);
+        assertNull(lc1.getTraceFile());
+        File f = new File("build-trace.json");
+        LogConfig lc2 = new LogConfig(null, null, null, f);
+        assertEquals(f, lc2.getTraceFile());
+    }
 }
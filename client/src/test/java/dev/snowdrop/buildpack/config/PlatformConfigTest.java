@@ -61,5 +61,14 @@ public class PlatformConfigTest {
         PlatformConfig pc2 = new PlatformConfig(null, null, null, true, "echo 'hello world'");
         assertNotNull(pc2.getPhaseDebugScript());
     }
+
+    @Test
+    void checkExecPhases() {
+        PlatformConfig pc1 = new PlatformConfig(null, null, null, null, null);
+        assertFalse(pc1.getExecPhases());
+
+        PlatformConfig pc2 = new PlatformConfig(null, null, null, null, null, true);
+        assertTrue(pc2.getExecPhases());
+    }
     
 }
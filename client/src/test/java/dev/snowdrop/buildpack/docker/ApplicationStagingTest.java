@@ -0,0 +1,101 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.utils.FilePermissions;
+
+@DisabledOnOs(OS.WINDOWS)
+public class ApplicationStagingTest {
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> all = Files.walk(dir)) {
+            all.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void stagesEntries(@TempDir Path src) throws IOException {
+        Files.createDirectories(src.resolve("one"));
+        Files.write(src.resolve("one/file"), "stiletto".getBytes());
+
+        Stream<ContainerEntry> entries = Stream.concat(
+            new FileContent("", src.toFile()).streamContainerEntries(),
+            new StringContent("bin/run", 0755, "#!/bin/sh").getContainerEntries().stream());
+
+        //stage as the current user, which can always set ownership to itself.
+        int uid = (Integer) Files.getAttribute(src, "unix:uid");
+        int gid = (Integer) Files.getAttribute(src, "unix:gid");
+        Path staged = ApplicationStaging.stage(entries, uid, gid);
+        try {
+            assertEquals("stiletto", new String(Files.readAllBytes(staged.resolve("one/file"))));
+            assertEquals("#!/bin/sh", new String(Files.readAllBytes(staged.resolve("bin/run"))));
+            int mode = FilePermissions.toMode(Files.getPosixFilePermissions(staged.resolve("bin/run")));
+            assertEquals(0755, mode & 0755);
+            //staged content is a copy, not the original.
+            Files.write(staged.resolve("one/file"), "wibble".getBytes());
+            assertEquals("stiletto", new String(Files.readAllBytes(src.resolve("one/file"))));
+        } finally {
+            delete(staged);
+        }
+    }
+
+    @Test
+    void stagedContentIsOwnedNotShared(@TempDir Path src) throws IOException {
+        int uid = (Integer) Files.getAttribute(src, "unix:uid");
+        assumeTrue(uid == 0, "only root can give the staged content to another user");
+
+        Path staged = ApplicationStaging.stage(new StringContent("one/file", 0644, "stiletto").getContainerEntries().stream(), 1234, 1234);
+        try {
+            for (Path p : new Path[] {staged, staged.resolve("one"), staged.resolve("one/file")}) {
+                assertEquals(1234, Files.getAttribute(p, "unix:uid"));
+                assertEquals(1234, Files.getAttribute(p, "unix:gid"));
+                assertEquals(0, FilePermissions.toMode(Files.getPosixFilePermissions(p)) & 0002, p + " is writable by other users");
+            }
+        } finally {
+            delete(staged);
+        }
+    }
+
+    @Test
+    void stagesNothingWithoutOwnership(@TempDir Path src) throws IOException {
+        int uid = (Integer) Files.getAttribute(src, "unix:uid");
+        assumeFalse(uid == 0, "root can always set ownership");
+
+        boolean[] closed = new boolean[1];
+        Stream<ContainerEntry> entries = new StringContent("one/file", 0644, "stiletto").getContainerEntries().stream()
+            .onClose(() -> closed[0] = true);
+        assertNull(ApplicationStaging.stage(entries, uid + 1, uid + 1));
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    void rejectsPathsOutsideStagingDir(@TempDir Path src) throws IOException {
+        Path dir = Paths.get("/tmp/staging");
+        assertEquals(dir.resolve("a/b"), ApplicationStaging.resolve(dir, "/a/b"));
+        assertThrows(IOException.class, () -> ApplicationStaging.resolve(dir, "../escape"));
+        assertThrows(IOException.class, () -> ApplicationStaging.resolve(dir, "a/../../escape"));
+
+        Stream<ContainerEntry> entries = new StringContent("../escape", 0644, "x").getContainerEntries().stream();
+        int uid = (Integer) Files.getAttribute(src, "unix:uid");
+        int gid = (Integer) Files.getAttribute(src, "unix:gid");
+        assertThrows(BuildpackException.class, () -> ApplicationStaging.stage(entries, uid, gid));
+    }
+}
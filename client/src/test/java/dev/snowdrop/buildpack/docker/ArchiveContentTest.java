@@ -0,0 +1,163 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+public class ArchiveContentTest {
+
+    private static Path jar(Path dir) throws IOException {
+        Path jar = dir.resolve("app.jar");
+        try (OutputStream os = Files.newOutputStream(jar);
+             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(os)) {
+            zos.putArchiveEntry(new ZipArchiveEntry("BOOT-INF/"));
+            zos.closeArchiveEntry();
+            ZipArchiveEntry run = new ZipArchiveEntry("bin/run");
+            run.setUnixMode(0100755);
+            zos.putArchiveEntry(run);
+            zos.write("#!/bin/sh".getBytes());
+            zos.closeArchiveEntry();
+            zos.putArchiveEntry(new ZipArchiveEntry("BOOT-INF/classes/App.class"));
+            zos.write("kitten".getBytes());
+            zos.closeArchiveEntry();
+        }
+        return jar;
+    }
+
+    private static String read(ContainerEntry e) {
+        try (InputStream is = e.getDataSupplier().getData()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[1024];
+            int n;
+            while ((n = is.read(b)) > 0) {
+                out.write(b, 0, n);
+            }
+            return new String(out.toByteArray());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void check(Map<String, ContainerEntry> entries, String prefix) {
+        assertEquals(2, entries.size());
+        ContainerEntry run = entries.get(prefix + "bin/run");
+        assertEquals(0755, run.getMode().intValue());
+        assertEquals(9L, run.getSize());
+        assertEquals("#!/bin/sh", read(run));
+        ContainerEntry app = entries.get(prefix + "BOOT-INF/classes/App.class");
+        assertEquals(6L, app.getSize());
+        assertEquals("kitten", read(app));
+    }
+
+    @Test
+    void streamsZipEntries(@TempDir Path dir) throws IOException {
+        ArchiveContent ac = new ArchiveContent("app/", jar(dir).toFile());
+        try (Stream<ContainerEntry> s = ac.streamContainerEntries()) {
+            Map<String, ContainerEntry> entries = s.collect(Collectors.toMap(ContainerEntry::getPath, Function.identity()));
+            check(entries, "app/");
+            assertEquals(0644, entries.get("app/BOOT-INF/classes/App.class").getMode().intValue());
+        }
+    }
+
+    @Test
+    void listedZipEntriesReadAfterClose(@TempDir Path dir) throws IOException {
+        List<ContainerEntry> list = new ArchiveContent(jar(dir).toFile()).getContainerEntries();
+        check(list.stream().collect(Collectors.toMap(ContainerEntry::getPath, Function.identity())), "");
+    }
+
+    @Test
+    void listedStoredEntriesReadAtOffset(@TempDir Path dir) throws IOException {
+        Path jar = dir.resolve("stored.jar");
+        try (OutputStream os = Files.newOutputStream(jar);
+             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(os)) {
+            for (String name : new String[] {"a", "b"}) {
+                ZipArchiveEntry ze = new ZipArchiveEntry(name);
+                ze.setMethod(ZipEntry.STORED);
+                byte[] data = ("stored " + name).getBytes();
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                ze.setSize(data.length);
+                ze.setCrc(crc.getValue());
+                zos.putArchiveEntry(ze);
+                zos.write(data);
+                zos.closeArchiveEntry();
+            }
+        }
+        List<ContainerEntry> list = new ArchiveContent(jar.toFile()).getContainerEntries();
+        assertEquals("stored a", read(list.get(0)));
+        assertEquals("stored b", read(list.get(1)));
+        //entries can be read again, in any order.
+        assertEquals("stored b", read(list.get(1)));
+        assertEquals("stored a", read(list.get(0)));
+    }
+
+    private static Path zipOf(Path dir, String name) throws IOException {
+        Path zip = dir.resolve("entries.zip");
+        try (OutputStream os = Files.newOutputStream(zip);
+             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(os)) {
+            zos.putArchiveEntry(new ZipArchiveEntry(name));
+            zos.write("stiletto".getBytes());
+            zos.closeArchiveEntry();
+        }
+        return zip;
+    }
+
+    @Test
+    void normalizesEntryNames(@TempDir Path dir) throws IOException {
+        List<ContainerEntry> list = new ArchiveContent("app/", zipOf(dir, "./one/../two//three").toFile()).getContainerEntries();
+        assertEquals("app/two/three", list.get(0).getPath());
+        assertEquals("stiletto", read(list.get(0)));
+    }
+
+    @Test
+    void rejectsEntriesOutsideArchive(@TempDir Path dir) throws IOException {
+        for (String name : new String[] {"../escape", "one/../../escape", "/etc/passwd", "..\\escape", "C:\\escape"}) {
+            ArchiveContent ac = new ArchiveContent("app/", zipOf(dir, name).toFile());
+            BuildpackException e = assertThrows(BuildpackException.class, ac::getContainerEntries, name);
+            //the zip writer may store backslashes as separators.
+            assertTrue(e.getMessage().contains(name) || e.getMessage().contains(name.replace('\\', '/')), e.getMessage());
+            assertThrows(BuildpackException.class, () -> {
+                try (Stream<ContainerEntry> s = ac.streamContainerEntries()) {
+                    s.forEach(ce -> {});
+                }
+            }, name);
+        }
+    }
+
+    @Test
+    void walksFileSystemRoot(@TempDir Path dir) throws IOException {
+        try (FileSystem zipfs = FileSystems.newFileSystem(jar(dir), (ClassLoader) null)) {
+            ArchiveContent ac = new ArchiveContent("", zipfs.getPath("/BOOT-INF"));
+            try (Stream<ContainerEntry> s = ac.streamContainerEntries()) {
+                List<ContainerEntry> entries = s.collect(Collectors.toList());
+                assertEquals(1, entries.size());
+                assertEquals("classes/App.class", entries.get(0).getPath());
+                assertEquals(6L, entries.get(0).getSize());
+                assertEquals("kitten", read(entries.get(0)));
+            }
+        }
+    }
+}
@@ -1,37 +1,54 @@
 package dev.snowdrop.buildpack.docker;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.platform.commons.util.ReflectionUtils;
+import org.mockito.Answers;
 import org.mockito.ArgumentMatcher;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
@@ -41,11 +58,20 @@ import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.CopyArchiveToContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.command.InspectExecCmd;
+import com.github.dockerjava.api.command.InspectExecResponse;
 import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Frame;
 import com.github.dockerjava.api.model.HostConfig;
 
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
 import dev.snowdrop.buildpack.utils.FilePermissions;
 
 @ExtendWith(MockitoExtension.class)
@@ -673,6 +699,315 @@ class ContainerUtilsTest {
     
   }
 
+  @Test
+  void addContentToContainerIsReproducible(@Mock DockerClient dc, @Mock CopyArchiveToContainerCmd catcc) {
+    String containerId = "id";
+    List<byte[]> uploads = new ArrayList<>();
+
+    when(dc.copyArchiveToContainerCmd(containerId)).thenReturn(catcc);
+    when(catcc.withRemotePath(anyString())).thenReturn(catcc);
+    when(catcc.withTarInputStream(argThat(x -> {
+      if (x != null) {
+        try {
+          ByteArrayOutputStream baos = new ByteArrayOutputStream();
+          byte[] buf = new byte[4096];
+          int n;
+          while ((n = x.read(buf)) > 0) {
+            baos.write(buf, 0, n);
+          }
+          uploads.add(baos.toByteArray());
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return false;
+    }))).thenReturn(catcc);
+
+    ContainerEntry[] entries = new ContainerEntry[] {
+      new StringContent("b/z", 0644, "z").getContainerEntries().get(0),
+      new StringContent("/a/y/x", 0644, "x").getContainerEntries().get(0),
+      new StringContent("b/a", 0755, "a").getContainerEntries().get(0),
+      new StringContent("a/c", 0644, "c").getContainerEntries().get(0)
+    };
+    ContainerEntry[] reversed = new ContainerEntry[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      reversed[i] = entries[entries.length - 1 - i];
+    }
+
+    ContainerUtils.addContentToContainer(dc, containerId, "/", 0, 0, entries);
+    ContainerUtils.addContentToContainer(dc, containerId, "/", 0, 0, reversed);
+    verify(catcc, times(2)).exec();
+
+    assertEquals(2, uploads.size());
+    assertArrayEquals(uploads.get(0), uploads.get(1));
+
+    List<String> names = new ArrayList<>();
+    try (TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(new ByteArrayInputStream(uploads.get(0))))) {
+      TarArchiveEntry entry;
+      while ((entry = tais.getNextTarEntry()) != null) {
+        names.add(entry.getName());
+        assertEquals(ContainerUtils.NORMALIZED_MTIME, entry.getModTime().getTime());
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+    assertEquals(Arrays.asList("a/", "a/c", "a/y/", "a/y/x", "b/", "b/a", "b/z"), names);
+  }
+
+  @Test
+  void addContentToContainerStreamsEntries(@Mock DockerClient dc, @Mock DockerConfig config, @Mock CopyArchiveToContainerCmd catcc) {
+    String containerId = "id";
+    List<String> names = new ArrayList<>();
+
+    when(config.getDockerClient()).thenReturn(dc);
+    lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+    when(config.getUploadCodec()).thenReturn(DockerConfig.UploadCodec.GZIP_1);
+    when(config.getUploadCompressionThreads()).thenReturn(1);
+    when(dc.copyArchiveToContainerCmd(containerId)).thenReturn(catcc);
+    when(catcc.withRemotePath(anyString())).thenReturn(catcc);
+    when(catcc.withTarInputStream(argThat(x -> {
+      if (x != null) {
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(x))) {
+          TarArchiveEntry entry;
+          while ((entry = tais.getNextTarEntry()) != null) {
+            names.add(entry.getName());
+          }
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return false;
+    }))).thenReturn(catcc);
+
+    //each entry's data must be read before the next entry is taken from the stream.
+    int[] pulled = new int[1];
+    List<Integer> pulledWhenRead = new ArrayList<>();
+    Stream<ContainerEntry> entries = Stream.of("z/b", "z/a", "a/c").map(path -> {
+      pulled[0]++;
+      ContainerEntry ce = new StringContent(path, 0644, path).getContainerEntries().get(0);
+      return new ContainerEntry() {
+        public String getPath() {
+          return ce.getPath();
+        }
+        public long getSize() {
+          return ce.getSize();
+        }
+        public Integer getMode() {
+          return ce.getMode();
+        }
+        public DataSupplier getDataSupplier() {
+          return () -> {
+            pulledWhenRead.add(pulled[0]);
+            return ce.getDataSupplier().getData();
+          };
+        }
+      };
+    });
+
+    BuildReport report = new BuildReport();
+    BuildReport previous = report.attach();
+    try {
+      ContainerUtils.addContentToContainer(config, containerId, "/", 0, 0, entries);
+    } finally {
+      BuildReport.detach(previous);
+    }
+    verify(catcc).exec();
+    //the compressed archive was recorded against the build.
+    assertTrue(report.uploadedBytes > 0);
+
+    assertEquals(Arrays.asList(1, 2, 3), pulledWhenRead);
+    //streamed entries keep the order of the stream, with each parent dir written once, before its first entry.
+    assertEquals(Arrays.asList("z/", "z/b", "z/a", "a/", "a/c"), names);
+  }
+
+  @Test
+  void addContentToContainerViaArchiveContent(@TempDir Path dir, @Mock DockerClient dc, @Mock DockerConfig config, @Mock CopyArchiveToContainerCmd catcc) throws IOException {
+    String containerId = "id";
+    Map<String, String> written = new LinkedHashMap<>();
+
+    Path jar = dir.resolve("app.jar");
+    try (OutputStream os = Files.newOutputStream(jar);
+         ZipArchiveOutputStream zos = new ZipArchiveOutputStream(os)) {
+      for (String name : new String[] {"lib/one", "lib/two"}) {
+        zos.putArchiveEntry(new ZipArchiveEntry(name));
+        zos.write(name.getBytes());
+        zos.closeArchiveEntry();
+      }
+    }
+
+    when(config.getDockerClient()).thenReturn(dc);
+    lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+    when(config.getUploadCodec()).thenReturn(DockerConfig.UploadCodec.GZIP_1);
+    when(config.getUploadCompressionThreads()).thenReturn(1);
+    when(dc.copyArchiveToContainerCmd(containerId)).thenReturn(catcc);
+    when(catcc.withRemotePath(anyString())).thenReturn(catcc);
+    when(catcc.withTarInputStream(argThat(x -> {
+      if (x != null) {
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(x))) {
+          TarArchiveEntry entry;
+          while ((entry = tais.getNextTarEntry()) != null) {
+            if (!entry.isDirectory()) {
+              ByteArrayOutputStream data = new ByteArrayOutputStream();
+              IOUtils.copy(tais, data);
+              written.put(entry.getName(), new String(data.toByteArray()));
+            }
+          }
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return false;
+    }))).thenReturn(catcc);
+
+    //the archive is followed by more content, so its stream is finished with well before its data is sent.
+    List<Content> content = Arrays.asList(new ArchiveContent("app/", jar.toFile()), new StringContent("app/last", 0644, "last"));
+    ContainerUtils.addContentToContainer(config, containerId, "/", 0, 0, ContainerUtils.streamContent(content));
+    verify(catcc).exec();
+
+    Map<String, String> expected = new LinkedHashMap<>();
+    expected.put("app/lib/one", "lib/one");
+    expected.put("app/lib/two", "lib/two");
+    expected.put("app/last", "last");
+    assertEquals(expected, written);
+
+    //listed entries are read without the archive being held open.
+    written.clear();
+    ContainerUtils.addContentToContainer(dc, containerId, "/", 0, 0, new ArchiveContent("app/", jar.toFile()).getContainerEntries());
+    expected.remove("app/last");
+    assertEquals(expected, written);
+  }
+
+  @Test
+  void addContentToContainerLinksDuplicates(@Mock DockerClient dc, @Mock DockerConfig config, @Mock CopyArchiveToContainerCmd catcc) {
+    String containerId = "id";
+    List<TarArchiveEntry> written = new ArrayList<>();
+
+    when(config.getDockerClient()).thenReturn(dc);
+    lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+    when(config.getUploadCodec()).thenReturn(DockerConfig.UploadCodec.GZIP_1);
+    when(config.getUploadCompressionThreads()).thenReturn(1);
+    when(config.getUploadLinkDuplicates()).thenReturn(true);
+    when(dc.copyArchiveToContainerCmd(containerId)).thenReturn(catcc);
+    when(catcc.withRemotePath(anyString())).thenReturn(catcc);
+    when(catcc.withTarInputStream(argThat(x -> {
+      if (x != null) {
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(x))) {
+          TarArchiveEntry entry;
+          while ((entry = tais.getNextTarEntry()) != null) {
+            written.add(entry);
+          }
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return false;
+    }))).thenReturn(catcc);
+
+    String big = String.join("", Collections.nCopies(200, "kitten-wibble"));
+    ContainerUtils.addContentToContainer(config, containerId, "/", 0, 0,
+      new StringContent("b/copy", 0444, big).getContainerEntries().get(0),
+      new StringContent("a/original", 0444, big).getContainerEntries().get(0),
+      new StringContent("c/other-mode", 0555, big).getContainerEntries().get(0),
+      new StringContent("d/small", 0444, "fish").getContainerEntries().get(0),
+      new StringContent("e/small", 0444, "fish").getContainerEntries().get(0),
+      new StringContent("f/writable", 0644, big).getContainerEntries().get(0),
+      new StringContent("g/writable", 0644, big).getContainerEntries().get(0));
+    verify(catcc).exec();
+
+    TarArchiveEntry original = written.stream().filter(e -> e.getName().equals("a/original")).findFirst().get();
+    TarArchiveEntry copy = written.stream().filter(e -> e.getName().equals("b/copy")).findFirst().get();
+    assertEquals(big.length(), original.getSize());
+    assertEquals(true, copy.isLink());
+    assertEquals("a/original", copy.getLinkName());
+    assertEquals(0, copy.getSize());
+    assertEquals(7, written.stream().filter(e -> !e.isDirectory()).count());
+    assertEquals(1, written.stream().filter(TarArchiveEntry::isLink).count());
+  }
+
+  @Test
+  void addContentToContainerInShards(@Mock DockerClient dc, @Mock DockerConfig config, @Mock CopyArchiveToContainerCmd catcc) {
+    String containerId = "id";
+    List<List<TarArchiveEntry>> archives = Collections.synchronizedList(new ArrayList<>());
+
+    when(config.getDockerClient()).thenReturn(dc);
+    lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+    when(config.getUploadCodec()).thenReturn(DockerConfig.UploadCodec.GZIP_1);
+    when(config.getUploadCompressionThreads()).thenReturn(1);
+    when(config.getUploadShards()).thenReturn(2);
+    when(config.getUploadShardThreshold()).thenReturn(0L);
+    when(dc.copyArchiveToContainerCmd(containerId)).thenReturn(catcc);
+    when(catcc.withRemotePath(anyString())).thenReturn(catcc);
+    when(catcc.withTarInputStream(argThat(x -> {
+      if (x != null) {
+        List<TarArchiveEntry> written = new ArrayList<>();
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(x))) {
+          TarArchiveEntry entry;
+          while ((entry = tais.getNextTarEntry()) != null) {
+            written.add(entry);
+          }
+          archives.add(written);
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return false;
+    }))).thenReturn(catcc);
+
+    ContainerUtils.addContentToContainer(config, containerId, "/", 1000, 1000,
+      new StringContent("a/one", 0644, "kitten").getContainerEntries().get(0),
+      new StringContent("a/b/two", 0644, "wibble").getContainerEntries().get(0),
+      new StringContent("c/three", 0755, "fish").getContainerEntries().get(0));
+    verify(catcc, times(3)).exec();
+
+    //directories are sent first, on their own, then the files split between the shards.
+    assertEquals(3, archives.size());
+    List<String> dirs = new ArrayList<>();
+    archives.get(0).forEach(e -> dirs.add(e.getName()));
+    assertEquals(Arrays.asList("a/", "a/b/", "c/"), dirs);
+    assertEquals(1000, archives.get(0).get(0).getLongUserId());
+
+    List<String> files = new ArrayList<>();
+    archives.subList(1, 3).forEach(a -> {
+      assertEquals(false, a.isEmpty());
+      a.forEach(e -> {
+        assertEquals(false, e.isDirectory());
+        files.add(e.getName());
+      });
+    });
+    Collections.sort(files);
+    assertEquals(Arrays.asList("a/b/two", "a/one", "c/three"), files);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void execInContainer(@Mock DockerClient dc, @Mock(answer = Answers.RETURNS_SELF) ExecCreateCmd ecc, @Mock ExecCreateCmdResponse ecr,
+      @Mock ExecStartCmd esc, @Mock ResultCallback.Adapter<Frame> output, @Mock InspectExecCmd iec,
+      @Mock InspectExecResponse running, @Mock InspectExecResponse done) throws Exception {
+    when(dc.execCreateCmd("id")).thenReturn(ecc);
+    doReturn(ecr).when(ecc).exec();
+    when(ecr.getId()).thenReturn("exec");
+    when(dc.execStartCmd("exec")).thenReturn(esc);
+    when(esc.exec(output)).thenReturn(output);
+    when(dc.inspectExecCmd("exec")).thenReturn(iec);
+    when(iec.exec()).thenReturn(running, done);
+    when(running.isRunning()).thenReturn(true);
+    when(done.isRunning()).thenReturn(false);
+    when(done.getExitCodeLong()).thenReturn(3L);
+
+    int rc = ContainerUtils.execInContainer(dc, "id", Arrays.asList("/cnb/lifecycle/builder", "-log-level", "debug"), 77, output);
+
+    assertEquals(3, rc);
+    verify(ecc).withCmd("/cnb/lifecycle/builder", "-log-level", "debug");
+    verify(ecc).withUser("77");
+    verify(output).awaitCompletion();
+    verify(iec, times(2)).exec();
+  }
+
   @Test
   void testRemoveContainer(@Mock DockerClient dc, @Mock RemoveContainerCmd rcc)
   {
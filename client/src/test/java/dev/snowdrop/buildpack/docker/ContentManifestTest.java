@@ -0,0 +1,92 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ContentManifestTest {
+
+    private static ContainerEntry entry(String path, String content, long lastModified) {
+        return new ContainerEntry() {
+            public String getPath() {
+                return path;
+            }
+            public long getSize() {
+                return content.getBytes().length;
+            }
+            public Integer getMode() {
+                return 0644;
+            }
+            public long getLastModified() {
+                return lastModified;
+            }
+            public DataSupplier getDataSupplier() {
+                return () -> new ByteArrayInputStream(content.getBytes());
+            }
+        };
+    }
+
+    @Test
+    void allEntriesChangedForEmptyManifest() {
+        List<ContainerEntry> entries = Arrays.asList(entry("/a", "fish", 1), entry("b/c", "wibble", 1));
+        ContentManifest.Delta delta = new ContentManifest().diff(entries, 1000, 1000);
+
+        assertEquals(2, delta.changed.size());
+        assertTrue(delta.removed.isEmpty());
+        assertTrue(delta.manifest.entries.containsKey("a"));
+        assertTrue(delta.manifest.entries.containsKey("b/c"));
+    }
+
+    @Test
+    void onlyChangedEntriesAreSent() {
+        List<ContainerEntry> first = Arrays.asList(entry("a", "fish", 1), entry("b", "wibble", 1), entry("c", "stiletto", 0));
+        ContentManifest manifest = ContentManifest.fromJson(new ContentManifest().diff(first, 1000, 1000).manifest.toJson().getBytes());
+
+        //a is untouched, b is touched but identical, c has no mtime and is identical, d is new.
+        List<ContainerEntry> second = Arrays.asList(entry("a", "fish", 1), entry("b", "wibble", 2), entry("c", "stiletto", 0), entry("d", "kitten", 1));
+        ContentManifest.Delta delta = manifest.diff(second, 1000, 1000);
+        assertEquals(1, delta.changed.size());
+        assertEquals("d", delta.changed.get(0).getPath());
+
+        List<ContainerEntry> third = Arrays.asList(entry("a", "fish", 1), entry("b", "wobble", 3));
+        delta = manifest.diff(third, 1000, 1000);
+        assertEquals(1, delta.changed.size());
+        assertEquals("b", delta.changed.get(0).getPath());
+        assertEquals(Arrays.asList("c"), delta.removed);
+    }
+
+    @Test
+    void fileReplacedByDirectoryIsNotRemoved() {
+        ContentManifest manifest = new ContentManifest().diff(Arrays.asList(entry("a", "fish", 1), entry("ab", "fish", 1)), 1000, 1000).manifest;
+
+        ContentManifest.Delta delta = manifest.diff(Arrays.asList(entry("a/b", "fish", 1)), 1000, 1000);
+        assertEquals(Arrays.asList("ab"), delta.removed);
+    }
+
+    @Test
+    void unsafePathsAreNotRemoved() {
+        ContentManifest manifest = new ContentManifest();
+        for (String key : Arrays.asList("ok/gone", "two\nlines", "../outside", "a/../../outside", "/abs")) {
+            manifest.entries.put(key, new ContentManifest.Entry());
+        }
+
+        ContentManifest.Delta delta = manifest.diff(new ArrayList<ContainerEntry>(), 1000, 1000);
+        assertEquals(Arrays.asList("ok/gone"), delta.removed);
+    }
+
+    @Test
+    void ownerChangeResendsEverything() {
+        List<ContainerEntry> entries = new ArrayList<>(Arrays.asList(entry("a", "fish", 1), entry("b", "wibble", 1)));
+        ContentManifest manifest = new ContentManifest().diff(entries, 1000, 1000).manifest;
+
+        ContentManifest.Delta delta = manifest.diff(entries, 1001, 1000);
+        assertEquals(2, delta.changed.size());
+        assertEquals(1001, delta.manifest.uid);
+    }
+}
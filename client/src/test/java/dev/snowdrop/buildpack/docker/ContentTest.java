@@ -1,11 +1,21 @@
 package dev.snowdrop.buildpack.docker;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class ContentTest {
     //simple test to catch if we change the public API by mistake.
@@ -24,4 +34,93 @@ public class ContentTest {
         ContainerEntry a = c.getContainerEntries().get(0);
         assertEquals("/fish", a.getPath());   
     }    
+
+    @Test
+    void fileContentStreamsDirectory(@TempDir Path dir) throws Exception{
+        Files.createDirectories(dir.resolve("one/two"));
+        Files.write(dir.resolve("a"), "fish".getBytes());
+        Files.write(dir.resolve("one/b"), "wibble".getBytes());
+        Files.write(dir.resolve("one/two/c"), "kitten".getBytes());
+
+        FileContent fc = new FileContent("app/", dir.toFile());
+        Set<String> paths;
+        try(Stream<ContainerEntry> entries = fc.streamContainerEntries()){
+            paths = entries.map(ContainerEntry::getPath).collect(Collectors.toSet());
+        }
+        assertEquals(3, paths.size());
+        assertTrue(paths.contains("app/a"));
+        assertTrue(paths.contains("app/one/b"));
+        assertTrue(paths.contains("app/one/two/c"));
+
+        assertEquals(paths, fc.getContainerEntries().stream().map(ContainerEntry::getPath).collect(Collectors.toSet()));
+
+        File single = dir.resolve("a").toFile();
+        assertEquals("/app/a", new FileContent("/app", single).getContainerEntries().get(0).getPath());
+    }
+
+    @Test
+    void fileContentHonorsIgnoreRules(@TempDir Path dir) throws Exception{
+        Files.createDirectories(dir.resolve("target/classes"));
+        Files.createDirectories(dir.resolve("src/main"));
+        Files.createDirectories(dir.resolve("docs"));
+        Files.write(dir.resolve(".gitignore"), "target/\n*.log\n".getBytes());
+        Files.write(dir.resolve(".dockerignore"), "docs\n".getBytes());
+        Files.write(dir.resolve("src/.gitignore"), "*.tmp\n!keep.log\n".getBytes());
+        Files.write(dir.resolve("target/classes/A.class"), "a".getBytes());
+        Files.write(dir.resolve("src/main/A.java"), "a".getBytes());
+        Files.write(dir.resolve("src/main/x.tmp"), "a".getBytes());
+        Files.write(dir.resolve("src/keep.log"), "a".getBytes());
+        Files.write(dir.resolve("build.log"), "a".getBytes());
+        Files.write(dir.resolve("docs/readme"), "a".getBytes());
+        Files.write(dir.resolve("secret"), "a".getBytes());
+
+        //without the ignore files enabled, only explicit patterns apply.
+        Set<String> paths = new FileContent("", dir.toFile(), Arrays.asList("secret"), null)
+            .getContainerEntries().stream().map(ContainerEntry::getPath).collect(Collectors.toSet());
+        assertEquals(9, paths.size());
+        assertFalse(paths.contains("secret"));
+
+        paths = new FileContent("", dir.toFile(), Arrays.asList("secret"), true)
+            .getContainerEntries().stream().map(ContainerEntry::getPath).collect(Collectors.toSet());
+        assertTrue(paths.contains("src/main/A.java"));
+        assertTrue(paths.contains("src/keep.log"));
+        assertFalse(paths.contains("target/classes/A.class"));
+        assertFalse(paths.contains("src/main/x.tmp"));
+        assertFalse(paths.contains("build.log"));
+        assertFalse(paths.contains("docs/readme"));
+        assertFalse(paths.contains("secret"));
+    }
+
+    @Test
+    void fileContentDockerignoreReincludes(@TempDir Path dir) throws Exception{
+        Files.createDirectories(dir.resolve("config/dev"));
+        Files.write(dir.resolve(".dockerignore"), "config\n!config/application.properties\n".getBytes());
+        Files.write(dir.resolve("config/application.properties"), "a".getBytes());
+        Files.write(dir.resolve("config/dev/secrets"), "a".getBytes());
+        Files.write(dir.resolve("app.jar"), "a".getBytes());
+
+        Set<String> paths = new FileContent("", dir.toFile(), null, true)
+            .getContainerEntries().stream().map(ContainerEntry::getPath).collect(Collectors.toSet());
+        assertTrue(paths.contains("app.jar"));
+        assertTrue(paths.contains("config/application.properties"));
+        assertFalse(paths.contains("config/dev/secrets"));
+    }
+
+    @Test
+    void fileContentParallelWalk(@TempDir Path dir) throws Exception{
+        for(int i=0; i<10; i++){
+            Files.createDirectories(dir.resolve("d"+i+"/ignored"));
+            Files.write(dir.resolve("d"+i+"/file"), "fish".getBytes());
+            Files.write(dir.resolve("d"+i+"/ignored/file"), "fish".getBytes());
+        }
+        List<String> ignore = Arrays.asList("ignored/");
+
+        List<ContainerEntry> sequential = new FileContent("", dir.toFile(), ignore, false).getContainerEntries();
+        List<ContainerEntry> parallel = new FileContent("", dir.toFile(), ignore, false, 4).getContainerEntries();
+
+        assertEquals(10, parallel.size());
+        assertEquals(sequential.stream().map(ContainerEntry::getPath).collect(Collectors.toList()),
+                     parallel.stream().map(ContainerEntry::getPath).collect(Collectors.toList()));
+        assertEquals(4L, parallel.get(0).getSize());
+    }
 }
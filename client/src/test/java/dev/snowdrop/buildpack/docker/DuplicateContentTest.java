@@ -0,0 +1,52 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class DuplicateContentTest {
+
+    private static ContainerEntry entry(int mode, String content) {
+        return new StringContent("unused", mode, content).getContainerEntries().get(0);
+    }
+
+    @Test
+    void linksLaterDuplicatesToFirst() {
+        String a = String.join("", Collections.nCopies(128, "stiletto"));
+        String b = String.join("", Collections.nCopies(128, "wibble!!"));
+
+        LinkedHashMap<String, ContainerEntry> entries = new LinkedHashMap<>();
+        entries.put("one", entry(0444, a));
+        entries.put("two", entry(0444, b));
+        entries.put("three", entry(0444, a));
+        entries.put("four", entry(0555, a));
+        entries.put("five", entry(0444, b));
+        entries.put("six", entry(0444, a));
+        entries.put("tiny", entry(0444, "x"));
+        entries.put("tiny2", entry(0444, "x"));
+
+        Map<String, String> links = DuplicateContent.find(entries);
+        assertEquals(3, links.size());
+        assertEquals("one", links.get("three"));
+        assertEquals("one", links.get("six"));
+        assertEquals("two", links.get("five"));
+    }
+
+    @Test
+    void writableDuplicatesAreNotLinked() {
+        String a = String.join("", Collections.nCopies(128, "stiletto"));
+
+        LinkedHashMap<String, ContainerEntry> entries = new LinkedHashMap<>();
+        entries.put("one", entry(0644, a));
+        entries.put("two", entry(0644, a));
+        entries.put("three", entry(0440, a));
+        entries.put("four", entry(0460, a));
+
+        //a hard link shares content, so a write through one path would change its duplicates.
+        assertEquals(Collections.emptyMap(), DuplicateContent.find(entries));
+    }
+}
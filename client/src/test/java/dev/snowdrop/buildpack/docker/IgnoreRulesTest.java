@@ -0,0 +1,92 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class IgnoreRulesTest {
+
+    @Test
+    void unanchoredPatternsMatchAtAnyDepth() {
+        IgnoreRules r = IgnoreRules.parse("", Arrays.asList("# comment", "", "*.log", "build/"), false);
+        assertEquals(Boolean.TRUE, r.match("a.log", false));
+        assertEquals(Boolean.TRUE, r.match("x/y/a.log", false));
+        assertEquals(Boolean.TRUE, r.match("x/build", true));
+        assertNull(r.match("x/build", false));
+        assertNull(r.match("a.txt", false));
+    }
+
+    @Test
+    void anchoredPatterns() {
+        IgnoreRules git = IgnoreRules.parse("", Arrays.asList("/target", "docs/*.md"), false);
+        assertEquals(Boolean.TRUE, git.match("target", true));
+        assertNull(git.match("sub/target", true));
+        assertEquals(Boolean.TRUE, git.match("docs/a.md", false));
+        assertNull(git.match("docs/sub/a.md", false));
+
+        IgnoreRules docker = IgnoreRules.parse("", Arrays.asList("target"), true);
+        assertEquals(Boolean.TRUE, docker.match("target", true));
+        assertNull(docker.match("sub/target", true));
+    }
+
+    @Test
+    void doubleStar() {
+        IgnoreRules r = IgnoreRules.parse("", Arrays.asList("**/cache", "logs/**", "a/**/b"), false);
+        assertEquals(Boolean.TRUE, r.match("cache", true));
+        assertEquals(Boolean.TRUE, r.match("x/y/cache", true));
+        assertEquals(Boolean.TRUE, r.match("logs/x/y", false));
+        assertEquals(Boolean.TRUE, r.match("a/b", false));
+        assertEquals(Boolean.TRUE, r.match("a/x/y/b", false));
+        assertNull(r.match("logs", true));
+    }
+
+    @Test
+    void negationLastMatchWins() {
+        IgnoreRules r = IgnoreRules.parse("", Arrays.asList("*.txt", "!keep.txt", "\\!bang", "[ab]?.c"), false);
+        assertEquals(Boolean.TRUE, r.match("x.txt", false));
+        assertEquals(Boolean.FALSE, r.match("keep.txt", false));
+        assertEquals(Boolean.TRUE, r.match("!bang", false));
+        assertEquals(Boolean.TRUE, r.match("a1.c", false));
+        assertNull(r.match("c1.c", false));
+    }
+
+    @Test
+    void chainAndBase() {
+        IgnoreRules root = IgnoreRules.parse("", Arrays.asList("*.tmp"), false);
+        IgnoreRules nested = IgnoreRules.parse("src", Arrays.asList("!*.tmp"), false);
+        List<IgnoreRules> chain = Arrays.asList(root, nested);
+        assertTrue(IgnoreRules.isIgnored(chain, "a.tmp", false));
+        assertFalse(IgnoreRules.isIgnored(chain, "src/a.tmp", false));
+        assertFalse(IgnoreRules.isIgnored(Collections.emptyList(), "a.tmp", false));
+    }
+
+    @Test
+    void dockerignoreRules() {
+        IgnoreRules r = IgnoreRules.parseDockerignore(Arrays.asList(" # comment", "docs/", "*.md", "!README.md", "/build/../tmp", "logs", "!logs/**/keep"));
+        //patterns are anchored, and a trailing '/' is cleaned away.
+        assertEquals(Boolean.TRUE, r.match("docs", true));
+        assertEquals(Boolean.TRUE, r.match("docs", false));
+        assertEquals(Boolean.TRUE, r.match("a.md", false));
+        assertNull(r.match("sub/a.md", false));
+        assertEquals(Boolean.FALSE, r.match("README.md", false));
+        assertEquals(Boolean.TRUE, r.match("tmp", true));
+        //a directory pattern matches everything beneath it.
+        assertEquals(Boolean.TRUE, r.match("docs/a/b.txt", false));
+        assertEquals(Boolean.TRUE, r.match("logs/a/b.log", false));
+        assertEquals(Boolean.FALSE, r.match("logs/a/keep", false));
+
+        //excluded directories are still walked when a negation could match beneath them.
+        List<IgnoreRules> chain = Arrays.asList(r);
+        assertTrue(IgnoreRules.isIgnored(chain, "docs", true));
+        assertFalse(IgnoreRules.isIgnored(chain, "logs", true));
+        assertFalse(IgnoreRules.isIgnored(chain, "logs/a", true));
+        assertTrue(IgnoreRules.isIgnored(chain, "logs/a/b.log", false));
+    }
+}
@@ -0,0 +1,67 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TarEntryTreeTest {
+
+    private static List<String> visit(TarEntryTree tree) throws IOException {
+        List<String> visited = new ArrayList<>();
+        tree.visit(new TarEntryTree.Visitor() {
+            @Override
+            public void directory(String path) {
+                visited.add(path);
+            }
+
+            @Override
+            public void file(String path, ContainerEntry entry) {
+                visited.add(path + "=" + new String(readAll(entry)));
+            }
+        });
+        return visited;
+    }
+
+    private static byte[] readAll(ContainerEntry entry) {
+        try {
+            byte[] b = new byte[(int) entry.getSize()];
+            entry.getDataSupplier().getData().read(b);
+            return b;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ContainerEntry entry(String content) {
+        return new StringContent("unused", 0644, content).getContainerEntries().get(0);
+    }
+
+    @Test
+    void visitsSortedWithDirectoriesOnce() throws IOException {
+        TarEntryTree tree = new TarEntryTree();
+        tree.add("z/one/two/file", entry("1"));
+        tree.add("a", entry("2"));
+        tree.add("z/one/b", entry("3"));
+        tree.add("z/one/a", entry("4"));
+        tree.add("m//n", entry("5"));
+
+        assertEquals(5, tree.size());
+        assertEquals(Arrays.asList("a=2", "m/", "m/n=5", "z/", "z/one/", "z/one/a=4", "z/one/b=3", "z/one/two/", "z/one/two/file=1"),
+                     visit(tree));
+    }
+
+    @Test
+    void laterEntryReplacesEarlier() throws IOException {
+        TarEntryTree tree = new TarEntryTree();
+        tree.add("dir/file", entry("old"));
+        tree.add("dir/file", entry("new"));
+
+        assertEquals(1, tree.size());
+        assertEquals(Arrays.asList("dir/", "dir/file=new"), visit(tree));
+    }
+}
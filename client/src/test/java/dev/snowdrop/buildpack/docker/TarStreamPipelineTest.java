@@ -0,0 +1,73 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+
+import dev.snowdrop.buildpack.BuildpackException;
+
+public class TarStreamPipelineTest {
+
+    //enough content to fill the pipe, so the writer is still writing when the consumer stops.
+    private static void writeLargeArchive(TarArchiveOutputStream tout) throws IOException {
+        for (int i = 0; i < 64; i++) {
+            TarArchiveEntry tae = new TarArchiveEntry("file" + i);
+            tae.setSize(64 * 1024);
+            tout.putArchiveEntry(tae);
+            tout.write(new byte[64 * 1024]);
+            tout.closeArchiveEntry();
+        }
+    }
+
+    @Test
+    void consumerClosingEarlyFailsStream() {
+        BuildpackException e = assertThrows(BuildpackException.class, () -> TarStreamPipeline.stream(out -> out,
+            TarStreamPipelineTest::writeLargeArchive,
+            in -> in.read(new byte[1024])));
+        assertTrue(e.getMessage().contains("before the archive was complete"));
+    }
+
+    @Test
+    void consumerStoppingOnPurposeSucceeds() {
+        TarStreamPipeline.stream(out -> out,
+            TarStreamPipelineTest::writeLargeArchive,
+            in -> {
+                in.read(new byte[1024]);
+                throw new TarStreamPipeline.StoppedReadingException("read enough");
+            });
+    }
+
+    @Test
+    void writerFailureIsNotSeenAsEndOfArchive() {
+        AtomicReference<Exception> consumerSaw = new AtomicReference<>();
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> TarStreamPipeline.stream(out -> out,
+            tout -> {
+                TarArchiveEntry tae = new TarArchiveEntry("partial");
+                tae.setSize(0);
+                tout.putArchiveEntry(tae);
+                tout.closeArchiveEntry();
+                throw new IllegalStateException("stiletto");
+            },
+            in -> {
+                try (InputStream tin = new TarArchiveInputStream(in)) {
+                    while (((TarArchiveInputStream) tin).getNextEntry() != null) {
+                        //read to end of archive.
+                    }
+                } catch (IOException ioe) {
+                    consumerSaw.set(ioe);
+                    throw ioe;
+                }
+            }));
+        assertEquals("stiletto", e.getMessage());
+        assertTrue(consumerSaw.get() != null, "consumer should see the writer failure, not a complete archive");
+    }
+}
@@ -0,0 +1,112 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.lenient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.config.DockerConfig.UploadCodec;
+
+@ExtendWith(MockitoExtension.class)
+public class UploadCompressionTest {
+
+    @AfterEach
+    void reset() {
+        UploadCompression.reset();
+    }
+
+    @Test
+    void explicitCodecIsUsed(@Mock DockerConfig config) {
+        lenient().when(config.getUploadCodec()).thenReturn(UploadCodec.BZIP2);
+        lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+
+        assertEquals(UploadCodec.BZIP2, UploadCompression.resolve(config));
+    }
+
+    @Test
+    void autoUsesTransport(@Mock DockerConfig config) {
+        lenient().when(config.getUploadCodec()).thenReturn(UploadCodec.AUTO);
+
+        lenient().when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+        assertEquals(UploadCodec.NONE, UploadCompression.resolve(config));
+
+        lenient().when(config.getDockerHost()).thenReturn("npipe:////./pipe/docker_engine");
+        assertEquals(UploadCodec.NONE, UploadCompression.resolve(config));
+
+        lenient().when(config.getDockerHost()).thenReturn("tcp://stiletto:2376");
+        assertEquals(UploadCodec.GZIP_6, UploadCompression.resolve(config));
+    }
+
+    @Test
+    void autoUsesObservedThroughput() {
+        String slow = "tcp://kitten:2376";
+        String fast = "ssh://wedge";
+        long second = 1_000_000_000L;
+
+        //1MB/s
+        UploadCompression.recordUpload(slow, 2 * 1024 * 1024, 2 * second);
+        assertEquals(UploadCodec.GZIP_9, UploadCompression.resolveAuto(slow));
+
+        //1GB/s
+        UploadCompression.recordUpload(fast, 1024 * 1024 * 1024, second);
+        assertEquals(UploadCodec.GZIP_1, UploadCompression.resolveAuto(fast));
+
+        //small uploads are ignored.
+        UploadCompression.recordUpload("tcp://patent", 1024, second);
+        assertEquals(UploadCodec.GZIP_6, UploadCompression.resolveAuto("tcp://patent"));
+    }
+
+    private static byte[] roundTrip(UploadCodec codec, int threads, byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = UploadCompression.compress(baos, codec, threads)) {
+            out.write(data);
+        }
+        InputStream in;
+        switch (codec) {
+            case NONE:
+                in = new ByteArrayInputStream(baos.toByteArray());
+                break;
+            case BZIP2:
+                in = new BZip2CompressorInputStream(new ByteArrayInputStream(baos.toByteArray()));
+                break;
+            default:
+                in = new GzipCompressorInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            result.write(buf, 0, n);
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    void codecsRoundTrip() throws IOException {
+        byte[] data = new byte[200 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ("wibble".charAt(i % 6) + (i / 1024));
+        }
+        for (UploadCodec codec : UploadCodec.values()) {
+            if (codec == UploadCodec.AUTO) {
+                continue;
+            }
+            assertArrayEquals(data, roundTrip(codec, 1, data), codec.name());
+        }
+        assertArrayEquals(data, roundTrip(UploadCodec.GZIP_1, 2, data));
+    }
+}
@@ -0,0 +1,83 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class UploadShardsTest {
+
+    private static ContainerEntry entry(int size) {
+        return new StringContent("unused", 0644, String.join("", Collections.nCopies(size, "x"))).getContainerEntries().get(0);
+    }
+
+    private static List<String> files(TarEntryTree tree) throws IOException {
+        List<String> files = new ArrayList<>();
+        tree.visit(new TarEntryTree.Visitor() {
+            @Override
+            public void directory(String path) {
+            }
+
+            @Override
+            public void file(String path, ContainerEntry entry) {
+                files.add(path);
+            }
+        });
+        return files;
+    }
+
+    @Test
+    void splitsBySize() throws IOException {
+        TarEntryTree tree = new TarEntryTree();
+        tree.add("a/big", entry(100));
+        tree.add("a/medium", entry(60));
+        tree.add("b/medium", entry(50));
+        tree.add("b/small", entry(10));
+
+        assertEquals(220, tree.contentSize());
+
+        List<TarEntryTree> shards = UploadShards.split(tree, Collections.emptyMap(), 2);
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a/big", "b/small"), files(shards.get(0)));
+        assertEquals(Arrays.asList("a/medium", "b/medium"), files(shards.get(1)));
+        assertEquals(110, shards.get(0).contentSize());
+        assertEquals(110, shards.get(1).contentSize());
+    }
+
+    @Test
+    void linksFollowTheirTarget() throws IOException {
+        TarEntryTree tree = new TarEntryTree();
+        tree.add("a/original", entry(100));
+        tree.add("b/other", entry(90));
+        tree.add("c/copy", entry(100));
+        tree.add("d/copy", entry(100));
+
+        Map<String, String> links = new HashMap<>();
+        links.put("c/copy", "a/original");
+        links.put("d/copy", "a/original");
+
+        List<TarEntryTree> shards = UploadShards.split(tree, links, 2);
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a/original", "c/copy", "d/copy"), files(shards.get(0)));
+        assertEquals(Arrays.asList("b/other"), files(shards.get(1)));
+    }
+
+    @Test
+    void emptyShardsAreOmitted() throws IOException {
+        TarEntryTree tree = new TarEntryTree();
+        tree.add("a", entry(1));
+        tree.add("b", entry(1));
+
+        List<TarEntryTree> shards = UploadShards.split(tree, Collections.emptyMap(), 8);
+        assertEquals(2, shards.size());
+        assertTrue(shards.stream().allMatch(s -> s.size() == 1));
+    }
+}
@@ -0,0 +1,77 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.dockerjava.api.DockerClient;
+
+import dev.snowdrop.buildpack.ContainerLogReader;
+import dev.snowdrop.buildpack.config.DockerConfig;
+
+@ExtendWith(MockitoExtension.class)
+class VolumeHelperTest {
+
+  @Test
+  void helperIsReusedForAllContent(@Mock DockerConfig config, @Mock DockerClient dc, @Mock ContainerLogReader ignore) {
+    when(config.getDockerClient()).thenReturn(dc);
+
+    List<VolumeBind> volumes = Arrays.asList(new VolumeBind("one", "/one"), new VolumeBind("two", "/two"));
+
+    try (MockedStatic<VolumeUtils> vu = Mockito.mockStatic(VolumeUtils.class);
+         MockedStatic<ContainerUtils> cu = Mockito.mockStatic(ContainerUtils.class)) {
+      vu.when(() -> VolumeUtils.createHelperContainer(eq(dc), eq("image"), eq(1000), ArgumentMatchers.<VolumeBind>any(), ArgumentMatchers.<VolumeBind>any()))
+        .thenReturn("helper");
+      vu.when(VolumeUtils::ignoringLogReader).thenReturn(ignore);
+      vu.when(() -> VolumeUtils.startHelperContainer(eq(dc), eq("helper"), any(ContainerLogReader.class), any(ContainerLogReader.class)))
+        .thenAnswer(i -> null);
+
+      try (VolumeHelper helper = VolumeHelper.create(config, "image", 1000, volumes)) {
+        assertEquals("helper", helper.getContainerId());
+        helper.addContent("/one/app", 1000, 1000, Collections.emptyList());
+        helper.addContent("/two", 1000, 1000, Stream.empty());
+      }
+
+      vu.verify(() -> VolumeUtils.createHelperContainer(eq(dc), eq("image"), eq(1000), ArgumentMatchers.<VolumeBind>any(), ArgumentMatchers.<VolumeBind>any()), Mockito.times(1));
+      vu.verify(() -> VolumeUtils.startHelperContainer(eq(dc), eq("helper"), any(ContainerLogReader.class), any(ContainerLogReader.class)), Mockito.times(1));
+      cu.verify(() -> ContainerUtils.addContentToContainer(eq(config), eq("helper"), eq("/one/app"), eq(1000), eq(1000), ArgumentMatchers.<Stream<ContainerEntry>>any()));
+      cu.verify(() -> ContainerUtils.addContentToContainer(eq(config), eq("helper"), eq("/two"), eq(1000), eq(1000), ArgumentMatchers.<Stream<ContainerEntry>>any()));
+      cu.verify(() -> ContainerUtils.removeContainer(dc, "helper"), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void helperIsRemovedIfStartFails(@Mock DockerConfig config, @Mock DockerClient dc) {
+    when(config.getDockerClient()).thenReturn(dc);
+
+    try (MockedStatic<VolumeUtils> vu = Mockito.mockStatic(VolumeUtils.class);
+         MockedStatic<ContainerUtils> cu = Mockito.mockStatic(ContainerUtils.class)) {
+      vu.when(() -> VolumeUtils.createHelperContainer(any(DockerClient.class), anyString(), anyInt(), ArgumentMatchers.<VolumeBind>any()))
+        .thenReturn("helper");
+      vu.when(() -> VolumeUtils.startHelperContainer(any(DockerClient.class), anyString(), any(ContainerLogReader.class), any()))
+        .thenThrow(new RuntimeException("start failed"));
+
+      List<VolumeBind> volumes = Collections.singletonList(new VolumeBind("one", "/one"));
+      assertThrows(RuntimeException.class, () -> VolumeHelper.create(config, "image", 1000, volumes));
+
+      cu.verify(() -> ContainerUtils.removeContainer(dc, "helper"), Mockito.times(1));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package dev.snowdrop.buildpack.docker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectVolumeCmd;
+import com.github.dockerjava.api.command.InspectVolumeResponse;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.utils.FilePermissions;
+
+@DisabledOnOs(OS.WINDOWS)
+@ExtendWith(MockitoExtension.class)
+public class VolumeMountpointTest {
+
+    private static int uid(Path p) throws IOException {
+        return (Integer) Files.getAttribute(p, "unix:uid");
+    }
+
+    private static int gid(Path p) throws IOException {
+        return (Integer) Files.getAttribute(p, "unix:gid");
+    }
+
+    @Test
+    void findsWritableMountpoint(@TempDir Path volume, @Mock DockerConfig config, @Mock DockerClient dc,
+                                 @Mock InspectVolumeCmd ivc, @Mock InspectVolumeResponse ivr) throws IOException {
+        when(config.getDockerHost()).thenReturn("unix:///var/run/docker.sock");
+        when(config.getDockerClient()).thenReturn(dc);
+        when(dc.inspectVolumeCmd("fish")).thenReturn(ivc);
+        when(ivc.exec()).thenReturn(ivr);
+        when(ivr.getMountpoint()).thenReturn(volume.toString());
+
+        assertEquals(volume, VolumeMountpoint.find(config, "fish", uid(volume), gid(volume)));
+        //probe file is removed.
+        try (Stream<Path> content = Files.list(volume)) {
+            assertEquals(0, content.count());
+        }
+        //volume not yet owned by the build uid.
+        assertNull(VolumeMountpoint.find(config, "fish", uid(volume) + 1, gid(volume)));
+    }
+
+    @Test
+    void remoteDaemonIsNotWrittenDirectly(@Mock DockerConfig config) {
+        when(config.getDockerHost()).thenReturn("tcp://remote:2376");
+        assertNull(VolumeMountpoint.find(config, "fish", 0, 0));
+    }
+
+    @Test
+    void writesEntriesWithOwnershipAndMode(@TempDir Path volume) throws IOException {
+        int uid = uid(volume);
+        int gid = gid(volume);
+        assertTrue(VolumeMountpoint.accepts(volume, uid, gid));
+
+        Stream<ContainerEntry> entries = Stream.concat(
+            new StringContent("bin/run", 0755, "#!/bin/sh").getContainerEntries().stream(),
+            new StringContent("bin/run", 0700, "#!/bin/bash").getContainerEntries().stream());
+        VolumeMountpoint.write(volume, "/app", uid, gid, entries);
+
+        Path run = volume.resolve("app/bin/run");
+        assertEquals("#!/bin/bash", new String(Files.readAllBytes(run)));
+        assertEquals(0700, FilePermissions.toMode(Files.getPosixFilePermissions(run)));
+        assertEquals(0755, FilePermissions.toMode(Files.getPosixFilePermissions(volume.resolve("app/bin"))));
+        assertEquals(uid, uid(run));
+        assertEquals(gid, gid(volume.resolve("app")));
+    }
+
+    @Test
+    void doesNotFollowLinksOutOfVolume(@TempDir Path dir) throws IOException {
+        Path volume = Files.createDirectory(dir.resolve("volume"));
+        Path outside = Files.createDirectories(dir.resolve("outside/sub"));
+        Files.createSymbolicLink(volume.resolve("link"), outside.getParent());
+
+        Stream<ContainerEntry> entries = new StringContent("link/sub/file", 0644, "x").getContainerEntries().stream();
+        assertThrows(BuildpackException.class, () -> VolumeMountpoint.write(volume, "", uid(volume), gid(volume), entries));
+        assertFalse(Files.exists(outside.resolve("file")));
+    }
+}
@@ -0,0 +1,108 @@
+package dev.snowdrop.buildpack.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.dockerjava.transport.DockerHttpClient;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@ExtendWith(MockitoExtension.class)
+class BuildEventsTest {
+
+  private List<RecordedEvent> record(Runnable action, String... events) throws Exception {
+    Path file = Files.createTempFile("buildevents", ".jfr");
+    try (Recording recording = new Recording()) {
+      for (String event : events) {
+        recording.enable(event);
+      }
+      recording.start();
+      action.run();
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file).stream()
+          .filter(e -> e.getEventType().getName().startsWith("dev.snowdrop.buildpack."))
+          .collect(Collectors.toList());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void nothingToRecordWithoutRecording() {
+    assertTrue(BuildEvents.isAvailable());
+    assertNull(BuildEvents.beginPhase());
+    //ending a null token is a no-op.
+    BuildEvents.endPhase(null, "Builder", "0.12", "id", 0);
+  }
+
+  @Test
+  void recordsPhase() throws Exception {
+    List<RecordedEvent> events = record(() -> {
+      Object token = BuildEvents.beginPhase();
+      BuildEvents.endPhase(token, "Detector", "0.12", "fish", 3);
+    }, "dev.snowdrop.buildpack.Phase");
+
+    assertEquals(1, events.size());
+    assertEquals("Detector", events.get(0).getString("phase"));
+    assertEquals("0.12", events.get(0).getString("platformLevel"));
+    assertEquals("fish", events.get(0).getString("containerId"));
+    assertEquals(3, events.get(0).getInt("exitCode"));
+  }
+
+  @Test
+  void recordsUploadCompressionRatio() throws Exception {
+    List<RecordedEvent> events = record(() -> {
+      Object token = BuildEvents.beginUpload();
+      BuildEvents.endUpload(token, "id", "/workspace", "GZIP_6", 1, 10, 4000, 1000);
+    }, "dev.snowdrop.buildpack.Upload");
+
+    assertEquals(1, events.size());
+    assertEquals(10, events.get(0).getLong("entries"));
+    assertEquals(4.0, events.get(0).getDouble("compressionRatio"));
+  }
+
+  @Test
+  void recordsFailedBuild() throws Exception {
+    List<RecordedEvent> events = record(() -> {
+      Object token = BuildEvents.beginBuild();
+      BuildEvents.endBuild(token, "builder", "output", null, null);
+    }, "dev.snowdrop.buildpack.Build");
+
+    assertEquals(1, events.size());
+    assertEquals(-1, events.get(0).getInt("exitCode"));
+  }
+
+  @Test
+  void recordsDockerRequests(@Mock DockerHttpClient client, @Mock DockerHttpClient.Request request,
+                             @Mock DockerHttpClient.Response response) throws Exception {
+    when(request.method()).thenReturn("POST");
+    when(request.path()).thenReturn("/containers/create");
+    when(response.getStatusCode()).thenReturn(201);
+    when(client.execute(request)).thenReturn(response);
+
+    DockerHttpClient recording = BuildEvents.recording(client);
+    List<RecordedEvent> events = record(() -> assertSame(response, recording.execute(request)),
+                                        "dev.snowdrop.buildpack.DockerRequest");
+
+    assertEquals(1, events.size());
+    assertEquals("POST", events.get(0).getString("method"));
+    assertEquals("/containers/create", events.get(0).getString("path"));
+    assertEquals(201, events.get(0).getInt("statusCode"));
+  }
+}
@@ -0,0 +1,66 @@
+package dev.snowdrop.buildpack.lifecycle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AnalyzedMetadataTest {
+
+    private static final String TOML = "[image]\n  reference = \"newfish\"\n\n[run-image]\n  reference = \"newfish\"\n  extend = true\n";
+
+    @Test
+    void testParse(){
+        assertNull(AnalyzedMetadata.parse(null));
+
+        AnalyzedMetadata am = AnalyzedMetadata.parse(TOML.getBytes());
+        assertEquals("newfish", am.getRunImageReference());
+        assertEquals("newfish", am.getRunImage().getReference());
+        assertTrue(am.isRunImageExtend());
+        assertFalse(am.isChanged());
+
+        AnalyzedMetadata empty = AnalyzedMetadata.parse("".getBytes());
+        assertNull(empty.getRunImageReference());
+        assertNull(empty.getRunImage());
+        assertFalse(empty.isRunImageExtend());
+    }
+
+    @Test
+    void testWithRunImageReference(){
+        AnalyzedMetadata am = AnalyzedMetadata.parse(TOML.getBytes());
+        assertSame(am, am.withRunImageReference("newfish"));
+
+        AnalyzedMetadata updated = am.withRunImageReference("newfish:latest");
+        assertTrue(updated.isChanged());
+        assertEquals("newfish:latest", updated.getRunImageReference());
+        assertTrue(updated.isRunImageExtend());
+        //only the run image reference is updated, not other references matching it.
+        assertEquals(TOML.replace("  reference = \"newfish\"\n  extend", "  reference = \"newfish:latest\"\n  extend"), updated.toToml());
+
+        AnalyzedMetadata dotted = AnalyzedMetadata.parse("run-image.reference='newfish' # run image\n".getBytes());
+        assertEquals("run-image.reference=\"newfish:latest\" # run image\n", dotted.withRunImageReference("newfish:latest").toToml());
+    }
+
+    @Test
+    void testWriteTo(@Mock LifecyclePhaseAnalyzedTomlUpdater phase){
+        AnalyzedMetadata am = AnalyzedMetadata.parse(TOML.getBytes());
+        assertSame(am, am.writeTo(phase));
+        verify(phase, never()).updateAnalyzedToml(any());
+
+        AnalyzedMetadata updated = am.withRunImageReference("newfish:latest");
+        AnalyzedMetadata written = updated.writeTo(phase);
+        verify(phase).updateAnalyzedToml(updated.toToml());
+        assertFalse(written.isChanged());
+        assertEquals("newfish:latest", written.getRunImageReference());
+    }
+}
@@ -255,6 +255,20 @@ public class LifecycleExecutorTest {
             order.verify(restorer).runPhase(logger, true);
             order.verify(builder).runPhase(logger, true);
             order.verify(exporter).runPhase(logger, true);
+
+            //each phase container is prepared before the phase ahead of it runs, and removed via the factory.
+            InOrder pipelined = Mockito.inOrder(detector,analyzer,restorer,builder,exporter);
+            pipelined.verify(detector).prepare();
+            pipelined.verify(analyzer).runPhase(logger, true);
+            pipelined.verify(restorer).prepare();
+            pipelined.verify(detector).runPhase(logger, true);
+            pipelined.verify(builder).prepare();
+            pipelined.verify(restorer).runPhase(logger, true);
+            pipelined.verify(exporter).prepare();
+            pipelined.verify(builder).runPhase(logger, true);
+            pipelined.verify(exporter).runPhase(logger, true);
+            verify(lifecycleFactory).removeContainer("analyzer-id");
+            verify(lifecycleFactory).removeContainer("exporter-id");
         }   
     } 
 
@@ -0,0 +1,132 @@
+package dev.snowdrop.buildpack.lifecycle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.command.InspectExecCmd;
+import com.github.dockerjava.api.command.InspectExecResponse;
+import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.command.StartContainerCmd;
+import com.github.dockerjava.api.model.HostConfig;
+
+import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.Logger;
+import dev.snowdrop.buildpack.config.CacheConfig;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.config.ImageReference;
+import dev.snowdrop.buildpack.config.LogConfig;
+import dev.snowdrop.buildpack.config.PlatformConfig;
+
+@ExtendWith(MockitoExtension.class)
+public class LifecyclePhaseFactoryTest {
+
+    private LifecyclePhaseFactory factory(DockerConfig dockerConfig, DockerClient dockerClient, BuilderImage builder,
+                                          CreateContainerCmd ccc, CacheConfig cacheConfig, PlatformConfig platformConfig, LogConfig logConfig) {
+        when(dockerConfig.getDockerClient()).thenReturn(dockerClient);
+        when(builder.getImage()).thenReturn(new ImageReference("builder"));
+        when(dockerClient.createContainerCmd(any())).thenReturn(ccc);
+        lenient().when(ccc.getHostConfig()).thenReturn(new HostConfig());
+
+        return new LifecyclePhaseFactory(dockerConfig, cacheConfig, cacheConfig, cacheConfig, null, platformConfig, logConfig,
+                                         new ImageReference("output"), builder, builder, "0.12");
+    }
+
+    @Test
+    void preparedContainerIsUsed(@Mock DockerConfig dockerConfig, @Mock DockerClient dockerClient, @Mock BuilderImage builder,
+                                 @Mock(answer = Answers.RETURNS_SELF) CreateContainerCmd ccc, @Mock CacheConfig cacheConfig,
+                                 @Mock PlatformConfig platformConfig, @Mock LogConfig logConfig) {
+        LifecyclePhaseFactory factory = factory(dockerConfig, dockerClient, builder, ccc, cacheConfig, platformConfig, logConfig);
+        CreateContainerResponse ccr = new CreateContainerResponse();
+        ccr.setId("prepared");
+        when(ccc.exec()).thenReturn(ccr);
+
+        factory.prepareContainerForPhase(new String[] {"/cnb/lifecycle/detector", "-app", "/workspace"}, 1000);
+        String id = factory.getContainerForPhase(new String[] {"/cnb/lifecycle/detector", "-app", "/workspace"}, 1000);
+
+        assertEquals("prepared", id);
+        verify(ccc, times(1)).exec();
+    }
+
+    @Test
+    void preparedContainerIsReplacedWhenArgsChange(@Mock DockerConfig dockerConfig, @Mock DockerClient dockerClient, @Mock BuilderImage builder,
+                                                   @Mock(answer = Answers.RETURNS_SELF) CreateContainerCmd ccc, @Mock CacheConfig cacheConfig,
+                                                   @Mock PlatformConfig platformConfig, @Mock LogConfig logConfig,
+                                                   @Mock RemoveContainerCmd rcc) {
+        LifecyclePhaseFactory factory = factory(dockerConfig, dockerClient, builder, ccc, cacheConfig, platformConfig, logConfig);
+        CreateContainerResponse prepared = new CreateContainerResponse();
+        prepared.setId("prepared");
+        CreateContainerResponse recreated = new CreateContainerResponse();
+        recreated.setId("recreated");
+        when(ccc.exec()).thenReturn(prepared, recreated);
+        when(dockerClient.removeContainerCmd("prepared")).thenReturn(rcc);
+        when(rcc.withForce(anyBoolean())).thenReturn(rcc);
+
+        factory.prepareContainerForPhase(new String[] {"/cnb/lifecycle/exporter", "-run-image", "old"}, 0);
+        String id = factory.getContainerForPhase(new String[] {"/cnb/lifecycle/exporter", "-run-image", "new"}, 0);
+
+        assertEquals("recreated", id);
+        //the stale container is removed in the background.
+        verify(rcc, timeout(5000)).exec();
+        verify(ccc, times(2)).exec();
+    }
+    @Test
+    void execContainerIsSharedByPhasesWithSameUid(@Mock DockerConfig dockerConfig, @Mock DockerClient dockerClient, @Mock BuilderImage builder,
+                                                  @Mock(answer = Answers.RETURNS_SELF) CreateContainerCmd ccc, @Mock CacheConfig cacheConfig,
+                                                  @Mock PlatformConfig platformConfig, @Mock LogConfig logConfig, @Mock StartContainerCmd scc,
+                                                  @Mock(answer = Answers.RETURNS_SELF) ExecCreateCmd ecc, @Mock ExecCreateCmdResponse ecr,
+                                                  @Mock ExecStartCmd esc, @Mock InspectExecCmd iec, @Mock InspectExecResponse ier,
+                                                  @Mock Logger logger) throws Exception {
+        LifecyclePhaseFactory factory = factory(dockerConfig, dockerClient, builder, ccc, cacheConfig, platformConfig, logConfig);
+        CreateContainerResponse ccr = new CreateContainerResponse();
+        ccr.setId("exec-container");
+        when(ccc.exec()).thenReturn(ccr);
+        when(dockerClient.startContainerCmd("exec-container")).thenReturn(scc);
+        when(dockerClient.execCreateCmd("exec-container")).thenReturn(ecc);
+        doReturn(ecr).when(ecc).exec();
+        when(ecr.getId()).thenReturn("exec");
+        when(dockerClient.execStartCmd("exec")).thenReturn(esc);
+        //the phase output ends immediately.
+        when(esc.exec(any())).thenAnswer(i -> {
+            ResultCallback.Adapter<?> output = i.getArgument(0);
+            output.onComplete();
+            return output;
+        });
+        when(dockerClient.inspectExecCmd("exec")).thenReturn(iec);
+        when(iec.exec()).thenReturn(ier);
+        when(ier.getExitCodeLong()).thenReturn(0L);
+
+        factory.prepareExecContainer(1000);
+        ContainerStatus detect = factory.execPhase(new String[] {"/cnb/lifecycle/detector"}, 1000, logger);
+        ContainerStatus build = factory.execPhase(new String[] {"/cnb/lifecycle/builder"}, 1000, logger);
+        factory.removeContainer(detect.getContainerId());
+
+        assertEquals("exec-container", detect.getContainerId());
+        assertEquals("exec-container", build.getContainerId());
+        assertEquals(0, build.getRc());
+        verify(ccc, times(1)).exec();
+        verify(scc, times(1)).exec();
+        //exec containers are only removed by tidyUp.
+        verify(dockerClient, never()).removeContainerCmd(any());
+    }
+}
@@ -28,6 +28,7 @@ import com.github.dockerjava.api.command.WaitContainerCmd;
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
 import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.Logger;
 import dev.snowdrop.buildpack.config.DockerConfig;
 import dev.snowdrop.buildpack.config.ImageReference;
@@ -91,6 +92,7 @@ public class AnalzyerTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        lenient().when(factory.getBuildReport()).thenReturn(new BuildReport());
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
@@ -173,6 +175,7 @@ public class AnalzyerTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        lenient().when(factory.getBuildReport()).thenReturn(new BuildReport());
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
@@ -256,6 +259,7 @@ public class AnalzyerTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        lenient().when(factory.getBuildReport()).thenReturn(new BuildReport());
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
@@ -339,6 +343,7 @@ public class AnalzyerTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        lenient().when(factory.getBuildReport()).thenReturn(new BuildReport());
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
@@ -9,6 +9,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -28,6 +29,7 @@ import com.github.dockerjava.api.command.WaitContainerCmd;
 import com.github.dockerjava.api.command.WaitContainerResultCallback;
 
 import dev.snowdrop.buildpack.BuilderImage;
+import dev.snowdrop.buildpack.BuildReport;
 import dev.snowdrop.buildpack.Logger;
 import dev.snowdrop.buildpack.config.DockerConfig;
 import dev.snowdrop.buildpack.config.ImageReference;
@@ -91,6 +93,8 @@ public class BuilderTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        BuildReport report = new BuildReport();
+        lenient().when(factory.getBuildReport()).thenReturn(report);
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
@@ -115,6 +119,12 @@ public class BuilderTest {
         assertTrue(argList.contains(LOG_LEVEL));
 
         verify(logCmd).withTimestamps(true);
+
+        assertEquals(1, report.phases.size());
+        assertEquals("builder", report.phases.get(0).name);
+        assertEquals(CONTAINER_ID, report.phases.get(0).containerId);
+        assertEquals(CONTAINER_RC, report.phases.get(0).exitCode);
+        assertEquals(Arrays.asList("create", "start", "wait"), new ArrayList<>(report.phases.get(0).timings.keySet()));
         verify(dockerClient).logContainerCmd(CONTAINER_ID);
         verify(factory).getContainerForPhase(any(String[].class), eq(USER_ID));
     }
@@ -169,6 +179,7 @@ public class BuilderTest {
         lenient().when(factory.getBuilderImage()).thenReturn(builder);
 
         lenient().when(factory.getPlatformLevel()).thenReturn(new Version(PLATFORM_LEVEL));
+        lenient().when(factory.getBuildReport()).thenReturn(new BuildReport());
 
         lenient().when(factory.getContainerForPhase(argsCaptor.capture(), any())).thenReturn(CONTAINER_ID);
 
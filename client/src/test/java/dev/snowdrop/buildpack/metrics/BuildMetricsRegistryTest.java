@@ -0,0 +1,70 @@
+package dev.snowdrop.buildpack.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class BuildMetricsRegistryTest {
+
+  static class Recorder implements BuildMetrics {
+    List<String> phases = new ArrayList<>();
+    int volumes = 0;
+    @Override
+    public void phaseCompleted(String phase, String platformLevel, long durationNanos, int exitCode) {
+      phases.add(phase + "/" + platformLevel + "/" + exitCode);
+    }
+    @Override
+    public void volumeCreated() {
+      volumes++;
+    }
+  }
+
+  @Test
+  void measurementsAreSentToRegistered() {
+    Recorder a = new Recorder();
+    Recorder b = new Recorder();
+    BuildMetricsRegistry.register(a);
+    BuildMetricsRegistry.register(b);
+    try {
+      BuildMetricsRegistry.get().phaseCompleted("Detector", "0.12", 10L, 0);
+      BuildMetricsRegistry.get().volumeCreated();
+      //unimplemented measurements default to doing nothing.
+      BuildMetricsRegistry.get().containerCreated(10L);
+    } finally {
+      BuildMetricsRegistry.unregister(a);
+      BuildMetricsRegistry.unregister(b);
+    }
+
+    assertEquals(1, a.phases.size());
+    assertEquals("Detector/0.12/0", a.phases.get(0));
+    assertEquals(1, a.volumes);
+    assertEquals(1, b.phases.size());
+    assertEquals(1, b.volumes);
+
+    BuildMetricsRegistry.get().volumeCreated();
+    assertEquals(1, a.volumes);
+  }
+
+  @Test
+  void failingMetricsDoNotStopOthers() {
+    BuildMetrics failing = new BuildMetrics() {
+      @Override
+      public void volumeCreated() {
+        throw new IllegalStateException("boom");
+      }
+    };
+    Recorder r = new Recorder();
+    BuildMetricsRegistry.register(failing);
+    BuildMetricsRegistry.register(r);
+    try {
+      BuildMetricsRegistry.get().volumeCreated();
+    } finally {
+      BuildMetricsRegistry.unregister(failing);
+      BuildMetricsRegistry.unregister(r);
+    }
+    assertEquals(1, r.volumes);
+  }
+}
@@ -0,0 +1,160 @@
+package dev.snowdrop.buildpack.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.PingCmd;
+
+import dev.snowdrop.buildpack.BuildConfig;
+import dev.snowdrop.buildpack.BuildConfigBuilder;
+import dev.snowdrop.buildpack.BuildResult;
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.config.DockerConfig;
+import dev.snowdrop.buildpack.config.DockerConfig.PullPolicy;
+import dev.snowdrop.buildpack.config.ImageReference;
+
+@ExtendWith(MockitoExtension.class)
+public class BuildSchedulerTest {
+
+    //builds started by the scheduler, run when the test chooses.
+    List<Runnable> started = new ArrayList<>();
+
+    @Mock
+    DockerClient client;
+
+    @Mock
+    PingCmd ping;
+
+    private DockerConfig docker(String host){
+        when(client.pingCmd()).thenReturn(ping);
+        return DockerConfig.builder()
+                           .withDockerHost(host)
+                           .withDockerSocket("/var/run/docker.sock")
+                           .withDockerClient(client)
+                           .withPullPolicy(PullPolicy.NEVER)
+                           .build();
+    }
+
+    private BuildConfigBuilder build(DockerConfig dc){
+        //the docker client knows no images, so each build fails as soon as it runs.
+        return BuildConfig.builder()
+                          .withDockerConfig(dc)
+                          .withOutputImage(new ImageReference("test/output:latest"))
+                          .addNewFileContentApplication(new File("."));
+    }
+
+    //run the next started build, returning which of the builds completed.
+    private int runNext(List<CompletableFuture<BuildResult>> builds){
+        List<Boolean> before = new ArrayList<>();
+        builds.forEach(b -> before.add(b.isDone()));
+        started.remove(0).run();
+        for(int i=0; i<builds.size(); i++){
+            if(!before.get(i) && builds.get(i).isDone()){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    void buildsStartInPriorityThenSubmitterOrder() {
+        DockerConfig dc = docker("tcp://daemon:2375");
+        BuildScheduler scheduler = new BuildScheduler(1, null, null, started::add);
+
+        List<CompletableFuture<BuildResult>> builds = new ArrayList<>();
+        builds.add(scheduler.submit(build(dc)));
+        builds.add(scheduler.submit(build(dc), 0, "alice"));
+        builds.add(scheduler.submit(build(dc), 0, "alice"));
+        builds.add(scheduler.submit(build(dc), 0, "alice"));
+        builds.add(scheduler.submit(build(dc), 0, "bob"));
+        builds.add(scheduler.submit(build(dc), 5, "carol"));
+
+        assertEquals(1, started.size());
+        assertEquals(1, scheduler.getRunning("tcp://daemon:2375"));
+        assertEquals(5, scheduler.getQueued("tcp://daemon:2375"));
+
+        //first build, then higher priority, then alice and bob in turn.
+        assertEquals(0, runNext(builds));
+        assertEquals(5, runNext(builds));
+        assertEquals(1, runNext(builds));
+        assertEquals(4, runNext(builds));
+        assertEquals(2, runNext(builds));
+        assertEquals(3, runNext(builds));
+        assertTrue(started.isEmpty());
+        assertEquals(0, scheduler.getRunning("tcp://daemon:2375"));
+
+        //builds failed, as the builder image is not known.
+        builds.forEach(b -> assertTrue(b.isCompletedExceptionally()));
+    }
+
+    @Test
+    void limitsApplyPerHost() {
+        DockerConfig dc1 = docker("tcp://one:2375");
+        DockerConfig dc2 = docker("tcp://two:2375");
+        BuildScheduler scheduler = new BuildScheduler(1, null, null, started::add);
+
+        scheduler.submit(build(dc1));
+        scheduler.submit(build(dc1));
+        scheduler.submit(build(dc2));
+
+        assertEquals(2, started.size());
+        assertEquals(1, scheduler.getQueued("tcp://one:2375"));
+        assertEquals(0, scheduler.getQueued("tcp://two:2375"));
+    }
+
+    @Test
+    void cancelledBuildsLeaveTheQueue() {
+        DockerConfig dc = docker("tcp://daemon:2375");
+        BuildScheduler scheduler = new BuildScheduler(1, null, null, started::add);
+
+        List<CompletableFuture<BuildResult>> builds = new ArrayList<>();
+        builds.add(scheduler.submit(build(dc)));
+        builds.add(scheduler.submit(build(dc)));
+        builds.add(scheduler.submit(build(dc)));
+
+        assertTrue(builds.get(1).cancel(true));
+        assertEquals(1, scheduler.getQueued("tcp://daemon:2375"));
+
+        assertEquals(0, runNext(builds));
+        assertEquals(2, runNext(builds));
+
+        scheduler.close();
+        assertThrows(BuildpackException.class, () -> scheduler.submit(build(dc)));
+        assertTrue(builds.get(1).isCancelled());
+    }
+
+    @Test
+    void cancelledBuildsHoldTheirSlotUntilTheBuildThreadExits() {
+        DockerConfig dc = docker("tcp://daemon:2375");
+        BuildScheduler scheduler = new BuildScheduler(1, null, null, started::add);
+
+        List<CompletableFuture<BuildResult>> builds = new ArrayList<>();
+        builds.add(scheduler.submit(build(dc)));
+        builds.add(scheduler.submit(build(dc)));
+
+        //the cancelled build's thread has not finished, so the next build must wait.
+        assertTrue(builds.get(0).cancel(true));
+        assertEquals(1, started.size());
+        assertEquals(1, scheduler.getRunning("tcp://daemon:2375"));
+        assertEquals(1, scheduler.getQueued("tcp://daemon:2375"));
+
+        started.remove(0).run();
+        assertEquals(1, started.size());
+        assertEquals(0, scheduler.getQueued("tcp://daemon:2375"));
+        assertEquals(1, runNext(builds));
+        assertEquals(0, scheduler.getRunning("tcp://daemon:2375"));
+    }
+}
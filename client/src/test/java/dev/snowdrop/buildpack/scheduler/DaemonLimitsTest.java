@@ -0,0 +1,100 @@
+package dev.snowdrop.buildpack.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class DaemonLimitsTest {
+
+    @Test
+    void unlimitedWithoutLimitsAttached() {
+        assertEquals("done", DaemonLimits.exporter(() -> "done"));
+        AtomicInteger ran = new AtomicInteger();
+        DaemonLimits.pulls(Arrays.asList(1, 2, 3), images -> ran.addAndGet(images.size()));
+        assertEquals(3, ran.get());
+    }
+
+    @Test
+    void exportersAreLimited() throws Exception {
+        DaemonLimits limits = new DaemonLimits(2, 1);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch allStarted = new CountDownLatch(6);
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try{
+            List<Future<?>> tasks = new ArrayList<>();
+            for(int i=0; i<6; i++){
+                tasks.add(executor.submit(limits.wrap(() -> {
+                    allStarted.countDown();
+                    DaemonLimits.exporter(() -> {
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        try{
+                            Thread.sleep(20);
+                        }catch(InterruptedException e){
+                            Thread.currentThread().interrupt();
+                        }
+                        return active.decrementAndGet();
+                    });
+                })));
+            }
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+            for(Future<?> f : tasks){
+                f.get(10, TimeUnit.SECONDS);
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    void pullsAreBatchedAtTheLimit() {
+        DaemonLimits limits = new DaemonLimits(1, 2);
+        List<List<Integer>> batches = new ArrayList<>();
+        //more images than permits must not wait forever, nor run beyond the limit.
+        limits.wrap(() -> DaemonLimits.pulls(Arrays.asList(1, 2, 3, 4, 5), images -> batches.add(new ArrayList<>(images)))).run();
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Arrays.asList(5)), batches);
+    }
+
+    @Test
+    void pullsAreLimitedAcrossBuilds() throws Exception {
+        DaemonLimits limits = new DaemonLimits(1, 2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try{
+            List<Future<?>> tasks = new ArrayList<>();
+            for(int i=0; i<3; i++){
+                tasks.add(executor.submit(limits.wrap(() -> DaemonLimits.pulls(Arrays.asList(1, 2, 3), images -> {
+                    //each image in the batch is pulled concurrently.
+                    maxActive.accumulateAndGet(active.addAndGet(images.size()), Math::max);
+                    try{
+                        Thread.sleep(20);
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                    active.addAndGet(-images.size());
+                }))));
+            }
+            for(Future<?> f : tasks){
+                f.get(10, TimeUnit.SECONDS);
+            }
+        }finally{
+            executor.shutdownNow();
+        }
+        assertTrue(maxActive.get() <= 2);
+    }
+}
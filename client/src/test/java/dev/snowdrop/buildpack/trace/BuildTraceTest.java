@@ -0,0 +1,101 @@
+package dev.snowdrop.buildpack.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BuildTraceTest {
+
+  private static List<JsonNode> events(JsonNode trace, String ph) {
+    List<JsonNode> found = new ArrayList<>();
+    trace.get("traceEvents").forEach(e -> {
+      if (ph.equals(e.get("ph").asText())) {
+        found.add(e);
+      }
+    });
+    return found;
+  }
+
+  @Test
+  void spansAreIgnoredWithoutTrace() {
+    assertNull(BuildTrace.current());
+    assertEquals("value", BuildTrace.span("outer", "test", () -> "value"));
+    Runnable r = () -> {};
+    assertSame(r, BuildTrace.wrap(r));
+  }
+
+  @Test
+  void spansNestWithinThread() throws Exception {
+    BuildTrace trace = new BuildTrace();
+    BuildTrace previous = trace.attach();
+    try {
+      BuildTrace.span("outer", "test", () -> {
+        BuildTrace.begin("inner", "test").arg("key", "value").arg("ignored", null).end();
+      });
+    } finally {
+      BuildTrace.detach(previous);
+    }
+    assertNull(BuildTrace.current());
+
+    JsonNode json = new ObjectMapper().readTree(trace.toJson());
+    List<JsonNode> spans = events(json, "X");
+    assertEquals(2, spans.size());
+    //spans are recorded as they end, so inner is first.
+    JsonNode inner = spans.get(0);
+    JsonNode outer = spans.get(1);
+    assertEquals("inner", inner.get("name").asText());
+    assertEquals("value", inner.get("args").get("key").asText());
+    assertTrue(inner.get("args").get("ignored") == null);
+    assertEquals("outer", outer.get("name").asText());
+    assertEquals(inner.get("tid").asLong(), outer.get("tid").asLong());
+    assertTrue(inner.get("ts").asDouble() >= outer.get("ts").asDouble());
+    assertTrue(inner.get("ts").asDouble() + inner.get("dur").asDouble() <= outer.get("ts").asDouble() + outer.get("dur").asDouble());
+    assertEquals(1, events(json, "M").stream().filter(e -> e.get("name").asText().equals("thread_name")).count());
+  }
+
+  @Test
+  void wrappedTasksRecordIntoTrace(@TempDir Path dir) throws Exception {
+    BuildTrace trace = new BuildTrace();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    BuildTrace previous = trace.attach();
+    try {
+      executor.submit(BuildTrace.wrap(() -> BuildTrace.span("background", "test", () -> "done"))).get();
+      //unwrapped tasks have no trace attached.
+      executor.submit(() -> BuildTrace.span("unwrapped", "test", () -> "done")).get();
+      BuildTrace.begin("pull", "test").arg("attempt", 1).endAsync();
+    } finally {
+      BuildTrace.detach(previous);
+      executor.shutdown();
+    }
+
+    File file = dir.resolve("trace.json").toFile();
+    trace.write(file);
+    JsonNode json = new ObjectMapper().readTree(file);
+
+    List<JsonNode> spans = events(json, "X");
+    assertEquals(1, spans.size());
+    assertEquals("background", spans.get(0).get("name").asText());
+    assertTrue(spans.get(0).get("tid").asLong() != Thread.currentThread().getId());
+
+    List<JsonNode> begins = events(json, "b");
+    List<JsonNode> ends = events(json, "e");
+    assertEquals(1, begins.size());
+    assertEquals(1, ends.size());
+    assertEquals(begins.get(0).get("id").asLong(), ends.get(0).get("id").asLong());
+    assertEquals(1, begins.get(0).get("args").get("attempt").asInt());
+  }
+}
@@ -0,0 +1,74 @@
+package dev.snowdrop.buildpack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+public class BoundedPipeTest {
+
+    @Test
+    void dataCrossesChunkBoundaries() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(100, 2);
+        byte[] data = new byte[1234];
+        for(int i=0; i<data.length; i++){
+            data[i] = (byte) i;
+        }
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try(OutputStream out = pipe.getOutputStream()){
+                out.write(data, 0, 7);
+                out.write(data, 7, data.length - 7);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        });
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try(InputStream in = pipe.getInputStream()){
+            byte[] buf = new byte[33];
+            int n;
+            while((n = in.read(buf)) > 0){
+                result.write(buf, 0, n);
+            }
+        }
+        writer.get();
+        assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    void writerFailureReachesReader() {
+        BoundedPipe pipe = new BoundedPipe(100, 2);
+        pipe.fail(new IllegalStateException("stiletto"));
+
+        IOException e = assertThrows(IOException.class, () -> pipe.getInputStream().read());
+        assertEquals("stiletto", e.getCause().getMessage());
+    }
+
+    @Test
+    void readerCloseReleasesBlockedWriter() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(10, 1);
+
+        //writer will block once the single chunk slot is full.
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try{
+                pipe.getOutputStream().write(new byte[1000]);
+            }catch(IOException e){
+                throw new RuntimeException(e);
+            }
+        });
+
+        pipe.getInputStream().close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> writer.get());
+        assertEquals(BoundedPipe.PipeClosedException.class, e.getCause().getCause().getClass());
+    }
+}
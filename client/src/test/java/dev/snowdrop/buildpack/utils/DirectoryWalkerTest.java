@@ -0,0 +1,98 @@
+package dev.snowdrop.buildpack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectoryWalkerTest {
+
+    private static final DirectoryWalker.Visitor SKIP_BUILD = (p, isDir) -> !(isDir && p.getFileName().toString().equals("build"));
+
+    private static List<String> names(Path root, List<FileSnapshot> files) {
+        return files.stream().map(s -> root.relativize(s.getPath()).toString().replace("\\", "/")).collect(Collectors.toList());
+    }
+
+    private static void tree(Path dir) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            Files.createDirectories(dir.resolve("d" + i + "/e/f"));
+            Files.createDirectories(dir.resolve("d" + i + "/build"));
+            Files.write(dir.resolve("d" + i + "/a"), "a".getBytes());
+            Files.write(dir.resolve("d" + i + "/e/f/b"), "bb".getBytes());
+            Files.write(dir.resolve("d" + i + "/build/c"), "c".getBytes());
+        }
+        Files.write(dir.resolve("top"), "top".getBytes());
+    }
+
+    @Test
+    void walkPrunesAndSnapshots(@TempDir Path dir) throws IOException {
+        tree(dir);
+        List<FileSnapshot> files;
+        try (Stream<FileSnapshot> s = DirectoryWalker.walk(dir, SKIP_BUILD)) {
+            files = s.collect(Collectors.toList());
+        }
+        List<String> names = names(dir, files);
+        assertEquals(11, names.size());
+        assertTrue(names.contains("top"));
+        assertTrue(names.contains("d3/e/f/b"));
+        assertFalse(names.stream().anyMatch(n -> n.contains("build")));
+
+        FileSnapshot b = files.get(names.indexOf("d3/e/f/b"));
+        assertEquals(2L, b.getSize());
+        assertTrue(b.isRegularFile());
+        assertEquals(Files.getLastModifiedTime(b.getPath()).toMillis(), b.getLastModified());
+    }
+
+    @Test
+    void walkIsInNameOrder(@TempDir Path dir) throws IOException {
+        for (String name : Arrays.asList("m", "z", "b/y", "b/a", "a")) {
+            Files.createDirectories(dir.resolve(name).getParent());
+            Files.write(dir.resolve(name), name.getBytes());
+        }
+        try (Stream<FileSnapshot> s = DirectoryWalker.walk(dir, (p, d) -> true)) {
+            assertEquals(Arrays.asList("a", "b/a", "b/y", "m", "z"), names(dir, s.collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    void parallelWalkMatchesSequentialOrder(@TempDir Path dir) throws IOException {
+        tree(dir);
+        List<String> sequential;
+        try (Stream<FileSnapshot> s = DirectoryWalker.walk(dir, SKIP_BUILD)) {
+            sequential = names(dir, s.collect(Collectors.toList()));
+        }
+        assertEquals(sequential, names(dir, DirectoryWalker.walkParallel(dir, SKIP_BUILD, 4)));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void symbolicLinks(@TempDir Path dir) throws IOException {
+        Files.createDirectories(dir.resolve("real"));
+        Files.write(dir.resolve("real/file"), "data".getBytes());
+        Files.createSymbolicLink(dir.resolve("linkdir"), dir.resolve("real"));
+        Files.createSymbolicLink(dir.resolve("linkfile"), dir.resolve("real/file"));
+        Files.createSymbolicLink(dir.resolve("broken"), dir.resolve("missing"));
+
+        List<FileSnapshot> files;
+        try (Stream<FileSnapshot> s = DirectoryWalker.walk(dir, (p, isDir) -> true)) {
+            files = s.collect(Collectors.toList());
+        }
+        List<String> names = names(dir, files);
+        assertEquals(2, names.size());
+        assertTrue(names.contains("real/file"));
+        assertTrue(names.contains("linkfile"));
+        assertEquals(4L, files.get(names.indexOf("linkfile")).getSize());
+    }
+}
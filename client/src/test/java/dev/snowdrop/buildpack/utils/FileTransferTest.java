@@ -0,0 +1,103 @@
+package dev.snowdrop.buildpack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileTransferTest {
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void copySmallFile(@TempDir Path dir) throws IOException {
+        byte[] data = data(100 * 1024 + 3);
+        Path f = Files.write(dir.resolve("kitten"), data);
+
+        assertTrue(FileTransfer.supports(f));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, FileTransfer.copy(f, out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void copyMappedFile(@TempDir Path dir) throws IOException {
+        byte[] data = data((int) FileTransfer.MMAP_THRESHOLD + 12345);
+        Path f = Files.write(dir.resolve("wedge"), data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, FileTransfer.copy(f, out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void copyEmptyFile(@TempDir Path dir) throws IOException {
+        Path f = Files.write(dir.resolve("patent"), new byte[0]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, FileTransfer.copy(f, out));
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        public void write(int b) {}
+        public void write(byte[] b, int off, int len) {}
+    }
+
+    /**
+     * Compares the channel copy against the previous buffered stream copy, over a tree of
+     * many small files and a few large ones, run with -Dbuildpack.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "buildpack.benchmark", matches = "true")
+    void compareWithStreamCopy(@TempDir Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for(int i=0; i<20000; i++){
+            files.add(Files.write(dir.resolve("small-"+i), data(1 + (i % 16) * 512)));
+        }
+        for(int i=0; i<4; i++){
+            files.add(Files.write(dir.resolve("large-"+i), data(128 * 1024 * 1024)));
+        }
+        OutputStream out = new NullOutputStream();
+
+        for(int round=0; round<3; round++){
+            long start = System.nanoTime();
+            for(Path p : files){
+                try(InputStream is = new BufferedInputStream(Files.newInputStream(p))){
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while((n = is.read(buf)) > 0){
+                        out.write(buf, 0, n);
+                    }
+                }
+            }
+            long streamTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(Path p : files){
+                FileTransfer.copy(p, out);
+            }
+            long channelTime = System.nanoTime() - start;
+
+            System.out.println(String.format("Stream copy: %d ms, FileTransfer copy: %d ms, over %d files",
+                                             streamTime / 1000000, channelTime / 1000000, files.size()));
+        }
+    }
+}
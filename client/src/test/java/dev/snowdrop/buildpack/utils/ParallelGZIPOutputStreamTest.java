@@ -0,0 +1,132 @@
+package dev.snowdrop.buildpack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+public class ParallelGZIPOutputStreamTest {
+
+    //part random, part repetitive, so blocks contain both compressible and incompressible data.
+    private static byte[] sample(int size) {
+        byte[] data = new byte[size];
+        Random r = new Random(1337);
+        for(int i=0; i<size; i++){
+            data[i] = (i / 4096) % 2 == 0 ? (byte) r.nextInt() : (byte) ("stiletto".charAt(i % 8));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int threads, int blockSize) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try(OutputStream out = new ParallelGZIPOutputStream(baos, threads, Deflater.DEFAULT_COMPRESSION, blockSize)){
+            //write in odd sized chunks to cross block boundaries mid write.
+            int off = 0;
+            while(off < data.length){
+                int len = Math.min(1000, data.length - off);
+                out.write(data, off, len);
+                off += len;
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while((n = is.read(buf)) > 0){
+            baos.write(buf, 0, n);
+        }
+        is.close();
+        return baos.toByteArray();
+    }
+
+    @Test
+    void roundTripMultipleBlocks() throws IOException {
+        byte[] data = sample(300 * 1024 + 17);
+        byte[] gz = compress(data, 4, 64 * 1024);
+
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gz))));
+        assertArrayEquals(data, readAll(new GzipCompressorInputStream(new ByteArrayInputStream(gz))));
+    }
+
+    @Test
+    void roundTripSmallBlocks() throws IOException {
+        //blocks smaller than the dictionary window.
+        byte[] data = sample(50 * 1024);
+        byte[] gz = compress(data, 3, 1000);
+
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gz))));
+    }
+
+    @Test
+    void roundTripEmpty() throws IOException {
+        byte[] gz = compress(new byte[0], 2, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+
+        assertArrayEquals(new byte[0], readAll(new GZIPInputStream(new ByteArrayInputStream(gz))));
+        assertArrayEquals(new byte[0], readAll(new GzipCompressorInputStream(new ByteArrayInputStream(gz))));
+    }
+
+    @Test
+    void streamsShareOnePool() throws Exception {
+        byte[] data = sample(1024 * 1024);
+        List<CompletableFuture<byte[]>> streams = new ArrayList<>();
+        for(int i=0; i<8; i++){
+            streams.add(CompletableFuture.supplyAsync(() -> {
+                try{
+                    return compress(data, 4, 16 * 1024);
+                }catch(IOException e){
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for(CompletableFuture<byte[]> stream : streams){
+            assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(stream.get()))));
+        }
+
+        long gzipThreads = Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("buildpack-gzip-")).count();
+        assertTrue(gzipThreads <= ParallelGZIPOutputStream.getPoolSize(), "expected at most "+ParallelGZIPOutputStream.getPoolSize()+" compression threads, found "+gzipThreads);
+    }
+
+    /**
+     * Throughput comparison against the single threaded writer, run with -Dbuildpack.benchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "buildpack.benchmark", matches = "true")
+    void compareWithGZIPOutputStream() throws IOException {
+        byte[] data = sample(64 * 1024 * 1024);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for(int round=0; round<3; round++){
+            long start = System.nanoTime();
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            try(OutputStream out = new GZIPOutputStream(single)){
+                out.write(data);
+            }
+            long singleTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            byte[] parallel = compress(data, threads, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+            long parallelTime = System.nanoTime() - start;
+
+            System.out.println(String.format("GZIPOutputStream: %d ms, %d bytes. ParallelGZIPOutputStream(%d threads): %d ms, %d bytes.",
+                                             singleTime / 1000000, single.size(), threads, parallelTime / 1000000, parallel.length));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dev.snowdrop.buildpack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TaskExecutorsTest {
+
+    @AfterEach
+    void resetFactory() {
+        TaskExecutors.setFactory(null);
+    }
+
+    @Test
+    void platformThreadsAreNamedDaemons() throws Exception {
+        ExecutorService executor = TaskExecutors.PLATFORM.newExecutor("test-platform");
+        try{
+            Thread t = executor.submit(() -> Thread.currentThread()).get(10, TimeUnit.SECONDS);
+            assertEquals("test-platform-1", t.getName());
+            assertTrue(t.isDaemon());
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void defaultFactoryMatchesRuntime() {
+        if(TaskExecutors.isVirtualThreadsAvailable()){
+            assertSame(TaskExecutors.VIRTUAL, TaskExecutors.getFactory());
+        }else{
+            assertSame(TaskExecutors.PLATFORM, TaskExecutors.getFactory());
+        }
+    }
+
+    @Test
+    void virtualUnavailableOnOlderRuntimes() {
+        assumeFalse(TaskExecutors.isVirtualThreadsAvailable());
+        assertThrows(UnsupportedOperationException.class, () -> TaskExecutors.VIRTUAL.newExecutor("test-virtual"));
+    }
+
+    @Test
+    void virtualThreadsAreUsedWhenAvailable() throws Exception {
+        assumeTrue(TaskExecutors.isVirtualThreadsAvailable());
+        ExecutorService executor = TaskExecutors.VIRTUAL.newExecutor("test-virtual");
+        try{
+            Thread t = executor.submit(() -> Thread.currentThread()).get(10, TimeUnit.SECONDS);
+            assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(t));
+            assertTrue(t.getName().startsWith("test-virtual-"));
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void sharedExecutorsComeFromPluggedFactory() throws Exception {
+        List<String> created = new ArrayList<>();
+        TaskExecutors.setFactory(name -> {
+            created.add(name);
+            return TaskExecutors.PLATFORM.newExecutor(name);
+        });
+
+        ExecutorService first = TaskExecutors.get("test-shared");
+        assertSame(first, TaskExecutors.get("test-shared"));
+        assertEquals("done", first.submit(() -> "done").get(10, TimeUnit.SECONDS));
+
+        ExecutorService owned = TaskExecutors.newExecutor("test-owned");
+        owned.shutdown();
+
+        assertEquals(2, created.size());
+        assertEquals("test-shared", created.get(0));
+        assertEquals("test-owned", created.get(1));
+        first.shutdown();
+    }
+}
@@ -0,0 +1,155 @@
+package dev.snowdrop.buildpack.micrometer;
+
+import java.util.concurrent.TimeUnit;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.metrics.BuildMetrics;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records client measurements as Micrometer meters, for services that run many builds.
+ *
+ * <pre>
+ *   MicrometerBuildMetrics.register(meterRegistry);
+ * </pre>
+ *
+ * Image names are not used as tags, as they are unbounded, failures are tagged with the exception type.
+ */
+public class MicrometerBuildMetrics implements BuildMetrics {
+
+  private final MeterRegistry registry;
+
+  private final Counter volumesCreated;
+  private final Counter volumesRemoved;
+  private final Timer containerCreate;
+  private final Timer containerRemove;
+  private final DistributionSummary uploadContent;
+  private final DistributionSummary uploadSent;
+  private final DistributionSummary uploadThroughput;
+
+  public MicrometerBuildMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.volumesCreated = Counter.builder("buildpack.volumes.created")
+        .description("Volumes created for builds").register(registry);
+    this.volumesRemoved = Counter.builder("buildpack.volumes.removed")
+        .description("Volumes removed after builds").register(registry);
+    this.containerCreate = Timer.builder("buildpack.container.create")
+        .description("Time taken to create a container").register(registry);
+    this.containerRemove = Timer.builder("buildpack.container.remove")
+        .description("Time taken to remove a container").register(registry);
+    this.uploadContent = DistributionSummary.builder("buildpack.upload.content")
+        .description("Size of content uploaded to containers").baseUnit("bytes").register(registry);
+    this.uploadSent = DistributionSummary.builder("buildpack.upload.sent")
+        .description("Bytes sent to the daemon for uploads, after compression").baseUnit("bytes").register(registry);
+    this.uploadThroughput = DistributionSummary.builder("buildpack.upload.throughput")
+        .description("Upload throughput, of content per second").baseUnit("bytes").register(registry);
+  }
+
+  /**
+   * Create a MicrometerBuildMetrics for the registry, and register it to receive client measurements.
+   */
+  public static MicrometerBuildMetrics register(MeterRegistry registry) {
+    MicrometerBuildMetrics metrics = new MicrometerBuildMetrics(registry);
+    BuildMetricsRegistry.register(metrics);
+    return metrics;
+  }
+
+  /**
+   * Stop receiving client measurements, meters already registered remain in the MeterRegistry.
+   */
+  public void unregister() {
+    BuildMetricsRegistry.unregister(this);
+  }
+
+  @Override
+  public void buildCompleted(long durationNanos, int exitCode) {
+    Timer.builder("buildpack.build")
+        .description("Time taken by builds")
+        .tag("result", exitCode == 0 ? "success" : "failure")
+        .register(registry)
+        .record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void buildFailed(long durationNanos, Throwable error) {
+    Timer.builder("buildpack.build")
+        .description("Time taken by builds")
+        .tag("result", "error")
+        .register(registry)
+        .record(durationNanos, TimeUnit.NANOSECONDS);
+    Counter.builder("buildpack.build.errors")
+        .description("Builds that failed with an exception")
+        .tag("exception", exceptionType(error))
+        .register(registry)
+        .increment();
+  }
+
+  @Override
+  public void phaseCompleted(String phase, String platformLevel, long durationNanos, int exitCode) {
+    Timer.builder("buildpack.phase")
+        .description("Time taken by lifecycle phases")
+        .tag("phase", phase)
+        .tag("platform.level", platformLevel == null ? "unknown" : platformLevel)
+        .tag("result", exitCode == 0 ? "success" : "failure")
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void imagePulled(String image, long durationNanos, int attempts, boolean success) {
+    Timer.builder("buildpack.image.pull")
+        .description("Time taken to pull images, including retries")
+        .tag("result", success ? "success" : "failure")
+        .register(registry)
+        .record(durationNanos, TimeUnit.NANOSECONDS);
+    if (attempts > 1) {
+      Counter.builder("buildpack.image.pull.retries")
+          .description("Image pull attempts after the first")
+          .register(registry)
+          .increment(attempts - 1);
+    }
+  }
+
+  @Override
+  public void contentUploaded(long contentBytes, long wireBytes, long durationNanos) {
+    uploadContent.record(contentBytes);
+    uploadSent.record(wireBytes);
+    if (durationNanos > 0) {
+      uploadThroughput.record(contentBytes * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos);
+    }
+  }
+
+  @Override
+  public void containerCreated(long durationNanos) {
+    containerCreate.record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void containerRemoved(long durationNanos) {
+    containerRemove.record(durationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void volumeCreated() {
+    volumesCreated.increment();
+  }
+
+  @Override
+  public void volumeRemoved() {
+    volumesRemoved.increment();
+  }
+
+  //the client wraps most failures in BuildpackException, the cause is more useful as a tag.
+  private static String exceptionType(Throwable error) {
+    Throwable t = error;
+    while (t instanceof BuildpackException && t.getCause() != null) {
+      t = t.getCause();
+    }
+    return t.getClass().getSimpleName();
+  }
+}
@@ -0,0 +1,49 @@
+package dev.snowdrop.buildpack.micrometer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import dev.snowdrop.buildpack.BuildpackException;
+import dev.snowdrop.buildpack.metrics.BuildMetricsRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MicrometerBuildMetricsTest {
+
+  @Test
+  void recordsMeasurements() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MicrometerBuildMetrics metrics = MicrometerBuildMetrics.register(registry);
+    try {
+      BuildMetricsRegistry.get().phaseCompleted("Detector", "0.12", TimeUnit.SECONDS.toNanos(2), 0);
+      BuildMetricsRegistry.get().imagePulled("builder", TimeUnit.SECONDS.toNanos(5), 3, true);
+      BuildMetricsRegistry.get().contentUploaded(2000, 500, TimeUnit.SECONDS.toNanos(2));
+      BuildMetricsRegistry.get().containerCreated(TimeUnit.MILLISECONDS.toNanos(20));
+      BuildMetricsRegistry.get().volumeCreated();
+      BuildMetricsRegistry.get().volumeCreated();
+      BuildMetricsRegistry.get().buildFailed(TimeUnit.SECONDS.toNanos(1),
+          BuildpackException.launderThrowable("failed", new IOException("boom")));
+    } finally {
+      metrics.unregister();
+    }
+
+    assertEquals(2.0, registry.get("buildpack.phase").tag("phase", "Detector").tag("platform.level", "0.12")
+        .timer().totalTime(TimeUnit.SECONDS), 0.001);
+    assertEquals(1, registry.get("buildpack.image.pull").tag("result", "success").timer().count());
+    assertEquals(2.0, registry.get("buildpack.image.pull.retries").counter().count(), 0.001);
+    assertEquals(2000.0, registry.get("buildpack.upload.content").summary().totalAmount(), 0.001);
+    assertEquals(500.0, registry.get("buildpack.upload.sent").summary().totalAmount(), 0.001);
+    assertEquals(1000.0, registry.get("buildpack.upload.throughput").summary().max(), 0.001);
+    assertEquals(1, registry.get("buildpack.container.create").timer().count());
+    assertEquals(2.0, registry.get("buildpack.volumes.created").counter().count(), 0.001);
+    assertEquals(1.0, registry.get("buildpack.build.errors").tag("exception", "IOException").counter().count(), 0.001);
+    assertEquals(1, registry.get("buildpack.build").tag("result", "error").timer().count());
+
+    //no longer registered, so no longer recorded.
+    BuildMetricsRegistry.get().volumeCreated();
+    assertEquals(2.0, registry.get("buildpack.volumes.created").counter().count(), 0.001);
+  }
+}